@@ -0,0 +1,98 @@
+package hillbillies.benchmark;
+
+import java.util.Random;
+import java.util.function.LongSupplier;
+
+import hillbillies.model.CubeSpace;
+import hillbillies.model.connectivity.BorderConnectivity;
+import hillbillies.model.connectivity.ComponentConnectivity;
+import hillbillies.model.connectivity.SearchConnectivity;
+import hillbillies.util.ConnectedToBorder;
+
+/**
+ * A micro-benchmark comparing the ways of keeping track of which solid cubes
+ * are connected to the border, on a mining workload.
+ *
+ * A solid mountain is mined by tunnels that wander through it, and now and
+ * then a tunnel is filled up again. Every backend replays the same sequence
+ * of changes; the time per change is reported for each.
+ *
+ * Usage: ConnectivityBenchmark [size] [nbChanges] [seed]
+ */
+public class ConnectivityBenchmark {
+
+	public static void main(String[] args){
+		int size = (args.length > 0)? Integer.parseInt(args[0]): 40;
+		int nbChanges = (args.length > 1)? Integer.parseInt(args[1]): 4000;
+		long seed = (args.length > 2)? Long.parseLong(args[2]): 42;
+		CubeSpace space = new CubeSpace(size, size, size);
+		int[] changes = ConnectivityBenchmark.createMiningWorkload(space, nbChanges, seed);
+		// replay the workload once to warm up, then once to measure
+		for (int round=0; round<2; round++){
+			boolean report = (round == 1);
+			ConnectivityBenchmark.run("provided ConnectedToBorder", changes, report,
+					() -> ConnectivityBenchmark.replay(new ConnectedToBorder(size, size, size), space, changes));
+			ConnectivityBenchmark.run("SearchConnectivity", changes, report,
+					() -> ConnectivityBenchmark.replay(new SearchConnectivity(space), changes));
+			ConnectivityBenchmark.run("ComponentConnectivity", changes, report,
+					() -> ConnectivityBenchmark.replay(new ComponentConnectivity(space), changes));
+		}
+	}
+
+	/**
+	 * Return a sequence of changes: the identifier of a cube to make passable,
+	 * or minus one minus the identifier of a cube to make solid.
+	 */
+	private static int[] createMiningWorkload(CubeSpace space, int nbChanges, long seed){
+		Random random = new Random(seed);
+		int[] changes = new int[nbChanges];
+		int[] tunnel = new int[nbChanges];
+		int tunnelLength = 0;
+		int x = space.getNbCubesX()/2, y = space.getNbCubesY()/2, z = space.getNbCubesZ()-1;
+		for (int i=0; i<nbChanges; i++){
+			if (tunnelLength > 0 && random.nextInt(10) == 0){
+				// fill up the end of the tunnel
+				changes[i] = -1-tunnel[--tunnelLength];
+				continue;
+			}
+			int[] offset = ConnectivityBenchmark.directions[random.nextInt(6)];
+			x = Math.max(1, Math.min(space.getNbCubesX()-2, x+offset[0]));
+			y = Math.max(1, Math.min(space.getNbCubesY()-2, y+offset[1]));
+			z = Math.max(1, Math.min(space.getNbCubesZ()-1, z+offset[2]));
+			changes[i] = space.getId(x, y, z);
+			tunnel[tunnelLength++] = changes[i];
+		}
+		return changes;
+	}
+
+	private static final int[][] directions =
+			{{-1,0,0},{1,0,0},{0,-1,0},{0,1,0},{0,0,-1},{0,0,1}};
+
+	private static long replay(BorderConnectivity connectivity, int[] changes){
+		long nbChanged = 0;
+		for (int change: changes)
+			nbChanged += (change >= 0)? connectivity.markPassable(change): connectivity.markSolid(-1-change);
+		return nbChanged;
+	}
+
+	private static long replay(ConnectedToBorder helper, CubeSpace space, int[] changes){
+		long nbChanged = 0;
+		for (int change: changes){
+			int id = (change >= 0)? change: -1-change;
+			if (change >= 0)
+				nbChanged += helper.changeSolidToPassable(space.getX(id), space.getY(id), space.getZ(id)).size();
+			else
+				nbChanged += helper.changePassableToSolid(space.getX(id), space.getY(id), space.getZ(id)).size();
+		}
+		return nbChanged;
+	}
+
+	private static void run(String name, int[] changes, boolean report, LongSupplier replay){
+		long start = System.nanoTime();
+		long nbChanged = replay.getAsLong();
+		long duration = System.nanoTime()-start;
+		if (report)
+			System.out.printf("%-28s %10.2f us/change  (%d cubes reported)%n", name,
+					duration/1000.0/changes.length, nbChanged);
+	}
+}
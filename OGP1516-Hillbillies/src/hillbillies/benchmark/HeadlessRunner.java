@@ -0,0 +1,126 @@
+package hillbillies.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import hillbillies.model.TickHook;
+import hillbillies.model.TickMode;
+import hillbillies.model.TickPhase;
+import hillbillies.model.TimeMode;
+import hillbillies.model.World;
+import hillbillies.part2.internal.map.GameMap;
+import hillbillies.part2.internal.map.GameMapReader;
+import hillbillies.part2.listener.DefaultTerrainChangeListener;
+import hillbillies.part3.facade.Facade;
+import ogp.framework.util.ModelException;
+
+/**
+ * A runner advancing a game world without any user interface, as fast as
+ * possible.
+ *
+ * The world is read from a .wrld file and built through the facade, after
+ * which a number of units with default behaviour is spawned. The world is
+ * then advanced in fixed steps of 0.2 seconds; after a number of warm-up
+ * steps, the throughput in ticks per second, the percentiles of the time
+ * taken by a single tick, the mean time of each phase of a tick and the
+ * number of game objects that are still active are reported.
+ *
+ * The map is looked up as a file first, and otherwise as a resource on the
+ * class path, such as resources/50x50x10.wrld.
+ *
+ * Time passes in fixed steps unless EVENT_DRIVEN is given as time mode. The
+ * units are prepared one by one unless PARALLEL is given as tick mode. The
+ * seed of the world is reported, so that a run can be repeated by giving it.
+ *
+ * Usage: HeadlessRunner [map] [nbUnits] [nbTicks] [nbWarmUpTicks] [timeMode] [tickMode] [seed]
+ */
+public class HeadlessRunner {
+
+	public static void main(String[] args) throws IOException, ModelException{
+		String map = (args.length > 0)? args[0]: "resources/50x50x10.wrld";
+		int nbUnits = (args.length > 1)? Integer.parseInt(args[1]): 50;
+		int nbTicks = (args.length > 2)? Integer.parseInt(args[2]): 2000;
+		int nbWarmUpTicks = (args.length > 3)? Integer.parseInt(args[3]): 200;
+		TimeMode timeMode = (args.length > 4)? TimeMode.valueOf(args[4]): TimeMode.FIXED_STEP;
+		TickMode tickMode = (args.length > 5)? TickMode.valueOf(args[5]): TickMode.SERIAL;
+		long seed = (args.length > 6)? Long.parseLong(args[6]): new Random().nextLong();
+		Facade facade = new Facade();
+		World world = facade.createWorld(HeadlessRunner.readTerrain(map),
+				new DefaultTerrainChangeListener(), tickMode, seed);
+		world.setTimeMode(timeMode);
+		int nbSpawned = 0;
+		while (nbSpawned < nbUnits && facade.spawnUnit(world, true) != null)
+			nbSpawned++;
+		System.out.printf("%s: %dx%dx%d cubes, %d units, %s, %s, seed %d%n", map, world.getNbCubesX(),
+				world.getNbCubesY(), world.getNbCubesZ(), nbSpawned, timeMode, tickMode, seed);
+		for (int tick=0; tick<nbWarmUpTicks; tick++)
+			facade.advanceTime(world, HeadlessRunner.step);
+		long[] latencies = new long[nbTicks];
+		long[] phaseDurations = new long[TickPhase.values().length];
+		world.addTickHook(new TickHook(){
+			@Override
+			public void phaseFinished(World world, TickPhase phase, long duration){
+				phaseDurations[phase.ordinal()] += duration;
+			}
+		});
+		long start = System.nanoTime();
+		for (int tick=0; tick<nbTicks; tick++){
+			long tickStart = System.nanoTime();
+			facade.advanceTime(world, HeadlessRunner.step);
+			latencies[tick] = System.nanoTime()-tickStart;
+		}
+		long duration = System.nanoTime()-start;
+		HeadlessRunner.report(latencies, duration);
+		for (TickPhase phase: TickPhase.values())
+			System.out.printf("%-6s %10.3f ms/tick%n", phase.toString().toLowerCase(),
+					phaseDurations[phase.ordinal()]/1e6/Math.max(nbTicks, 1));
+		System.out.printf("%d of %d game objects active%n", world.getNbActiveObjects(),
+				world.getNbUnits()+world.getNbLogs()+world.getNbBoulders());
+	}
+
+	/**
+	 * The duration by which the world is advanced in every tick.
+	 */
+	private static final double step = 0.2;
+
+	/**
+	 * Return the terrain types of the map with the given file name or
+	 * resource name.
+	 */
+	private static int[][][] readTerrain(String map) throws IOException{
+		GameMapReader reader = new GameMapReader();
+		GameMap gameMap = new File(map).isFile()? reader.readFromFile(map): reader.readFromResource(map);
+		int[][][] types = new int[gameMap.getNbTilesX()][gameMap.getNbTilesY()][gameMap.getNbTilesZ()];
+		for (int x=0; x<types.length; x++)
+			for (int y=0; y<types[x].length; y++)
+				for (int z=0; z<types[x][y].length; z++)
+					types[x][y][z] = gameMap.getTypeAt(x, y, z).getByteValue();
+		return types;
+	}
+
+	private static void report(long[] latencies, long duration){
+		Arrays.sort(latencies);
+		System.out.printf("%d ticks in %.2f s: %.1f ticks/s%n", latencies.length, duration/1e9,
+				latencies.length/(duration/1e9));
+		for (double percentile: new double[]{50, 90, 99, 99.9, 100})
+			System.out.printf("p%-5s %10.3f ms%n", HeadlessRunner.formatPercentile(percentile),
+					HeadlessRunner.getPercentile(latencies, percentile)/1e6);
+	}
+
+	/**
+	 * Return the given percentile of the given sorted latencies, using the
+	 * nearest-rank method.
+	 */
+	private static long getPercentile(long[] sortedLatencies, double percentile){
+		if (sortedLatencies.length == 0)
+			return 0;
+		int rank = (int) Math.ceil(percentile/100*sortedLatencies.length);
+		return sortedLatencies[Math.max(rank, 1)-1];
+	}
+
+	private static String formatPercentile(double percentile){
+		return (percentile == Math.rint(percentile))? Integer.toString((int) percentile): Double.toString(percentile);
+	}
+}
@@ -0,0 +1,494 @@
+package hillbillies.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import hillbillies.model.Faction;
+import hillbillies.model.Scheduler;
+import hillbillies.model.Task;
+import hillbillies.model.TaskBackend;
+import hillbillies.model.TaskFactory;
+import hillbillies.model.TickMode;
+import hillbillies.model.TimeMode;
+import hillbillies.model.Unit;
+import hillbillies.model.World;
+import hillbillies.model.connectivity.ConnectivityBackend;
+import hillbillies.model.statement.Statement;
+import hillbillies.part2.listener.DefaultTerrainChangeListener;
+import hillbillies.part3.programs.TaskParser;
+
+/**
+ * A suite of micro-benchmarks covering the hot paths of the model, with
+ * parameterised world sizes, unit counts and task counts.
+ *
+ * Every benchmark prepares a fresh state, outside the measurement, and then
+ * performs a batch of operations on it. An iteration repeats such batches until
+ * they have taken at least 200 ms together, so that a single short batch does
+ * not leave the score to timer resolution, compilation or garbage collection.
+ * After a number of warm-up iterations, the mean time per operation over the
+ * measured iterations is reported, together with the half-width of its 95%
+ * confidence interval, in the layout of src/hillbillies/benchmark/baseline.txt.
+ * The interpreted task backend in particular keeps getting faster for
+ * several seconds, so the default warm-up is long.
+ *
+ * Only benchmarks whose name contains the given filter are run. The sample
+ * programs are read from the given directory.
+ *
+ * Usage: ModelBenchmark [filter] [nbIterations] [nbWarmUpIterations] [taskDirectory]
+ */
+public class ModelBenchmark {
+
+	public static void main(String[] args) throws IOException{
+		String filter = (args.length > 0)? args[0]: "";
+		int nbIterations = (args.length > 1)? Integer.parseInt(args[1]): 50;
+		int nbWarmUpIterations = (args.length > 2)? Integer.parseInt(args[2]): 40;
+		String taskDirectory = (args.length > 3)? args[3]: "src-provided/resources/tasks";
+		ModelBenchmark suite = new ModelBenchmark(filter, nbIterations, nbWarmUpIterations);
+		System.out.printf("%-40s %-22s %12s %10s  %s%n", "Benchmark", "Parameters", "Score", "Error", "Units");
+		for (int size: new int[]{20, 40})
+			suite.run("Unit.moveTo", "size="+size, ModelBenchmark.moveTo(size, 64));
+		for (int nbUnits: new int[]{10, 50, 100})
+			suite.run("World.advanceTime", "size=40 units="+nbUnits, ModelBenchmark.advanceTime(40, nbUnits, 50));
+		for (boolean walkers: new boolean[]{false, true})
+			for (TimeMode mode: TimeMode.values())
+				suite.run("World.simulate", mode+(walkers? " walkers": " default"),
+						ModelBenchmark.simulate(40, 50, mode, walkers, 60));
+		for (ConnectivityBackend backend: ConnectivityBackend.values())
+			for (int size: new int[]{20, 40})
+				suite.run("World.setCubeType", backend+" size="+size,
+						ModelBenchmark.setCubeType(size, backend, 200));
+		List<String> programs = ModelBenchmark.readPrograms(new File(taskDirectory));
+		suite.run("TaskParser.parseTasksFromString", "programs="+programs.size(),
+				ModelBenchmark.parseTasks(programs));
+		for (TaskBackend backend: TaskBackend.values())
+			suite.run("Task.advanceTime", backend+" programs="+programs.size(),
+					ModelBenchmark.executePrograms(programs, backend, 50));
+		for (TaskBackend backend: TaskBackend.values())
+			suite.run("Task.advanceTime", backend+" loop", ModelBenchmark.executeLoop(backend, 500));
+		for (int nbTasks: new int[]{1000, 5000})
+			suite.run("Scheduler.getHighestPriorityTask", "tasks="+nbTasks,
+					ModelBenchmark.getHighestPriorityTask(nbTasks, 100000));
+	}
+
+	private ModelBenchmark(String filter, int nbIterations, int nbWarmUpIterations){
+		this.filter = filter;
+		this.nbIterations = nbIterations;
+		this.nbWarmUpIterations = nbWarmUpIterations;
+	}
+
+	private final String filter;
+	private final int nbIterations;
+	private final int nbWarmUpIterations;
+
+	/**
+	 * An interface of benchmarks, preparing the state for an iteration and
+	 * then performing the measured operations on it.
+	 */
+	private interface Benchmark {
+
+		/**
+		 * Prepare a fresh state for the next iteration.
+		 */
+		void setUp();
+
+		/**
+		 * Perform the measured operations, and return their number.
+		 */
+		int run();
+	}
+
+	/**
+	 * Run the given benchmark and report the mean time per operation.
+	 */
+	private void run(String name, String parameters, Benchmark benchmark){
+		if (!name.contains(this.filter))
+			return;
+		double[] scores = new double[this.nbIterations];
+		for (int iteration=-this.nbWarmUpIterations; iteration<this.nbIterations; iteration++){
+			long duration = 0;
+			long nbOperations = 0;
+			do {
+				benchmark.setUp();
+				long start = System.nanoTime();
+				nbOperations += benchmark.run();
+				duration += System.nanoTime()-start;
+			} while (duration < ModelBenchmark.minIterationTime);
+			if (iteration >= 0)
+				scores[iteration] = duration/1000.0/nbOperations;
+		}
+		double mean = Arrays.stream(scores).average().orElse(0);
+		double variance = Arrays.stream(scores).map(score -> (score-mean)*(score-mean)).sum()/
+				Math.max(1, scores.length-1);
+		double error = ModelBenchmark.getStudentQuantile(scores.length-1)*Math.sqrt(variance/scores.length);
+		System.out.printf("%-40s %-22s %12.3f %10.3f  us/op%n", name, parameters, mean, error);
+	}
+
+	/**
+	 * Return the 97.5% quantile of the Student t distribution with the given
+	 * number of degrees of freedom, by its Cornish-Fisher expansion around
+	 * the normal quantile, which is accurate to three decimals from ten
+	 * degrees of freedom on.
+	 */
+	private static double getStudentQuantile(int degreesOfFreedom){
+		double z = 1.959964;
+		double n = Math.max(1, degreesOfFreedom);
+		return z + (z*z*z+z)/(4*n) + (5*Math.pow(z, 5)+16*z*z*z+3*z)/(96*n*n);
+	}
+
+	/**
+	 * The minimal measured time of an iteration, in nanoseconds.
+	 */
+	private static final long minIterationTime = 200_000_000L;
+
+	/**
+	 * Sink for the results of the measured operations, so that they cannot
+	 * be optimised away.
+	 */
+	private static volatile long sink;
+
+	// ----------
+	// BENCHMARKS
+	// ----------
+
+	/**
+	 * Return a benchmark letting a unit in a maze-like world start moving to
+	 * each of the given number of random cubes.
+	 */
+	private static Benchmark moveTo(int size, int nbTargets){
+		return new Benchmark(){
+			@Override
+			public void setUp(){
+				Random random = new Random(17);
+				this.world = new World(ModelBenchmark.createMaze(size, random), new DefaultTerrainChangeListener());
+				this.unit = new Unit("Walker", new int[]{0, 0, 1}, 50, 50, 50, 50, false);
+				this.world.addGameObjectToWorld(this.unit);
+				this.targets = new ArrayList<>();
+				while (this.targets.size() < nbTargets){
+					int[] cube = {random.nextInt(size), random.nextInt(size), 1};
+					if (this.world.isPassable(cube[0], cube[1], cube[2]) && (cube[0] != 0 || cube[1] != 0))
+						this.targets.add(cube);
+				}
+			}
+			@Override
+			public int run(){
+				for (int[] target: this.targets){
+					try{
+						this.unit.moveTo(target);
+					} catch (IllegalArgumentException e){
+						// not reachable
+						ModelBenchmark.sink++;
+					}
+				}
+				return this.targets.size();
+			}
+			private World world;
+			private Unit unit;
+			private List<int[]> targets;
+		};
+	}
+
+	/**
+	 * Return a terrain of the given size with a floor of rock, and walls of
+	 * rock with gaps in them on the level above.
+	 */
+	private static int[][][] createMaze(int size, Random random){
+		int[][][] terrain = new int[size][size][4];
+		for (int x=0; x<size; x++)
+			for (int y=0; y<size; y++){
+				terrain[x][y][0] = 1;
+				if (x % 4 == 2 && random.nextInt(5) != 0)
+					terrain[x][y][1] = 1;
+			}
+		return terrain;
+	}
+
+	/**
+	 * Return a benchmark advancing a flat world with the given number of
+	 * units with default behaviour by the given number of ticks of 0.2 s.
+	 */
+	private static Benchmark advanceTime(int size, int nbUnits, int nbTicks){
+		return new Benchmark(){
+			@Override
+			public void setUp(){
+				int[][][] terrain = new int[size][size][10];
+				for (int x=0; x<size; x++)
+					for (int y=0; y<size; y++)
+						terrain[x][y][0] = 1;
+				this.world = new World(terrain, new DefaultTerrainChangeListener());
+				for (int i=0; i<nbUnits; i++)
+					this.world.spawnUnit(true);
+			}
+			@Override
+			public int run(){
+				for (int tick=0; tick<nbTicks; tick++)
+					this.world.advanceTime(0.2);
+				return nbTicks;
+			}
+			private World world;
+		};
+	}
+
+	/**
+	 * Return a benchmark letting time pass in the given way for the given
+	 * number of seconds, in frames of 0.2 s, in a world with trees and the
+	 * given number of units. The units either have default behaviour, or are
+	 * walkers that are ordered to walk to a random cube whenever they are
+	 * idle. Every operation is a second of simulated time.
+	 */
+	private static Benchmark simulate(int size, int nbUnits, TimeMode mode, boolean walkers, int nbSeconds){
+		return new Benchmark(){
+			@Override
+			public void setUp(){
+				int[][][] terrain = new int[size][size][10];
+				for (int x=0; x<size; x++)
+					for (int y=0; y<size; y++){
+						terrain[x][y][0] = 1;
+						if (x % 8 == 4 && y % 8 == 4)
+							terrain[x][y][1] = 2;
+					}
+				this.world = new World(terrain, new DefaultTerrainChangeListener(), ConnectivityBackend.SEARCH,
+						TickMode.SERIAL, 31);
+				this.world.setTimeMode(mode);
+				for (int i=0; i<nbUnits; i++)
+					this.world.spawnUnit(!walkers);
+			}
+			@Override
+			public int run(){
+				for (int frame=0; frame<5*nbSeconds; frame++){
+					if (walkers)
+						this.orderIdleUnits();
+					this.world.advanceTime(0.2);
+				}
+				return nbSeconds;
+			}
+			private void orderIdleUnits(){
+				for (Unit unit: this.world.getUnits()){
+					if (!unit.isMoving() && !unit.isResting() && !unit.isFalling()){
+						try{
+							unit.moveTo(this.world.getRandomCube());
+						} catch (IllegalArgumentException | IllegalStateException e){
+							// not reachable
+							ModelBenchmark.sink++;
+						}
+					}
+				}
+			}
+			private World world;
+		};
+	}
+
+	/**
+	 * Return a benchmark digging the given number of random cubes out of a
+	 * world of solid rock, keeping track of connectivity to the border with
+	 * the given backend.
+	 */
+	private static Benchmark setCubeType(int size, ConnectivityBackend backend, int nbChanges){
+		return new Benchmark(){
+			@Override
+			public void setUp(){
+				int[][][] terrain = new int[size][size][size];
+				for (int[][] plane: terrain)
+					for (int[] row: plane)
+						Arrays.fill(row, 1);
+				this.world = new World(terrain, new DefaultTerrainChangeListener(), backend,
+						TickMode.SERIAL, 23);
+				Random random = new Random(23);
+				this.cubes = new int[nbChanges][];
+				for (int i=0; i<nbChanges; i++)
+					this.cubes[i] = new int[]{random.nextInt(size), random.nextInt(size), random.nextInt(size)};
+			}
+			@Override
+			public int run(){
+				for (int[] cube: this.cubes)
+					this.world.setCubeType(cube[0], cube[1], cube[2], 0);
+				return this.cubes.length;
+			}
+			private World world;
+			private int[][] cubes;
+		};
+	}
+
+	private static List<String> readPrograms(File directory) throws IOException{
+		List<String> programs = new ArrayList<>();
+		File[] files = directory.listFiles((dir, name) -> name.endsWith(".txt"));
+		if (files == null)
+			throw new IOException("No task directory "+directory);
+		Arrays.sort(files);
+		for (File file: files)
+			programs.add(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+		return programs;
+	}
+
+	/**
+	 * Return a benchmark parsing each of the given programs.
+	 */
+	private static Benchmark parseTasks(List<String> programs){
+		return new Benchmark(){
+			@Override
+			public void setUp(){
+				this.factory = new TaskFactory();
+			}
+			@Override
+			public int run(){
+				List<int[]> selectedCubes = new ArrayList<>();
+				for (String program: programs){
+					List<Task> tasks = TaskParser.parseTasksFromString(program, this.factory, selectedCubes);
+					ModelBenchmark.sink += (tasks == null)? 0: tasks.size();
+				}
+				return programs.size();
+			}
+			private TaskFactory factory;
+		};
+	}
+
+	/**
+	 * Return a benchmark letting a unit with default behaviour execute each of
+	 * the given programs, parsed for the given backend, while the world
+	 * advances by the given number of ticks of 0.2 s. The world has a tunnel
+	 * to dig, a tree and a workshop, and is seeded, so that the units behave
+	 * the same for both backends. Every operation is a tick. Whatever the
+	 * programs print is discarded.
+	 */
+	private static Benchmark executePrograms(List<String> programs, TaskBackend backend, int nbTicks){
+		return new Benchmark(){
+			@Override
+			public void setUp(){
+				PrintStream out = ModelBenchmark.discardOutput();
+				try{
+					this.world = new World(ModelBenchmark.createWorkplace(), new DefaultTerrainChangeListener(),
+							ConnectivityBackend.SEARCH, TickMode.SERIAL, 37);
+					TaskFactory factory = new TaskFactory(backend);
+					int nbUnits = 0;
+					for (String program: programs){
+						List<Task> tasks = TaskParser.parseTasksFromString(program, factory, new ArrayList<>());
+						for (Task task: (tasks == null)? new ArrayList<Task>(): tasks){
+							Unit unit = new Unit("Worker", new int[]{nbUnits%16, 8+nbUnits/16, 2}, 50, 50, 50, 50, true);
+							this.world.addGameObjectToWorld(unit);
+							unit.getFaction().getScheduler().addTask(task);
+							unit.executeTask(task);
+							nbUnits++;
+						}
+					}
+				} finally {
+					System.setOut(out);
+				}
+			}
+			@Override
+			public int run(){
+				PrintStream out = ModelBenchmark.discardOutput();
+				try{
+					for (int tick=0; tick<nbTicks; tick++)
+						this.world.advanceTime(0.2);
+				} finally {
+					System.setOut(out);
+				}
+				return nbTicks;
+			}
+			private World world;
+		};
+	}
+
+	/**
+	 * Return a terrain of 16 by 16 by 12 cubes with a floor of rock two cubes
+	 * thick, a row of rock on top of it from (1, 0, 2) to (5, 0, 2), a tree
+	 * and a workshop.
+	 */
+	private static int[][][] createWorkplace(){
+		int[][][] terrain = new int[16][16][12];
+		for (int x=0; x<16; x++)
+			for (int y=0; y<16; y++){
+				terrain[x][y][0] = 1;
+				terrain[x][y][1] = 1;
+			}
+		for (int x=1; x<=5; x++)
+			terrain[x][0][2] = 1;
+		terrain[12][3][2] = 2;
+		terrain[8][4][2] = 3;
+		return terrain;
+	}
+
+	/**
+	 * Return a benchmark advancing a task, parsed for the given backend, of
+	 * which the loop never waits for its unit, by the given number of
+	 * durations of 0.2 s, each of which lets it take 200 steps.
+	 */
+	private static Benchmark executeLoop(TaskBackend backend, int nbAdvances){
+		return new Benchmark(){
+			@Override
+			public void setUp(){
+				int[][][] terrain = new int[4][4][3];
+				for (int x=0; x<4; x++)
+					for (int y=0; y<4; y++)
+						terrain[x][y][0] = 1;
+				World world = new World(terrain, new DefaultTerrainChangeListener());
+				Unit unit = new Unit("Counter", new int[]{1, 1, 1}, 50, 50, 50, 50, false);
+				world.addGameObjectToWorld(unit);
+				this.task = TaskParser.parseTasksFromString(ModelBenchmark.loop, new TaskFactory(backend),
+						new ArrayList<>()).get(0);
+				unit.getFaction().getScheduler().addTask(this.task);
+				unit.executeTask(this.task);
+			}
+			@Override
+			public int run(){
+				for (int i=0; i<nbAdvances; i++)
+					ModelBenchmark.sink += this.task.advanceTime(0.2)? 1: 0;
+				return nbAdvances;
+			}
+			private Task task;
+		};
+	}
+
+	private static final String loop = "name: \"loop\" priority: 1 activities: x := true; "
+			+ "while (x) do "
+			+ "if (is_solid (0, 0, 0) && !carries_item (this)) then y := here; else y := (0, 0, 1); fi "
+			+ "x := (is_alive this || false); "
+			+ "done";
+
+	/**
+	 * Replace the standard output by a stream discarding everything, and
+	 * return the standard output that was replaced.
+	 */
+	private static PrintStream discardOutput(){
+		PrintStream out = System.out;
+		System.setOut(new PrintStream(new OutputStream(){
+			@Override
+			public void write(int b){
+			}
+		}));
+		return out;
+	}
+
+	/**
+	 * Return a benchmark asking a scheduler with the given number of tasks of
+	 * random priority for the task of highest priority, the given number of
+	 * times.
+	 */
+	private static Benchmark getHighestPriorityTask(int nbTasks, int nbQueries){
+		return new Benchmark(){
+			@Override
+			public void setUp(){
+				TaskFactory factory = new TaskFactory();
+				Statement activity = factory.createPrint(factory.createTrue(null), null);
+				Random random = new Random(29);
+				this.scheduler = new Scheduler(new Faction());
+				for (int i=0; i<nbTasks; i++)
+					this.scheduler.addTask(new Task("task"+i, random.nextInt(10000), activity));
+			}
+			@Override
+			public int run(){
+				for (int i=0; i<nbQueries; i++)
+					ModelBenchmark.sink += this.scheduler.getHighestPriorityTask().getPriority();
+				return nbQueries;
+			}
+			private Scheduler scheduler;
+		};
+	}
+}
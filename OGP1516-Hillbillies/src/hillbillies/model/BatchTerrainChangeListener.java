@@ -0,0 +1,21 @@
+package hillbillies.model;
+
+import java.util.List;
+
+import hillbillies.part2.listener.TerrainChangeListener;
+
+/**
+ * An interface for listeners that can be notified of many terrain changes at
+ * once. Worlds notify such listeners once per terrain transaction, instead
+ * of once per changed cube.
+ */
+public interface BatchTerrainChangeListener extends TerrainChangeListener {
+
+	/**
+	 * Notify this listener that the terrain of the given cubes has changed.
+	 *
+	 * @param	cubes
+	 * 			The coordinates {x, y, z} of every changed cube, each listed once.
+	 */
+	public void notifyTerrainChanged(List<int[]> cubes);
+}
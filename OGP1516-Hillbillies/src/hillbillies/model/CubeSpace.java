@@ -0,0 +1,286 @@
+package hillbillies.model;
+
+import be.kuleuven.cs.som.annotate.*;
+
+/**
+ * A class of cube spaces, identifying every cube of a box-shaped game world
+ * by a single integer.
+ *
+ * The identifier of the cube with coordinates (x, y, z) is
+ * 		| id == x + y*nbX + z*nbX*nbY
+ * so identifiers range from 0 up to the number of cubes, can index flat
+ * arrays directly and need no boxing or array comparison.
+ *
+ * @invar	The dimensions of a cube space are strictly positive.
+ * 			| getNbCubesX() > 0 && getNbCubesY() > 0 && getNbCubesZ() > 0
+ */
+@Value
+public class CubeSpace {
+
+	/**
+	 * Initialize this new cube space with the given dimensions.
+	 *
+	 * @param 	nbX
+	 * 			The number of cubes along the x-axis.
+	 * @param 	nbY
+	 * 			The number of cubes along the y-axis.
+	 * @param 	nbZ
+	 * 			The number of cubes along the z-axis.
+	 * @throws 	IllegalArgumentException
+	 * 			One of the dimensions is not strictly positive, or the space
+	 * 			has too many cubes to be numbered by an int.
+	 * 			| nbX <= 0 || nbY <= 0 || nbZ <= 0 || nbX*nbY*nbZ > Integer.MAX_VALUE
+	 */
+	public CubeSpace(int nbX, int nbY, int nbZ) throws IllegalArgumentException{
+		if (nbX <= 0 || nbY <= 0 || nbZ <= 0 || (long) nbX*nbY*nbZ > Integer.MAX_VALUE)
+			throw new IllegalArgumentException();
+		this.nbX = nbX;
+		this.nbY = nbY;
+		this.nbZ = nbZ;
+	}
+
+	private final int nbX;
+	private final int nbY;
+	private final int nbZ;
+
+	/**
+	 * Return the number of cubes along the x-axis.
+	 */
+	@Basic @Immutable
+	public int getNbCubesX(){
+		return this.nbX;
+	}
+
+	/**
+	 * Return the number of cubes along the y-axis.
+	 */
+	@Basic @Immutable
+	public int getNbCubesY(){
+		return this.nbY;
+	}
+
+	/**
+	 * Return the number of cubes along the z-axis.
+	 */
+	@Basic @Immutable
+	public int getNbCubesZ(){
+		return this.nbZ;
+	}
+
+	/**
+	 * Return the number of cubes in this space.
+	 *
+	 * @return	| result == getNbCubesX()*getNbCubesY()*getNbCubesZ()
+	 */
+	public int getNbCubes(){
+		return this.nbX*this.nbY*this.nbZ;
+	}
+
+	/**
+	 * Check whether the given coordinates belong to a cube of this space.
+	 */
+	public boolean isValidCube(int x, int y, int z){
+		return x >= 0 && x < this.nbX && y >= 0 && y < this.nbY && z >= 0 && z < this.nbZ;
+	}
+
+	/**
+	 * Check whether the given identifier belongs to a cube of this space.
+	 */
+	public boolean isValidId(int id){
+		return id >= 0 && id < this.getNbCubes();
+	}
+
+	/**
+	 * Return the identifier of the cube with the given coordinates.
+	 *
+	 * @pre		| isValidCube(x, y, z)
+	 * @return	| result == x + y*getNbCubesX() + z*getNbCubesX()*getNbCubesY()
+	 */
+	public int getId(int x, int y, int z){
+		return x + this.nbX*(y + this.nbY*z);
+	}
+
+	/**
+	 * Return the identifier of the cube with the given coordinates {x, y, z}.
+	 *
+	 * @pre		| isValidCube(cube[0], cube[1], cube[2])
+	 * @return	| result == getId(cube[0], cube[1], cube[2])
+	 */
+	public int getId(int[] cube){
+		return this.getId(cube[0], cube[1], cube[2]);
+	}
+
+	/**
+	 * Return the identifier of the cube occupied by the given position.
+	 *
+	 * @pre		| position.getLength() == 3
+	 * @return	| result == getId(position.getCubeCoordinates())
+	 */
+	public int getId(Vector position){
+		return this.getId(position.getCubeCoordinate(0), position.getCubeCoordinate(1),
+				position.getCubeCoordinate(2));
+	}
+
+	/**
+	 * Return the x-coordinate of the cube with the given identifier.
+	 */
+	public int getX(int id){
+		return id % this.nbX;
+	}
+
+	/**
+	 * Return the y-coordinate of the cube with the given identifier.
+	 */
+	public int getY(int id){
+		return (id / this.nbX) % this.nbY;
+	}
+
+	/**
+	 * Return the z-coordinate of the cube with the given identifier.
+	 */
+	public int getZ(int id){
+		return id / (this.nbX*this.nbY);
+	}
+
+	/**
+	 * Return the coordinates {x, y, z} of the cube with the given identifier.
+	 */
+	public int[] getCube(int id){
+		return new int[]{this.getX(id), this.getY(id), this.getZ(id)};
+	}
+
+	/**
+	 * Return the identifier of the cube at the given offset from the cube
+	 * with the given identifier, or -1 if that cube lies outside this space.
+	 */
+	public int getNeighbour(int id, int dx, int dy, int dz){
+		int x = this.getX(id) + dx;
+		int y = this.getY(id) + dy;
+		int z = this.getZ(id) + dz;
+		if (!this.isValidCube(x, y, z))
+			return -1;
+		return this.getId(x, y, z);
+	}
+
+	/**
+	 * Store the identifiers of the neighbouring cubes of the cube with the
+	 * given identifier that lie in this space in the given buffer.
+	 *
+	 * @param	id
+	 * 			The identifier of the cube.
+	 * @param	buffer
+	 * 			The buffer to store the neighbours in, with room for 26 cubes.
+	 * @return	The number of neighbours stored at the start of the buffer.
+	 */
+	public int getNeighbours(int id, int[] buffer){
+		int x = this.getX(id);
+		int y = this.getY(id);
+		int z = this.getZ(id);
+		int nbNeighbours = 0;
+		for (int i=0; i<CubeSpace.nbNeighbours; i++){
+			int nextX = x+CubeSpace.neighbourDx[i];
+			int nextY = y+CubeSpace.neighbourDy[i];
+			int nextZ = z+CubeSpace.neighbourDz[i];
+			if (this.isValidCube(nextX, nextY, nextZ))
+				buffer[nbNeighbours++] = this.getId(nextX, nextY, nextZ);
+		}
+		return nbNeighbours;
+	}
+
+	/**
+	 * Check whether the cubes with the given identifiers are neighbours.
+	 *
+	 * @return	| result == (first != second) &&
+	 * 			|	(abs(getX(first)-getX(second)) <= 1) &&
+	 * 			|	(abs(getY(first)-getY(second)) <= 1) &&
+	 * 			|	(abs(getZ(first)-getZ(second)) <= 1)
+	 */
+	public boolean areNeighbours(int first, int second){
+		return first != second && Math.abs(this.getX(first)-this.getX(second)) <= 1 &&
+				Math.abs(this.getY(first)-this.getY(second)) <= 1 &&
+				Math.abs(this.getZ(first)-this.getZ(second)) <= 1;
+	}
+
+	/**
+	 * Return the largest difference along one axis between the cubes with the
+	 * given identifiers, i.e. the number of steps between them if nothing
+	 * blocks the way.
+	 */
+	public int getStepDistance(int first, int second){
+		return Math.max(Math.abs(this.getX(first)-this.getX(second)),
+				Math.max(Math.abs(this.getY(first)-this.getY(second)),
+						Math.abs(this.getZ(first)-this.getZ(second))));
+	}
+
+	/**
+	 * The number of neighbouring cubes of a cube.
+	 */
+	public static final int nbNeighbours = 26;
+
+	/**
+	 * Return the offset along the x-axis of the neighbouring cube of a cube
+	 * with the given index.
+	 *
+	 * @param	index
+	 * 			The index of the neighbouring cube, from 0 up to nbNeighbours.
+	 */
+	public static int getNeighbourDx(int index){
+		return CubeSpace.neighbourDx[index];
+	}
+
+	/**
+	 * Return the offset along the y-axis of the neighbouring cube of a cube
+	 * with the given index.
+	 *
+	 * @param	index
+	 * 			The index of the neighbouring cube, from 0 up to nbNeighbours.
+	 */
+	public static int getNeighbourDy(int index){
+		return CubeSpace.neighbourDy[index];
+	}
+
+	/**
+	 * Return the offset along the z-axis of the neighbouring cube of a cube
+	 * with the given index.
+	 *
+	 * @param	index
+	 * 			The index of the neighbouring cube, from 0 up to nbNeighbours.
+	 */
+	public static int getNeighbourDz(int index){
+		return CubeSpace.neighbourDz[index];
+	}
+
+	/**
+	 * The offsets along each axis of the neighbouring cubes of a cube.
+	 */
+	private static final int[] neighbourDx = new int[CubeSpace.nbNeighbours];
+	private static final int[] neighbourDy = new int[CubeSpace.nbNeighbours];
+	private static final int[] neighbourDz = new int[CubeSpace.nbNeighbours];
+
+	static{
+		int i = 0;
+		int[] adjacent = {0,-1,1};
+		for (int dx: adjacent)
+			for (int dy: adjacent)
+				for (int dz: adjacent)
+					if (dx != 0 || dy != 0 || dz != 0){
+						CubeSpace.neighbourDx[i] = dx;
+						CubeSpace.neighbourDy[i] = dy;
+						CubeSpace.neighbourDz[i] = dz;
+						i++;
+					}
+	}
+
+	@Override
+	public boolean equals(Object other){
+		if (!(other instanceof CubeSpace))
+			return false;
+		CubeSpace space = (CubeSpace) other;
+		return this.nbX == space.nbX && this.nbY == space.nbY && this.nbZ == space.nbZ;
+	}
+
+	@Override
+	public int hashCode(){
+		return this.getId(this.nbX-1, this.nbY-1, this.nbZ-1);
+	}
+}
@@ -67,6 +67,10 @@ public abstract class GameObject {
 	 *         or not passable and not on the edge.
 	 *         | if (this.getWorld() != null) && (!this.getWorld().isValidPosition(position)) ||
 	 *         | 	((!this.getWorld().isPassable(position))&& (!position.isOnEdge()))
+	 * @effect If this gameObject has a world, it is moved in the spatial index
+	 *         of that world.
+	 *         | if (this.getWorld() != null)
+	 *         |	then this.getWorld().notifyPositionChanged(this, this.getPosition())
 	 */
 	@Raw
     protected void setPosition(Vector position) throws IllegalArgumentException{
@@ -78,7 +82,10 @@ public abstract class GameObject {
     				throw new IllegalArgumentException("Not passable position");
     		}
     	}
+		Vector oldPosition = this.position;
 		this.position = position.clone();
+		if (this.getWorld() != null)
+			this.getWorld().notifyPositionChanged(this, oldPosition);
     }
 	
 	/**
@@ -97,6 +104,86 @@ public abstract class GameObject {
 	 */
 	public abstract void advanceTime(double dt);
 	
+	/**
+	 * Advance the time of this game object by the given duration, on behalf of
+	 * its world. In a world driven by events, the duration can span several
+	 * ticks, up to the next event of this game object.
+	 * 
+	 * @param	duration
+	 * 			The duration to advance the time with.
+	 * @effect	| this.advanceTime(duration)
+	 */
+	void advanceBy(double duration){
+		this.advanceTime(duration);
+	}
+	
+	/**
+	 * Check whether this game object is at rest, so that its world can stop
+	 * advancing it until an event in its neighbourhood wakes it up.
+	 */
+	boolean canSleep(){
+		return false;
+	}
+	
+	/**
+	 * Return the longest duration this game object can sleep before it must
+	 * advance again.
+	 */
+	double getMaxSleepDuration(){
+		return Double.POSITIVE_INFINITY;
+	}
+	
+	/**
+	 * Return the time until the next event of this game object, after which
+	 * it must advance again.
+	 * 
+	 * @return	The time this game object needs to land, if it is falling.
+	 * 			| if (isFalling()) then result == getTimeToLand()
+	 * @return	The longest duration it can sleep, if it is at rest.
+	 * 			| else if (canSleep()) then result == getMaxSleepDuration()
+	 * @return	Otherwise, 0.
+	 */
+	double getTimeToNextEvent(){
+		if (this.isFalling())
+			return this.getTimeToLand();
+		if (this.canSleep())
+			return this.getMaxSleepDuration();
+		return 0;
+	}
+	
+	/**
+	 * Let this game object catch up with the given duration it slept, during
+	 * which none of its events was due.
+	 * 
+	 * @effect	| if (isFalling()) then advanceFalling(sleptDuration)
+	 */
+	void wakeUp(double sleptDuration){
+		if (this.isFalling())
+			this.advanceFalling(sleptDuration);
+	}
+	
+	/**
+	 * Return the position of this game object at the current time of its
+	 * world. If this game object sleeps until its next event, its position is
+	 * interpolated from the last time it advanced.
+	 */
+	public Vector getInterpolatedPosition(){
+		if (this.getWorld() == null)
+			return this.getPosition();
+		return this.getPositionAfter(this.getWorld().getTimeAsleep(this));
+	}
+	
+	/**
+	 * Return the position this game object would reach after the given
+	 * duration, if none of its events is due before.
+	 */
+	Vector getPositionAfter(double duration){
+		if (!this.isFalling() || duration == 0)
+			return this.getPosition();
+		return this.getPosition().shift(0, 0,
+				-Math.min(duration*GameObject.getFallingVelocity(), this.distanceToFall));
+	}
+	
 	/**
 	 * Method to get the velocity for every GameObject that falls
 	 * 
@@ -154,11 +241,19 @@ public abstract class GameObject {
 		} else{
 			this.setPosition(this.getPosition().shift(0, 0, -this.distanceToFall));
 			this.distanceToFall = 0;
+			this.isFalling = false;
 			stillFalling = false;
 		}
 		return stillFalling;
 	}
 	
+	/**
+	 * Return the time this falling game object still needs to land.
+	 */
+	protected double getTimeToLand(){
+		return this.distanceToFall/GameObject.getFallingVelocity();
+	}
+	
 	protected void startFalling() throws IllegalStateException{
 		if (!this.isFallingPosition(this.getPosition()))
 			throw new IllegalStateException();
@@ -1,9 +1,5 @@
 package hillbillies.model;
 
-import java.util.Arrays;
-import java.util.List;
-import java.util.Map;
-
 import be.kuleuven.cs.som.annotate.Model;
 
 public class Helper {
@@ -52,60 +48,4 @@ public class Helper {
 		return value;
 	}
 	
-	public static boolean arrayListContainsIntArray(List<int[]> list, int[] elementToSearch){
-		for (int[] elementFromList: list){
-			if (Arrays.equals(elementFromList, elementToSearch))
-				return true;
-		}
-		return false;
-	}
-	
-	public static Integer[] getKeyArrayListInt(List<Integer[]> list, Integer[] elementToSearch){
-		for (Integer[] elementFromList: list){
-			if (Arrays.equals(elementFromList, elementToSearch))
-				return elementFromList;
-		}
-		return null;
-	}
-	
-	public static boolean mapContainsIntArray(Map<int[],Double> map, int[] elementToSearch){
-		for (int[] elementFromList: map.keySet()){
-			if (Arrays.equals(elementFromList, elementToSearch))
-				return true;
-		}
-		return false;
-	}
-	
-	public static int[] getKeyMapIntArray(Map<int[],Double> map, int[] elementToSearch){
-		for (int[] elementFromList: map.keySet()){
-			if (Arrays.equals(elementFromList, elementToSearch))
-				return elementFromList;
-		}
-		return null;
-	}
-
-	public static Integer[] converter(int[] toConvert){
-		Integer[] result = new Integer[toConvert.length];
-		for (int i=0; i<toConvert.length; i++){
-			result[i] = new Integer(toConvert[i]);
-		}
-		return result;
-	}
-	
-	public static int[] converter(Integer[] toConvert){
-		int[] result = new int[toConvert.length];
-		for (int i=0; i<toConvert.length; i++){
-			result[i] = toConvert[i].intValue();
-		}
-		return result;
-	}
-	
-	public static boolean containsCube(List<Integer[]> list, int[] cubeToInspect){
-		for (Integer[] cube: list){
-			if (Arrays.equals(Helper.converter(cube),cubeToInspect))
-				return true;
-		}
-		return false;
-	}
-	
 }
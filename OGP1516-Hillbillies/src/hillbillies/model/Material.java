@@ -70,4 +70,12 @@ public abstract class Material extends GameObject{
 			this.advanceFalling(dt);
 		}
 	}
+	
+	/**
+	 * A material can sleep when it lies on a solid cube.
+	 */
+	@Override
+	boolean canSleep(){
+		return !this.isFalling() && !this.isFallingPosition(this.getPosition());
+	}
 }
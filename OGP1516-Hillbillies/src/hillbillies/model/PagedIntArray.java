@@ -0,0 +1,155 @@
+package hillbillies.model;
+
+import java.util.Arrays;
+
+import be.kuleuven.cs.som.annotate.*;
+
+/**
+ * A class of arrays holding an integer for every cube of a game world, in
+ * pages of consecutive cube identifiers.
+ *
+ * A page in which every cube still holds the default value of the array
+ * takes no memory; only when one of its cubes gets another value, the page
+ * is allocated. Bookkeeping that only differs from its default in the places
+ * where something happens, such as the marks of a search or the distances of
+ * a flow field over the cubes that can be stood on, thus takes memory in
+ * proportion to those places rather than to the size of the world.
+ *
+ * A page holds 4096 cubes, so the page of a cube follows from its identifier
+ * by a shift, without working out its coordinates.
+ *
+ * @invar	Every cube of a page that is not allocated holds the default value.
+ * 			| for each id in 0..getCubeSpace().getNbCubes()-1:
+ * 			|	isAllocatedPage(getPage(id)) || get(id) == getDefaultValue()
+ */
+public class PagedIntArray {
+
+	/**
+	 * Initialize this new array for the given cube space, with every cube
+	 * holding the given default value.
+	 *
+	 * @param 	space
+	 * 			The cube space of the array.
+	 * @param 	defaultValue
+	 * 			The value of every cube of a page that is not allocated.
+	 * @post	| new.getCubeSpace() == space
+	 * @post	| new.getDefaultValue() == defaultValue
+	 * @post	| new.getNbAllocatedPages() == 0
+	 */
+	public PagedIntArray(CubeSpace space, int defaultValue){
+		this.space = space;
+		this.defaultValue = defaultValue;
+		this.pages = new int[(int) (((long) space.getNbCubes()+PagedIntArray.pageSize-1) >>> PagedIntArray.pageBits)][];
+	}
+
+	/**
+	 * Return the cube space of this array.
+	 */
+	@Basic @Immutable
+	public CubeSpace getCubeSpace(){
+		return this.space;
+	}
+
+	private final CubeSpace space;
+
+	/**
+	 * Return the value of every cube of a page that is not allocated.
+	 */
+	@Basic @Immutable
+	public int getDefaultValue(){
+		return this.defaultValue;
+	}
+
+	private final int defaultValue;
+
+	/**
+	 * Return the value of the cube with the given identifier.
+	 */
+	public int get(int id){
+		int[] page = this.pages[id >>> PagedIntArray.pageBits];
+		if (page == null)
+			return this.defaultValue;
+		return page[id & PagedIntArray.pageMask];
+	}
+
+	/**
+	 * Set the value of the cube with the given identifier.
+	 *
+	 * @post	| new.get(id) == value
+	 * @post	The page of the cube is only allocated if the value differs from
+	 * 			the default value.
+	 * 			| if (value == getDefaultValue())
+	 * 			|	then new.getNbAllocatedPages() == getNbAllocatedPages()
+	 */
+	public void set(int id, int value){
+		int[] page = this.pages[id >>> PagedIntArray.pageBits];
+		if (page == null){
+			if (value == this.defaultValue)
+				return;
+			page = new int[PagedIntArray.pageSize];
+			if (this.defaultValue != 0)
+				Arrays.fill(page, this.defaultValue);
+			this.pages[id >>> PagedIntArray.pageBits] = page;
+			this.nbAllocatedPages++;
+		}
+		page[id & PagedIntArray.pageMask] = value;
+	}
+
+	/**
+	 * Give every cube of this array the default value again, releasing all
+	 * allocated pages.
+	 *
+	 * @post	| for each id: new.get(id) == getDefaultValue()
+	 * @post	| new.getNbAllocatedPages() == 0
+	 */
+	public void clear(){
+		Arrays.fill(this.pages, null);
+		this.nbAllocatedPages = 0;
+	}
+
+	// -----
+	// PAGES
+	// -----
+
+	/**
+	 * Return the number of cubes in a page.
+	 */
+	@Immutable
+	public static int getPageSize(){
+		return PagedIntArray.pageSize;
+	}
+
+	/**
+	 * Return the number of the page holding the cube with the given identifier.
+	 */
+	public static int getPage(int id){
+		return id >>> PagedIntArray.pageBits;
+	}
+
+	/**
+	 * Check whether the page with the given number is allocated.
+	 */
+	public boolean isAllocatedPage(int page){
+		return this.pages[page] != null;
+	}
+
+	/**
+	 * Return the number of allocated pages.
+	 */
+	@Basic
+	public int getNbAllocatedPages(){
+		return this.nbAllocatedPages;
+	}
+
+	private int nbAllocatedPages = 0;
+
+	private static final int pageBits = 12;
+	private static final int pageSize = 1 << PagedIntArray.pageBits;
+	private static final int pageMask = PagedIntArray.pageSize-1;
+
+	/**
+	 * Array registering, per page, the values of its cubes, or null if all
+	 * its cubes hold the default value.
+	 */
+	private final int[][] pages;
+}
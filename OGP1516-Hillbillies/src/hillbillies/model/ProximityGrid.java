@@ -0,0 +1,196 @@
+package hillbillies.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.ToDoubleFunction;
+
+import be.kuleuven.cs.som.annotate.*;
+
+/**
+ * A class of proximity grids, registering items of a game world by position
+ * so that the item closest to a given position can be found without
+ * inspecting every item.
+ *
+ * The world is divided in cells of a fixed number of cubes along each axis.
+ * A search inspects the cells in rings of growing size around the cell of
+ * the given position, and stops as soon as no item in a farther ring can be
+ * closer than the best item found.
+ *
+ * @param	<T>
+ * 			The type of the items in the grid.
+ * @invar	The number of items is the number of items added and not removed.
+ * 			| getNbItems() >= 0
+ */
+public class ProximityGrid<T> {
+
+	/**
+	 * Initialize this new, empty proximity grid for the given cube space.
+	 *
+	 * @param 	space
+	 * 			The cube space of the world.
+	 * @param 	cellSize
+	 * 			The number of cubes along each axis of a cell.
+	 * @post	| new.getNbItems() == 0
+	 * @throws	IllegalArgumentException
+	 * 			The cell size is not strictly positive.
+	 */
+	public ProximityGrid(CubeSpace space, int cellSize) throws IllegalArgumentException{
+		if (cellSize <= 0)
+			throw new IllegalArgumentException();
+		this.space = space;
+		this.cellSize = cellSize;
+		this.nbCellsX = (space.getNbCubesX()+cellSize-1)/cellSize;
+		this.nbCellsY = (space.getNbCubesY()+cellSize-1)/cellSize;
+		this.nbCellsZ = (space.getNbCubesZ()+cellSize-1)/cellSize;
+		this.cells = new ArrayList<?>[this.nbCellsX*this.nbCellsY*this.nbCellsZ];
+	}
+
+	private final CubeSpace space;
+
+	/**
+	 * Return the cube space of this grid.
+	 */
+	@Basic @Immutable
+	public CubeSpace getCubeSpace(){
+		return this.space;
+	}
+
+	/**
+	 * Return the number of cubes along each axis of a cell of this grid.
+	 */
+	@Basic @Immutable
+	public int getCellSize(){
+		return this.cellSize;
+	}
+
+	private final int cellSize;
+
+	/**
+	 * Return the number of items in this grid.
+	 */
+	@Basic
+	public int getNbItems(){
+		return this.nbItems;
+	}
+
+	private int nbItems = 0;
+
+	/**
+	 * Add the given item at the given position to this grid.
+	 *
+	 * @post	| new.getNbItems() == getNbItems() + 1
+	 */
+	public void add(T item, Vector position){
+		int cell = this.getCell(position);
+		List<T> items = this.getItems(cell);
+		if (items == null){
+			items = new ArrayList<>(4);
+			this.cells[cell] = items;
+		}
+		items.add(item);
+		this.nbItems++;
+	}
+
+	/**
+	 * Remove the given item, added at the given position, from this grid.
+	 *
+	 * @post	If the item was registered at that position, it is removed.
+	 * 			| new.getNbItems() == getNbItems() - 1
+	 */
+	public void remove(T item, Vector position){
+		List<T> items = this.getItems(this.getCell(position));
+		if (items != null && items.remove(item))
+			this.nbItems--;
+	}
+
+	/**
+	 * Register that the given item has moved between the given positions.
+	 *
+	 * @effect	| remove(item, oldPosition); add(item, newPosition)
+	 */
+	public void move(T item, Vector oldPosition, Vector newPosition){
+		if (this.getCell(oldPosition) != this.getCell(newPosition)){
+			this.remove(item, oldPosition);
+			this.add(item, newPosition);
+		}
+	}
+
+	/**
+	 * Return the item of this grid closest to the given position, or null if
+	 * this grid has no items.
+	 *
+	 * @param	position
+	 * 			The position to search from.
+	 * @param	distance
+	 * 			The Euclidean distance from the given position to an item, at
+	 * 			which that item was added.
+	 * @return	| for each item in this grid:
+	 * 			|	distance.applyAsDouble(result) <= distance.applyAsDouble(item)
+	 */
+	public T findNearest(Vector position, ToDoubleFunction<? super T> distance){
+		if (this.nbItems == 0)
+			return null;
+		int cellX = this.getCellCoordinate(position, 0, this.nbCellsX);
+		int cellY = this.getCellCoordinate(position, 1, this.nbCellsY);
+		int cellZ = this.getCellCoordinate(position, 2, this.nbCellsZ);
+		int maxRing = Math.max(Math.max(cellX, this.nbCellsX-1-cellX),
+				Math.max(Math.max(cellY, this.nbCellsY-1-cellY), Math.max(cellZ, this.nbCellsZ-1-cellZ)));
+		T best = null;
+		double bestDistance = Double.POSITIVE_INFINITY;
+		for (int ring=0; ring<=maxRing; ring++){
+			for (int dx=-ring; dx<=ring; dx++)
+				for (int dy=-ring; dy<=ring; dy++){
+					// only the top and bottom of the ring, unless on its sides
+					int stepZ = (Math.abs(dx) == ring || Math.abs(dy) == ring)? 1: Math.max(2*ring, 1);
+					for (int dz=-ring; dz<=ring; dz+=stepZ){
+						List<T> items = this.getItems(cellX+dx, cellY+dy, cellZ+dz);
+						if (items == null)
+							continue;
+						for (T item: items){
+							double itemDistance = distance.applyAsDouble(item);
+							if (itemDistance < bestDistance){
+								best = item;
+								bestDistance = itemDistance;
+							}
+						}
+					}
+				}
+			// items in farther rings lie at least this many cells away along some axis
+			if (bestDistance <= ring*this.cellSize*Vector.cubeLength)
+				return best;
+		}
+		return best;
+	}
+
+	private int getCellCoordinate(Vector position, int axis, int nbCells){
+		return Helper.clip(position.getCubeCoordinate(axis)/this.cellSize, 0, nbCells-1);
+	}
+
+	private int getCell(Vector position){
+		return this.getCellCoordinate(position, 0, this.nbCellsX) +
+				this.nbCellsX*(this.getCellCoordinate(position, 1, this.nbCellsY) +
+				this.nbCellsY*this.getCellCoordinate(position, 2, this.nbCellsZ));
+	}
+
+	private List<T> getItems(int cellX, int cellY, int cellZ){
+		if (cellX < 0 || cellX >= this.nbCellsX || cellY < 0 || cellY >= this.nbCellsY ||
+				cellZ < 0 || cellZ >= this.nbCellsZ)
+			return null;
+		return this.getItems(cellX + this.nbCellsX*(cellY + this.nbCellsY*cellZ));
+	}
+
+	@SuppressWarnings("unchecked")
+	private List<T> getItems(int cell){
+		return (List<T>) this.cells[cell];
+	}
+
+	private final int nbCellsX;
+	private final int nbCellsY;
+	private final int nbCellsZ;
+
+	/**
+	 * Array registering the items in each cell, or null for cells that never
+	 * held an item.
+	 */
+	private final List<?>[] cells;
+}
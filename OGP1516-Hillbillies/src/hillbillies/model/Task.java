@@ -44,12 +44,23 @@ public class Task implements Comparable<Task>{
 		return this.name;
 	}
 	
+	/**
+	 * Return the activity of this Task.
+	 * 
+	 * The statements of the activity do not change while they are executed,
+	 * so that the same activity can be shared by any number of tasks.
+	 */
+	@Basic @Immutable
+	public Statement getActivity(){
+		return this.activity;
+	}
+	
 	public boolean execute(Unit unit) throws IllegalStateException, IllegalArgumentException{
 		if (unit.getTask() != this)
 			throw new IllegalStateException();
 		try{
 			this.setExecutingUnit(unit);
-			this.activity.execute(unit);
+			this.activity.execute(unit.getExecutionContext(), 0);
 			return true;
 		} catch (Throwable e) {
 			return false;
@@ -106,9 +117,19 @@ public class Task implements Comparable<Task>{
 	 */
 	private Unit executingUnit = null;
 	
+	/**
+	 * Continue the execution of this task for the given duration.
+	 * 
+	 * The statements take a bounded number of steps in that duration. The
+	 * execution is suspended as soon as a statement waits for the executing
+	 * unit to finish an activity, such as moving or working.
+	 * 
+	 * @return	Whether the execution went on without errors.
+	 */
 	public boolean advanceTime(double duration){
 		try{
-			this.activity.advanceTime(duration);
+			this.activity.advance(this.executingUnit.getExecutionContext(), 0,
+					Statement.getNbSteps(duration));
 			return true;
 		} catch (Throwable e) {
 			return false;
@@ -116,7 +137,8 @@ public class Task implements Comparable<Task>{
 	}
 	
 	public boolean isFinished(){
-		return this.finished || (this.isBeingExecuted() && this.activity.isFinished());
+		return this.finished || (this.isBeingExecuted() &&
+				this.activity.isFinished(this.executingUnit.getExecutionContext(), 0));
 	}
 	
 	public int getPriority(){
@@ -0,0 +1,23 @@
+package hillbillies.model;
+
+/**
+ * An enumeration of the ways the activities of tasks can be executed.
+ * 
+ * Both ways execute the statements of an activity in the same order, take
+ * the same number of steps and suspend the execution at the same points, so
+ * that units behave the same whichever way is used.
+ */
+public enum TaskBackend {
+
+	/**
+	 * Execute an activity by walking its tree of statements and expressions.
+	 */
+	INTERPRETED,
+
+	/**
+	 * Execute an activity as a flat list of instructions with jumps, compiled
+	 * from its tree when the task is created, and walk the tree only if it
+	 * cannot be compiled.
+	 */
+	COMPILED;
+}
@@ -3,6 +3,7 @@ package hillbillies.model;
 import java.util.ArrayList;
 import java.util.List;
 
+import be.kuleuven.cs.som.annotate.*;
 import hillbillies.model.Task;
 import hillbillies.model.expression.*;
 import hillbillies.model.statement.*;
@@ -12,7 +13,67 @@ import hillbillies.part3.programs.SourceLocation;
 //Expression used raw in ITaskFactory, while Expression<T> used in implementation.
 @SuppressWarnings({"unchecked", "rawtypes"})
 public class TaskFactory implements ITaskFactory<Expression, Statement, Task>{
+	/**
+	 * Initialize this new task factory, creating tasks with compiled
+	 * activities, which fall back to interpretation if they cannot be
+	 * compiled.
+	 * 
+	 * @effect	| this(TaskBackend.COMPILED)
+	 */
 	public TaskFactory(){
+		this(TaskBackend.COMPILED);
+	}
+	
+	/**
+	 * Initialize this new task factory, creating tasks of which the
+	 * activities are executed in the given way.
+	 * 
+	 * @param	backend
+	 * 			The way the activities of the tasks are executed.
+	 * @post	| new.getBackend() == backend
+	 */
+	public TaskFactory(TaskBackend backend){
+		this.backend = backend;
+	}
+	
+	/**
+	 * Return the way the activities of the tasks created by this factory are
+	 * executed.
+	 */
+	@Basic @Immutable
+	public TaskBackend getBackend(){
+		return this.backend;
+	}
+	
+	private final TaskBackend backend;
+	
+	/**
+	 * Resolve the variables of the given activity to consecutive slots, in
+	 * the order in which they occur, and to their static types.
+	 */
+	private void resolveVariables(Statement activity){
+		// tasks reject a missing activity themselves
+		if (activity == null)
+			return;
+		VariableResolver resolver = new VariableResolver();
+		activity.collectVariables(resolver);
+		resolver.resolve();
+	}
+	
+	/**
+	 * Return the statement executing the given activity: the code compiled
+	 * from it, if this factory compiles activities and the activity can be
+	 * compiled, and the activity itself otherwise.
+	 */
+	private Statement prepare(Statement activity){
+		if (this.getBackend() == TaskBackend.COMPILED){
+			try{
+				return CompiledStatement.compile(activity);
+			} catch (IllegalArgumentException e) {
+				// the tree of the activity is walked instead
+			}
+		}
+		return activity;
 	}
 
 	
@@ -38,9 +99,10 @@ public class TaskFactory implements ITaskFactory<Expression, Statement, Task>{
 	 */
 	@Override
 	public List<Task> createTasks(String name, int priority, Statement activity, List<int[]> selectedCubes) {
+		this.resolveVariables(activity);
 		List<Task> result = new ArrayList<>();
 		if (selectedCubes.isEmpty()){
-			result.add(new Task(name, priority, activity));
+			result.add(new Task(name, priority, this.prepare(activity)));
 		}
 		else {
 			throw new IllegalArgumentException();
@@ -60,7 +122,7 @@ public class TaskFactory implements ITaskFactory<Expression, Statement, Task>{
 	 */
 	@Override
 	public Statement createAssignment(String variableName, Expression value, SourceLocation sourceLocation) {
-		return new AssignmentStatement(variableName, value, sourceLocation);
+		return new AssignmentStatement(new Variable(variableName), value, sourceLocation);
 	}
 
 	/**
@@ -186,7 +248,7 @@ public class TaskFactory implements ITaskFactory<Expression, Statement, Task>{
 	 */
 	@Override
 	public Expression createReadVariable(String variableName, SourceLocation sourceLocation) {
-		return new ReadVariableExpression(variableName, sourceLocation);
+		return new ReadVariableExpression(new Variable(variableName), sourceLocation);
 	}
 
 	/**
@@ -0,0 +1,290 @@
+package hillbillies.model;
+
+import java.util.Arrays;
+
+import be.kuleuven.cs.som.annotate.*;
+
+/**
+ * A class of terrain maps, registering the terrain type of every cube of a
+ * game world.
+ *
+ * The map is divided in chunks of 16x16x16 cubes (chunks at the far borders
+ * may be smaller). A chunk of which all cubes have the same type is stored
+ * as that single type; only when one of its cubes gets another type, the
+ * chunk is expanded into a dense array of 2 bits per cube. Large worlds that
+ * mostly consist of air or rock thus take little memory, and scans over the
+ * map can treat a uniform chunk as a whole.
+ *
+ * @invar	Every cube has a terrain type between 0 and 3.
+ * 			| for each id in 0..getCubeSpace().getNbCubes()-1:
+ * 			|	0 <= getType(id) <= 3
+ */
+public class TerrainMap {
+
+	/**
+	 * Initialize this new terrain map for the given cube space, with every
+	 * cube of type 0.
+	 *
+	 * @param 	space
+	 * 			The cube space of the map.
+	 * @post	| new.getCubeSpace() == space
+	 * @post	| for each id: new.getType(id) == 0
+	 */
+	public TerrainMap(CubeSpace space){
+		this.space = space;
+		this.nbChunksX = TerrainMap.getNbChunks(space.getNbCubesX());
+		this.nbChunksY = TerrainMap.getNbChunks(space.getNbCubesY());
+		this.nbChunksZ = TerrainMap.getNbChunks(space.getNbCubesZ());
+		int nbChunks = this.nbChunksX*this.nbChunksY*this.nbChunksZ;
+		this.denseChunks = new long[nbChunks][];
+		this.uniformTypes = new byte[nbChunks];
+	}
+
+	/**
+	 * Initialize this new terrain map with the given terrain types.
+	 *
+	 * @param 	space
+	 * 			The cube space of the map.
+	 * @param 	terrainTypes
+	 * 			The terrain type of every cube, indexed by its coordinates.
+	 * @post	| for each x,y,z in space:
+	 * 			|	new.getType(x,y,z) == terrainTypes[x][y][z]
+	 * @throws	IllegalArgumentException
+	 * 			One of the terrain types does not fit in 2 bits.
+	 */
+	public TerrainMap(CubeSpace space, int[][][] terrainTypes) throws IllegalArgumentException{
+		this(space);
+		for (int chunk=0; chunk<this.denseChunks.length; chunk++){
+			int x0 = this.getChunkX(chunk)*TerrainMap.chunkSize;
+			int y0 = this.getChunkY(chunk)*TerrainMap.chunkSize;
+			int z0 = this.getChunkZ(chunk)*TerrainMap.chunkSize;
+			int first = terrainTypes[x0][y0][z0];
+			TerrainMap.checkType(first);
+			this.uniformTypes[chunk] = (byte) first;
+			int[] limit = this.getChunkLimit(chunk);
+			for (int x=x0; x<limit[0]; x++)
+				for (int y=y0; y<limit[1]; y++)
+					for (int z=z0; z<limit[2]; z++)
+						if (terrainTypes[x][y][z] != first)
+							this.setType(x, y, z, terrainTypes[x][y][z]);
+		}
+	}
+
+	/**
+	 * Return the cube space of this terrain map.
+	 */
+	@Basic @Immutable
+	public CubeSpace getCubeSpace(){
+		return this.space;
+	}
+
+	private final CubeSpace space;
+
+	/**
+	 * Return the terrain type of the cube with the given coordinates.
+	 */
+	public int getType(int x, int y, int z){
+		long[] dense = this.denseChunks[this.getChunk(x, y, z)];
+		if (dense == null)
+			return this.uniformTypes[this.getChunk(x, y, z)];
+		int local = TerrainMap.getLocalIndex(x, y, z);
+		return (int) (dense[local >>> 5] >>> ((local & 31) << 1)) & 3;
+	}
+
+	/**
+	 * Return the terrain type of the cube with the given identifier.
+	 *
+	 * @return	| result == getType(getCubeSpace().getX(id), getCubeSpace().getY(id),
+	 * 			|		getCubeSpace().getZ(id))
+	 */
+	public int getType(int id){
+		return this.getType(this.space.getX(id), this.space.getY(id), this.space.getZ(id));
+	}
+
+	/**
+	 * Set the terrain type of the cube with the given coordinates.
+	 *
+	 * @param	x
+	 * 			The x-coordinate of the cube.
+	 * @param	y
+	 * 			The y-coordinate of the cube.
+	 * @param	z
+	 * 			The z-coordinate of the cube.
+	 * @param	type
+	 * 			The new terrain type.
+	 * @post	| new.getType(x, y, z) == type
+	 * @post	If the chunk of the cube was uniform of another type, it is
+	 * 			expanded.
+	 * 			| if (isUniformChunk(getChunk(x,y,z)) && getType(x,y,z) != type)
+	 * 			|	then !new.isUniformChunk(getChunk(x,y,z))
+	 * @throws	IllegalArgumentException
+	 * 			The type does not fit in 2 bits.
+	 * 			| type < 0 || type > 3
+	 */
+	public void setType(int x, int y, int z, int type) throws IllegalArgumentException{
+		TerrainMap.checkType(type);
+		int chunk = this.getChunk(x, y, z);
+		long[] dense = this.denseChunks[chunk];
+		if (dense == null){
+			if (this.uniformTypes[chunk] == type)
+				return;
+			dense = this.expandChunk(chunk);
+		}
+		int local = TerrainMap.getLocalIndex(x, y, z);
+		int shift = (local & 31) << 1;
+		dense[local >>> 5] = (dense[local >>> 5] & ~(3L << shift)) | ((long) type << shift);
+	}
+
+	/**
+	 * Set the terrain type of the cube with the given identifier.
+	 *
+	 * @effect	| setType(getCubeSpace().getX(id), getCubeSpace().getY(id),
+	 * 			|		getCubeSpace().getZ(id), type)
+	 */
+	public void setType(int id, int type) throws IllegalArgumentException{
+		this.setType(this.space.getX(id), this.space.getY(id), this.space.getZ(id), type);
+	}
+
+	private static void checkType(int type) throws IllegalArgumentException{
+		if (type < 0 || type > 3)
+			throw new IllegalArgumentException();
+	}
+
+	/**
+	 * Replace the uniform chunk with the given number by a dense chunk of the
+	 * same type, and return its array.
+	 */
+	private long[] expandChunk(int chunk){
+		long pattern = 0;
+		for (int i=0; i<32; i++)
+			pattern |= ((long) this.uniformTypes[chunk]) << (2*i);
+		long[] dense = new long[TerrainMap.chunkSize*TerrainMap.chunkSize*TerrainMap.chunkSize/32];
+		Arrays.fill(dense, pattern);
+		this.denseChunks[chunk] = dense;
+		return dense;
+	}
+
+	// ------
+	// CHUNKS
+	// ------
+
+	/**
+	 * Return the number of cubes along each axis of a chunk.
+	 */
+	@Immutable
+	public static int getChunkSize(){
+		return TerrainMap.chunkSize;
+	}
+
+	private static final int chunkSize = 16;
+
+	private static int getNbChunks(int nbCubes){
+		return (nbCubes+TerrainMap.chunkSize-1)/TerrainMap.chunkSize;
+	}
+
+	/**
+	 * Return the number of chunks of this terrain map.
+	 */
+	public int getNbChunks(){
+		return this.denseChunks.length;
+	}
+
+	/**
+	 * Return the number of the chunk containing the cube with the given
+	 * coordinates.
+	 */
+	public int getChunk(int x, int y, int z){
+		return (x >> 4) + this.nbChunksX*((y >> 4) + this.nbChunksY*(z >> 4));
+	}
+
+	/**
+	 * Return the position of the chunk with the given number along the x-,
+	 * y- and z-axis, counted in chunks.
+	 */
+	private int getChunkX(int chunk){
+		return chunk % this.nbChunksX;
+	}
+
+	private int getChunkY(int chunk){
+		return (chunk / this.nbChunksX) % this.nbChunksY;
+	}
+
+	private int getChunkZ(int chunk){
+		return chunk / (this.nbChunksX*this.nbChunksY);
+	}
+
+	/**
+	 * Return the coordinates {x, y, z} of the first cube of the chunk with
+	 * the given number.
+	 */
+	public int[] getChunkOrigin(int chunk){
+		return new int[]{this.getChunkX(chunk)*TerrainMap.chunkSize,
+				this.getChunkY(chunk)*TerrainMap.chunkSize, this.getChunkZ(chunk)*TerrainMap.chunkSize};
+	}
+
+	/**
+	 * Return the coordinates {x, y, z} just past the last cube of the chunk
+	 * with the given number, along each axis.
+	 */
+	public int[] getChunkLimit(int chunk){
+		int[] origin = this.getChunkOrigin(chunk);
+		return new int[]{Math.min(origin[0]+TerrainMap.chunkSize, this.space.getNbCubesX()),
+				Math.min(origin[1]+TerrainMap.chunkSize, this.space.getNbCubesY()),
+				Math.min(origin[2]+TerrainMap.chunkSize, this.space.getNbCubesZ())};
+	}
+
+	/**
+	 * Check whether all cubes of the chunk with the given number have the same
+	 * terrain type, without inspecting its cubes.
+	 *
+	 * @return	If the chunk has never been expanded, all its cubes have the same type.
+	 * 			| if (result)
+	 * 			|	then for each cube in the chunk: getType(cube) == getUniformType(chunk)
+	 */
+	public boolean isUniformChunk(int chunk){
+		return this.denseChunks[chunk] == null;
+	}
+
+	/**
+	 * Return the terrain type of all cubes of the given uniform chunk.
+	 *
+	 * @throws	IllegalStateException
+	 * 			The chunk is not uniform.
+	 * 			| !isUniformChunk(chunk)
+	 */
+	public int getUniformType(int chunk) throws IllegalStateException{
+		if (!this.isUniformChunk(chunk))
+			throw new IllegalStateException();
+		return this.uniformTypes[chunk];
+	}
+
+	/**
+	 * Return the number of chunks that are stored densely.
+	 */
+	public int getNbDenseChunks(){
+		int result = 0;
+		for (long[] dense: this.denseChunks)
+			if (dense != null)
+				result++;
+		return result;
+	}
+
+	private static int getLocalIndex(int x, int y, int z){
+		return (x & 15) | ((y & 15) << 4) | ((z & 15) << 8);
+	}
+
+	private final int nbChunksX;
+	private final int nbChunksY;
+	private final int nbChunksZ;
+
+	/**
+	 * Array registering, per chunk, its terrain types in 2 bits per cube, or
+	 * null if the chunk is uniform.
+	 */
+	private final long[][] denseChunks;
+
+	/**
+	 * Array registering, per uniform chunk, the terrain type of all its cubes.
+	 */
+	private final byte[] uniformTypes;
+}
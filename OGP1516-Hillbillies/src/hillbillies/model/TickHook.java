@@ -0,0 +1,24 @@
+package hillbillies.model;
+
+/**
+ * An interface of hooks notified of the phases of the ticks of a world.
+ * 
+ * Hooks are notified on the thread that advances the world, outside the
+ * time measured for the phase.
+ */
+public interface TickHook {
+
+	/**
+	 * Notify this hook that the given phase of a tick of the given world
+	 * starts.
+	 */
+	default void phaseStarted(World world, TickPhase phase){
+	}
+
+	/**
+	 * Notify this hook that the given phase of a tick of the given world has
+	 * finished, after the given number of nanoseconds.
+	 */
+	default void phaseFinished(World world, TickPhase phase, long duration){
+	}
+}
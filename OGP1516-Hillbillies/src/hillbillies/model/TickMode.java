@@ -0,0 +1,24 @@
+package hillbillies.model;
+
+/**
+ * An enumeration of the ways a world can advance its units in every tick.
+ * 
+ * In both ways, every unit first prepares its tick against the same state of
+ * the world: it draws its random number, checks whether it must start falling,
+ * integrates its movement, chooses what to do next in default behavior and
+ * searches the route of any move it is about to start. Only then do the game
+ * objects advance one by one, in the order they became active in the world.
+ * Both ways thus lead to the same outcome for the same seed.
+ */
+public enum TickMode {
+
+	/**
+	 * Prepare the units one by one.
+	 */
+	SERIAL,
+
+	/**
+	 * Prepare the units concurrently on the common fork-join pool.
+	 */
+	PARALLEL;
+}
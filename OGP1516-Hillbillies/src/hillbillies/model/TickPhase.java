@@ -0,0 +1,29 @@
+package hillbillies.model;
+
+/**
+ * An enumeration of the phases of a tick of a world, in the order they run.
+ */
+public enum TickPhase {
+
+	/**
+	 * Collect the game objects that take part in the tick and the cubes that
+	 * collapse in it.
+	 */
+	SENSE,
+
+	/**
+	 * Let every unit prepare its tick, reading the state all units sensed.
+	 */
+	DECIDE,
+
+	/**
+	 * Let every game object advance, only changing its own state and
+	 * submitting other changes as commands.
+	 */
+	ACT,
+
+	/**
+	 * Collapse the cubes and apply the submitted commands.
+	 */
+	COMMIT;
+}
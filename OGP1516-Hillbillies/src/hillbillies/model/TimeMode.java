@@ -0,0 +1,25 @@
+package hillbillies.model;
+
+/**
+ * An enumeration of the ways a world can let time pass.
+ * 
+ * In both ways, game objects at rest sleep until an event wakes them up. In a
+ * world driven by events, every other game object sleeps as well until its
+ * next event: the arrival at the centre of a cube, the completion of its work
+ * or attack, a recovery while resting, landing after a fall or having to rest.
+ * Units that decide what to do next in default behavior or in a task have an
+ * event every fixed step.
+ */
+public enum TimeMode {
+
+	/**
+	 * Advance all active game objects by the full duration of every tick.
+	 */
+	FIXED_STEP,
+
+	/**
+	 * Jump from one event to the next, only advancing the game objects whose
+	 * event is due.
+	 */
+	EVENT_DRIVEN;
+}
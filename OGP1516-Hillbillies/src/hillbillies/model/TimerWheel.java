@@ -0,0 +1,485 @@
+package hillbillies.model;
+
+import java.util.Arrays;
+
+import be.kuleuven.cs.som.annotate.*;
+import ogp.framework.util.Util;
+
+/**
+ * A class of hierarchical timer wheels, scheduling items identified by an
+ * integer at an absolute point in simulation time.
+ *
+ * Time is divided in ticks of a fixed resolution. The wheel has a number of
+ * levels of 64 slots each: a slot of the lowest level holds the items due in
+ * a single tick, a slot of a higher level holds the items due in a block of
+ * 64 slots of the level below. Whenever time enters such a block, its items
+ * are spread over the level below. Advancing the time thus only touches the
+ * items that are due, together with the items moving down a level, and every
+ * item moves down at most once per level. A bit per slot tells whether it
+ * holds items, so that advancing jumps straight to the next tick at which a
+ * slot is due, however many empty ticks lie in between.
+ *
+ * Every scheduled item is held by a node, in a linked list per slot. Nodes
+ * are drawn from a pool that only grows with the number of items scheduled at
+ * the same time, and are found back from their item through a hash map. A bit
+ * per item tells whether it is scheduled. Scheduling, cancelling and checking
+ * whether an item is scheduled thus take constant time, while the memory taken
+ * per item that can be scheduled is a single bit.
+ *
+ * @invar	The time of this wheel is never negative.
+ * 			| getTime() >= 0
+ * @invar	The number of scheduled items is the number of items for which
+ * 			isScheduled holds.
+ * 			| getNbScheduled() == count of id in 0..getCapacity()-1: isScheduled(id)
+ */
+public class TimerWheel {
+
+	/**
+	 * Initialize this new, empty timer wheel for items 0 up to the given
+	 * capacity, at time 0.
+	 *
+	 * @param	capacity
+	 * 			The number of items that can be scheduled.
+	 * @param	resolution
+	 * 			The duration of a tick, in seconds.
+	 * @post	| new.getCapacity() == capacity
+	 * @post	| new.getResolution() == resolution
+	 * @post	| new.getTime() == 0 && new.getNbScheduled() == 0
+	 * @throws	IllegalArgumentException
+	 * 			The capacity is negative or the resolution is not strictly positive.
+	 */
+	public TimerWheel(int capacity, double resolution) throws IllegalArgumentException{
+		if (capacity < 0 || !(resolution > 0))
+			throw new IllegalArgumentException();
+		this.capacity = capacity;
+		this.resolution = resolution;
+		this.scheduled = new long[(capacity+63)/64];
+		this.slots = new int[TimerWheel.nbLevels*TimerWheel.nbSlots];
+		Arrays.fill(this.slots, -1);
+		this.growNodes(TimerWheel.initialNbNodes);
+		this.keys = new int[2*TimerWheel.initialNbNodes];
+		this.values = new int[this.keys.length];
+		Arrays.fill(this.keys, -1);
+	}
+
+	/**
+	 * Return the number of items that can be scheduled in this wheel.
+	 */
+	@Basic @Immutable
+	public int getCapacity(){
+		return this.capacity;
+	}
+
+	private final int capacity;
+
+	/**
+	 * Return the duration of a tick of this wheel, in seconds.
+	 */
+	@Basic @Immutable
+	public double getResolution(){
+		return this.resolution;
+	}
+
+	private final double resolution;
+
+	/**
+	 * Return the current simulation time of this wheel.
+	 */
+	@Basic
+	public double getTime(){
+		return this.time;
+	}
+
+	private double time = 0;
+
+	/**
+	 * Return the number of items scheduled in this wheel.
+	 */
+	@Basic
+	public int getNbScheduled(){
+		return this.nbScheduled;
+	}
+
+	private int nbScheduled = 0;
+
+	/**
+	 * Check whether the given item is scheduled in this wheel.
+	 */
+	public boolean isScheduled(int id){
+		return (this.scheduled[id >>> 6] & (1L << id)) != 0;
+	}
+
+	/**
+	 * Bit set registering, per item, whether it is scheduled.
+	 */
+	private final long[] scheduled;
+
+	/**
+	 * Return the time at which the given item is due.
+	 *
+	 * @throws	IllegalArgumentException
+	 * 			The item is not scheduled.
+	 * 			| !isScheduled(id)
+	 */
+	public double getDeadline(int id) throws IllegalArgumentException{
+		if (!this.isScheduled(id))
+			throw new IllegalArgumentException();
+		return this.deadlines[this.getNode(id)];
+	}
+
+	/**
+	 * Schedule the given item at the given time, unless it is already
+	 * scheduled.
+	 *
+	 * @param	id
+	 * 			The item to schedule.
+	 * @param	deadline
+	 * 			The time at which the item is due.
+	 * @return	| result == !isScheduled(id)
+	 * @post	| new.isScheduled(id)
+	 * @post	| if (result) then new.getDeadline(id) == deadline
+	 * @throws	IllegalArgumentException
+	 * 			The deadline is not a number.
+	 */
+	public boolean schedule(int id, double deadline) throws IllegalArgumentException{
+		if (Double.isNaN(deadline))
+			throw new IllegalArgumentException();
+		if (this.isScheduled(id))
+			return false;
+		this.scheduled[id >>> 6] |= 1L << id;
+		int node = this.allocateNode();
+		this.items[node] = id;
+		this.deadlines[node] = deadline;
+		this.putNode(id, node);
+		this.insert(node);
+		this.nbScheduled++;
+		return true;
+	}
+
+	/**
+	 * Remove the given item from this wheel, if it is scheduled.
+	 *
+	 * @return	| result == isScheduled(id)
+	 * @post	| !new.isScheduled(id)
+	 */
+	public boolean cancel(int id){
+		if (!this.isScheduled(id))
+			return false;
+		this.remove(this.getNode(id));
+		return true;
+	}
+
+	/**
+	 * Advance the time of this wheel to the given time, and remove all items
+	 * due at that time.
+	 *
+	 * @param	time
+	 * 			The new time of this wheel.
+	 * @return	The number of items removed, which can be retrieved with
+	 * 			getDueItem.
+	 * @post	| new.getTime() == time
+	 * @post	No item is scheduled before the new time.
+	 * 			| for each id: !new.isScheduled(id) || new.getDeadline(id) > time
+	 * @throws	IllegalArgumentException
+	 * 			The given time lies before the time of this wheel.
+	 * 			| time < getTime()
+	 */
+	public int advanceTo(double time) throws IllegalArgumentException{
+		if (!(time >= this.time))
+			throw new IllegalArgumentException();
+		this.time = time;
+		this.nbDue = 0;
+		long target = this.getTick(time);
+		while (true){
+			int slot = (int) (this.currentTick & TimerWheel.slotMask);
+			int node = this.slots[slot];
+			while (node != -1){
+				int following = this.next[node];
+				// the items of the last tick may still lie beyond the new time
+				if (this.currentTick < target || Util.fuzzyLessThanOrEqualTo(this.deadlines[node], time)){
+					this.addDue(this.items[node]);
+					this.remove(node);
+				}
+				node = following;
+			}
+			if (this.currentTick >= target)
+				return this.nbDue;
+			// the ticks in between have nothing due and nothing to spread
+			this.currentTick = Math.min(this.getNextBusyTick(), target);
+			this.cascade(this.currentTick);
+		}
+	}
+
+	/**
+	 * Return the item with the given index among the items removed by the
+	 * last advance of the time.
+	 */
+	public int getDueItem(int index){
+		return this.due[index];
+	}
+
+	private void addDue(int id){
+		if (this.nbDue == this.due.length)
+			this.due = Arrays.copyOf(this.due, 2*this.nbDue);
+		this.due[this.nbDue++] = id;
+	}
+
+	private int[] due = new int[16];
+	private int nbDue = 0;
+
+	/**
+	 * Unschedule the item of the given node, and return the node to the pool.
+	 */
+	private void remove(int node){
+		int id = this.items[node];
+		this.unlink(node);
+		this.removeNode(id);
+		this.scheduled[id >>> 6] &= ~(1L << id);
+		this.next[node] = this.freeNode;
+		this.freeNode = node;
+		this.nbScheduled--;
+	}
+
+	// -----
+	// SLOTS
+	// -----
+
+	private long getTick(double time){
+		return (long) Math.floor(time/this.resolution);
+	}
+
+	/**
+	 * Return the first tick after the current tick at which a slot of the
+	 * lowest level holding items is due, or a slot of a higher level holding
+	 * items starts, or Long.MAX_VALUE if this wheel is empty.
+	 */
+	private long getNextBusyTick(){
+		long result = Long.MAX_VALUE;
+		for (int level=0; level<TimerWheel.nbLevels; level++){
+			int shift = TimerWheel.slotBits*level;
+			int index = (int) ((this.currentTick >>> shift) & TimerWheel.slotMask);
+			long later = (index == TimerWheel.nbSlots-1)? 0: this.occupied[level] & (-1L << (index+1));
+			// the slots of a level all lie in the block of the current tick at the level above
+			long block = (this.currentTick >>> (shift+TimerWheel.slotBits)) << (shift+TimerWheel.slotBits);
+			if (later == 0 && level == TimerWheel.nbLevels-1 && this.occupied[level] != 0){
+				// the top level wraps around to the next block
+				later = this.occupied[level];
+				block += 1L << (shift+TimerWheel.slotBits);
+			}
+			if (later != 0)
+				result = Math.min(result, block + ((long) Long.numberOfTrailingZeros(later) << shift));
+		}
+		return result;
+	}
+
+	/**
+	 * Spread the items of the slots of higher levels that start at the given
+	 * tick over the levels below.
+	 */
+	private void cascade(long tick){
+		for (int level=1; level<TimerWheel.nbLevels; level++){
+			if ((tick & ((1L << (TimerWheel.slotBits*level))-1)) != 0)
+				return;
+			int index = (int) ((tick >>> (TimerWheel.slotBits*level)) & TimerWheel.slotMask);
+			int slot = level*TimerWheel.nbSlots + index;
+			int node = this.slots[slot];
+			this.slots[slot] = -1;
+			this.occupied[level] &= ~(1L << index);
+			while (node != -1){
+				int following = this.next[node];
+				this.insert(node);
+				node = following;
+			}
+		}
+	}
+
+	/**
+	 * Add the given node to the slot of its deadline, at the lowest level whose
+	 * block around the current tick contains that deadline.
+	 */
+	private void insert(int node){
+		// items already due wait in the current slot
+		long tick = Math.max(this.getTick(this.deadlines[node]), this.currentTick);
+		int level = 0;
+		while (level < TimerWheel.nbLevels-1 &&
+				(tick >>> (TimerWheel.slotBits*(level+1))) != (this.currentTick >>> (TimerWheel.slotBits*(level+1))))
+			level++;
+		int index = (int) ((tick >>> (TimerWheel.slotBits*level)) & TimerWheel.slotMask);
+		int slot = level*TimerWheel.nbSlots + index;
+		this.occupied[level] |= 1L << index;
+		int first = this.slots[slot];
+		this.next[node] = first;
+		this.previous[node] = -1;
+		if (first != -1)
+			this.previous[first] = node;
+		this.slots[slot] = node;
+		this.slotOf[node] = slot;
+	}
+
+	private void unlink(int node){
+		int before = this.previous[node];
+		int after = this.next[node];
+		if (before == -1){
+			int slot = this.slotOf[node];
+			this.slots[slot] = after;
+			if (after == -1)
+				this.occupied[slot >>> TimerWheel.slotBits] &= ~(1L << (slot & TimerWheel.slotMask));
+		}
+		else
+			this.next[before] = after;
+		if (after != -1)
+			this.previous[after] = before;
+	}
+
+	private static final int slotBits = 6;
+	private static final int nbSlots = 1 << TimerWheel.slotBits;
+	private static final long slotMask = TimerWheel.nbSlots-1;
+	private static final int nbLevels = 4;
+
+	/**
+	 * The last tick of which the slot has been visited.
+	 */
+	private long currentTick = 0;
+
+	/**
+	 * Array registering the first node of every slot, level after level, or
+	 * -1 for empty slots.
+	 */
+	private final int[] slots;
+
+	/**
+	 * Bit sets registering, per level, which slots hold items.
+	 */
+	private final long[] occupied = new long[TimerWheel.nbLevels];
+
+	// -----
+	// NODES
+	// -----
+
+	/**
+	 * Return a node from the pool, growing the pool if all its nodes are in
+	 * use.
+	 */
+	private int allocateNode(){
+		if (this.freeNode == -1)
+			this.growNodes(2*this.items.length);
+		int node = this.freeNode;
+		this.freeNode = this.next[node];
+		return node;
+	}
+
+	/**
+	 * Grow the pool of nodes to the given number of nodes, and add the new
+	 * nodes to the free nodes.
+	 */
+	private void growNodes(int nbNodes){
+		int oldNbNodes = (this.items == null)? 0: this.items.length;
+		this.items = (oldNbNodes == 0)? new int[nbNodes]: Arrays.copyOf(this.items, nbNodes);
+		this.deadlines = (oldNbNodes == 0)? new double[nbNodes]: Arrays.copyOf(this.deadlines, nbNodes);
+		this.next = (oldNbNodes == 0)? new int[nbNodes]: Arrays.copyOf(this.next, nbNodes);
+		this.previous = (oldNbNodes == 0)? new int[nbNodes]: Arrays.copyOf(this.previous, nbNodes);
+		this.slotOf = (oldNbNodes == 0)? new int[nbNodes]: Arrays.copyOf(this.slotOf, nbNodes);
+		for (int node=nbNodes-1; node>=oldNbNodes; node--){
+			this.next[node] = this.freeNode;
+			this.freeNode = node;
+		}
+	}
+
+	private static final int initialNbNodes = 16;
+
+	/**
+	 * Arrays registering, per node, its item and the time at which that item
+	 * is due, the next and previous node in its slot, or -1, and the index of
+	 * its slot. The next node of a free node is the next free node.
+	 */
+	private int[] items;
+	private double[] deadlines;
+	private int[] next;
+	private int[] previous;
+	private int[] slotOf;
+
+	/**
+	 * The first free node, or -1 if all nodes are in use.
+	 */
+	private int freeNode = -1;
+
+	// --------
+	// NODE MAP
+	// --------
+
+	/**
+	 * Return the node of the given scheduled item.
+	 */
+	private int getNode(int id){
+		int mask = this.keys.length-1;
+		int index = TimerWheel.hash(id) & mask;
+		while (this.keys[index] != id)
+			index = (index+1) & mask;
+		return this.values[index];
+	}
+
+	/**
+	 * Register the given node as the node of the given item, which has none.
+	 */
+	private void putNode(int id, int node){
+		if (2*(this.nbScheduled+1) > this.keys.length)
+			this.growMap();
+		int mask = this.keys.length-1;
+		int index = TimerWheel.hash(id) & mask;
+		while (this.keys[index] != -1)
+			index = (index+1) & mask;
+		this.keys[index] = id;
+		this.values[index] = node;
+	}
+
+	/**
+	 * Remove the node of the given scheduled item from the map, moving back
+	 * the entries that follow it in its run, so that no entry lies beyond a
+	 * free index from its home index.
+	 */
+	private void removeNode(int id){
+		int mask = this.keys.length-1;
+		int index = TimerWheel.hash(id) & mask;
+		while (this.keys[index] != id)
+			index = (index+1) & mask;
+		int free = index;
+		for (index=(free+1)&mask; this.keys[index] != -1; index=(index+1)&mask){
+			int home = TimerWheel.hash(this.keys[index]) & mask;
+			// the entry may move back if its home does not lie between the free index and itself
+			if (((index-home) & mask) >= ((index-free) & mask)){
+				this.keys[free] = this.keys[index];
+				this.values[free] = this.values[index];
+				free = index;
+			}
+		}
+		this.keys[free] = -1;
+	}
+
+	private void growMap(){
+		int[] oldKeys = this.keys;
+		int[] oldValues = this.values;
+		this.keys = new int[2*oldKeys.length];
+		this.values = new int[this.keys.length];
+		Arrays.fill(this.keys, -1);
+		int mask = this.keys.length-1;
+		for (int i=0; i<oldKeys.length; i++)
+			if (oldKeys[i] != -1){
+				int index = TimerWheel.hash(oldKeys[i]) & mask;
+				while (this.keys[index] != -1)
+					index = (index+1) & mask;
+				this.keys[index] = oldKeys[i];
+				this.values[index] = oldValues[i];
+			}
+	}
+
+	private static int hash(int id){
+		return id*0x9E3779B9 >>> 7;
+	}
+
+	/**
+	 * Open addressing hash map from scheduled items to their nodes, with -1
+	 * as the key of free entries. The map is at most half full.
+	 */
+	private int[] keys;
+	private int[] values;
+}
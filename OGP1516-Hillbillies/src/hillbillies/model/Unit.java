@@ -1,14 +1,12 @@
 package hillbillies.model;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.Random;
 import java.util.Scanner;
 
 import be.kuleuven.cs.som.annotate.*;
 import ogp.framework.util.*;
+import hillbillies.model.path.FlowField;
+import hillbillies.model.statement.ExecutionContext;
 
 /**
  * A class of Units for doing activities and registering characteristics.
@@ -240,6 +238,9 @@ public class Unit extends GameObject{
      */
     @Raw
     private void setState(State state) {
+    	// a sleeping unit first catches up in its old state
+    	if (this.getWorld() != null)
+    		this.getWorld().wake(this);
     	if (this.isAttacking() || this.isFalling())
     		this.lastStateBeforeInterruption = State.IDLE;
     	else
@@ -765,10 +766,28 @@ public class Unit extends GameObject{
 			throw new IllegalStateException("Unit not alive");
 		if (!Unit.isValidDuration(duration))
 			throw new IllegalArgumentException(Double.toString(duration));
+		this.advanceBy(duration);
+	}
+	
+	/**
+	 * Advance the time of this Unit by the given duration, which can span
+	 * several ticks in a world driven by events.
+	 * 
+	 * @param 	duration
+	 * 			The duration to advance the time with.
+	 * @throws	IllegalStateException
+	 * 			This Unit is not alive.
+	 * 			| !this.isAlive()
+	 */
+	@Override
+	void advanceBy(double duration) throws IllegalStateException{
+		if (!this.isAlive())
+			throw new IllegalStateException("Unit not alive");
+		if (!this.isPrepared)
+			this.prepareTick(duration);
 		this.timeToStartResting -= duration;
 		// trigger falling when conditions met
-		if (!this.isFalling() && this.isFallingPosition(this.getPosition()) &&
-				!this.getPosition().isOnEdge())
+		if (!this.isFalling() && this.mustStartFalling())
 			this.startFalling();
 		switch (this.getState()) {
 		case FALLING:
@@ -798,6 +817,7 @@ public class Unit extends GameObject{
 		if (this.timeToStartResting < 0 && !this.isFalling() && !this.isAttacking()) {
 			this.forceRest();
 		}
+		this.clearPreparation();
 	}
 	
 	/**
@@ -805,11 +825,305 @@ public class Unit extends GameObject{
 	 */
 	private double timeToStartResting = restInterval;
 	
+	/**
+	 * A Unit can sleep when it is idle without default behavior and does not
+	 * start falling.
+	 */
+	@Override
+	boolean canSleep(){
+		return this.isAlive() && this.isState(State.IDLE) && !this.isDefaultBehaviorEnabled() &&
+				!this.isExecutingTask() && (!this.isFallingPosition(this.getPosition()) ||
+						this.getPosition().isOnEdge());
+	}
+	
+	/**
+	 * A Unit must wake up when it is forced to rest.
+	 */
+	@Override
+	double getMaxSleepDuration(){
+		return Math.max(this.timeToStartResting, 0);
+	}
+	
+	/**
+	 * A Unit catches up with the countdowns of its state, and with its
+	 * movement.
+	 */
+	@Override
+	void wakeUp(double sleptDuration){
+		if (sleptDuration <= 0)
+			return;
+		this.timeToStartResting -= sleptDuration;
+		switch (this.getState()){
+		case MOVING:
+			Vector position = this.getPositionAfter(sleptDuration);
+			this.timeToArrive -= sleptDuration;
+			if (this.isSprinting())
+				this.timeSprinting += sleptDuration;
+			World world = this.getWorld();
+			if (world.isValidPosition(position) && (world.isPassable(position) || position.isOnEdge()))
+				this.setPosition(position);
+			else
+				// terrain that became solid while it slept cuts its step short
+				this.stopStep();
+			break;
+		case WORKING:
+			this.timeToWork -= sleptDuration;
+			break;
+		case ATTACKING:
+			this.timeToFight -= sleptDuration;
+			break;
+		case RESTING:
+			this.elapsedRestingTime += sleptDuration;
+			break;
+		default:
+			super.wakeUp(sleptDuration);
+		}
+	}
+	
+	/**
+	 * The next event of a Unit is the end of the countdown of its state, or
+	 * the moment it must rest if that comes first. A Unit that decides what
+	 * to do next in default behavior or in a task does so every decision
+	 * interval, and so does a Unit in default behavior that may still start
+	 * sprinting during its current step, as it would in fixed steps.
+	 */
+	@Override
+	double getTimeToNextEvent(){
+		if (!this.isAlive())
+			return Double.POSITIVE_INFINITY;
+		if (!this.isFalling() && this.isFallingPosition(this.getPosition()) &&
+				!this.getPosition().isOnEdge())
+			return 0;
+		double time;
+		switch (this.getState()){
+		case FALLING:
+			return this.getTimeToLand();
+		case ATTACKING:
+			return this.timeToFight;
+		case RESTING:
+			return this.getTimeToRecover();
+		case MOVING:
+			time = this.timeToArrive;
+			if (this.isSprinting())
+				time = Math.min(time, (this.getCurrentStaminaPoints()-Unit.minStaminaPoints)*0.1-this.timeSprinting);
+			else if (this.isDefaultBehaviorEnabled() && !this.hasTriedSprintingDuringThisMove)
+				time = Math.min(time, Unit.decisionInterval);
+			break;
+		case WORKING:
+			time = this.timeToWork;
+			break;
+		default:
+			time = (this.isDefaultBehaviorEnabled() || this.isExecutingTask())?
+					Unit.decisionInterval: Double.POSITIVE_INFINITY;
+		}
+		return Math.min(time, this.timeToStartResting);
+	}
+	
+	/**
+	 * The time between two decisions of a Unit in default behavior or in a
+	 * task, in a world driven by events.
+	 */
+	private static final double decisionInterval = 0.2;
+	
+	@Override
+	Vector getPositionAfter(double duration){
+		if (this.isState(State.MOVING) && duration > 0)
+			return this.getPosition().addVector(this.velocity.multiply(Math.min(duration, this.timeToArrive)));
+		return super.getPositionAfter(duration);
+	}
+	
 	/**
 	 * The amount of time in which a Unit is forced to rest once.
 	 */
     private static final double restInterval = 180.0; // seconds, so every 3 minutes
 	
+	/**
+	 * Prepare the next advance of the time of this Unit by the given duration.
+	 * 
+	 * The random number of the tick is drawn and whether this Unit must start
+	 * falling is checked. If this Unit is moving, its next position is
+	 * computed, and if it arrives at a cube from which it cannot follow its
+	 * route, a new route to its target is searched; if it is idle in default
+	 * behavior, the unit it would attack and the cube it would move to are
+	 * chosen, and a route to that cube is searched. This only reads this Unit,
+	 * the other units and the terrain, so that all units of a world can be
+	 * prepared concurrently before any of them advances. Results that no
+	 * longer apply when this Unit advances are computed again.
+	 * 
+	 * @param 	duration
+	 * 			The duration by which the time will be advanced.
+	 * @post	| new.isPrepared
+	 */
+	void prepareTick(double duration){
+		this.clearPreparation();
+		this.isPrepared = true;
+		this.roll = this.random.nextDouble();
+		if (!this.isAlive() || this.getWorld() == null)
+			return;
+		this.preparedStandingPosition = this.getPosition();
+		this.preparedMustStartFalling = this.isFallingPosition(this.preparedStandingPosition) &&
+				!this.preparedStandingPosition.isOnEdge();
+		if (this.isState(State.MOVING) && this.timeToArrive > duration){
+			this.preparedFrom = this.getPosition();
+			this.preparedVelocity = this.velocity;
+			this.preparedPosition = this.preparedFrom.addVector(this.velocity.multiply(duration));
+		}
+		else if (this.isState(State.MOVING)){
+			if (!this.getPosition().isTheSameCube(this.targetPosition) && this.flowTarget == -1 &&
+					!this.canFollowPath())
+				this.prepareRoute(this.targetPosition.getCubeCoordinates());
+		}
+		else if (this.isState(State.IDLE) && this.isDefaultBehaviorEnabled() && !this.isExecutingTask()){
+			this.isDecisionPrepared = true;
+			if (this.roll < 0.25)
+				this.preparedAttackableUnit = this.getAttackableUnit();
+			else if (this.roll >= 0.75){
+				this.preparedCube = this.getWorld().getRandomCube(this.random);
+				this.prepareRoute(this.preparedCube);
+			}
+		}
+	}
+	
+	/**
+	 * Search the route from the cube of this Unit to the given cube, if this
+	 * Unit can move there.
+	 */
+	private void prepareRoute(int[] cube){
+		World world = this.getWorld();
+		if (!world.isValidCube(cube[0], cube[1], cube[2]) || !this.isStandableCube(cube))
+			return;
+		CubeSpace space = world.getCubeSpace();
+		int current = space.getId(this.getPosition());
+		int target = space.getId(cube);
+		if (current == target)
+			return;
+		this.preparedRouteStart = current;
+		this.preparedRouteTarget = target;
+		this.preparedRoute = world.searchPath(current, target);
+		this.isRoutePrepared = true;
+	}
+	
+	private void clearPreparation(){
+		this.isPrepared = false;
+		this.roll = Double.NaN;
+		this.preparedFrom = null;
+		this.preparedVelocity = null;
+		this.preparedPosition = null;
+		this.isDecisionPrepared = false;
+		this.preparedAttackableUnit = null;
+		this.preparedCube = null;
+		this.preparedStandingPosition = null;
+		this.isRoutePrepared = false;
+		this.preparedRoute = null;
+	}
+	
+	/**
+	 * Return the random number drawn for the current tick, drawing it now if
+	 * it has already been used.
+	 */
+	private double takeRoll(){
+		double result = Double.isNaN(this.roll)? this.random.nextDouble(): this.roll;
+		this.roll = Double.NaN;
+		return result;
+	}
+	
+	/**
+	 * Return the position of this Unit after moving at its velocity for the
+	 * given duration.
+	 */
+	private Vector getNextPosition(double duration){
+		if (this.preparedFrom == this.getPosition() && this.preparedVelocity == this.velocity)
+			return this.preparedPosition;
+		return this.getPosition().addVector(this.velocity.multiply(duration));
+	}
+	
+	/**
+	 * Return whether this Unit stands on a position where it must start
+	 * falling.
+	 */
+	private boolean mustStartFalling(){
+		if (this.preparedStandingPosition == this.getPosition())
+			return this.preparedMustStartFalling;
+		return this.isFallingPosition(this.getPosition()) && !this.getPosition().isOnEdge();
+	}
+	
+	/**
+	 * Return whether the route between the given cubes has been searched for
+	 * the current tick.
+	 */
+	private boolean isRoutePrepared(int start, int target){
+		return this.isRoutePrepared && this.preparedRouteStart == start && this.preparedRouteTarget == target;
+	}
+	
+	/**
+	 * Return a shortest route between the given cubes along which this Unit
+	 * can walk, or null if there is none.
+	 */
+	private int[] findRoute(int start, int target){
+		if (this.isRoutePrepared(start, target))
+			return this.preparedRoute;
+		return this.getWorld().searchPath(start, target);
+	}
+	
+	/**
+	 * Variables registering the preparation of the next tick of this Unit: the
+	 * random number of the tick, the position and velocity from which the next
+	 * position has been computed, the position from which has been checked
+	 * whether this Unit must start falling, the decision in default behavior
+	 * and the route searched between two cubes.
+	 */
+	private boolean isPrepared = false;
+	private double roll = Double.NaN;
+	private Vector preparedFrom;
+	private Vector preparedVelocity;
+	private Vector preparedPosition;
+	private boolean isDecisionPrepared = false;
+	private Unit preparedAttackableUnit;
+	private int[] preparedCube;
+	private Vector preparedStandingPosition;
+	private boolean preparedMustStartFalling;
+	private boolean isRoutePrepared = false;
+	private int preparedRouteStart;
+	private int preparedRouteTarget;
+	private int[] preparedRoute;
+	
+	/**
+	 * Apply the given change to the terrain or to other game objects through
+	 * the world of this Unit, or immediately if this Unit has no world.
+	 * 
+	 * @effect	| if (this.getWorld() != null)
+	 * 			|	then this.getWorld().submit(command)
+	 */
+	private void submit(Runnable command){
+		if (this.getWorld() == null)
+			command.run();
+		else
+			this.getWorld().submit(command);
+	}
+	
+	/**
+	 * Return the random generator of this Unit.
+	 */
+	@Basic
+	public Random getRandom(){
+		return this.random;
+	}
+	
+	/**
+	 * Let this Unit draw its random numbers from a generator with the given
+	 * seed.
+	 */
+	void reseed(long seed){
+		this.random = new Random(seed);
+	}
+	
+	/**
+	 * Variable registering the random generator of this Unit. Every unit draws
+	 * from its own generator, so that the outcome does not depend on the order
+	 * in which units are prepared.
+	 */
+	private Random random = new Random();
+	
 	// -------
 	// FALLING
 	// -------
@@ -874,7 +1188,8 @@ public class Unit extends GameObject{
 			throws NullPointerException, IllegalArgumentException{
 		if (this.getWorld() == null)
 			throw new NullPointerException();
-		return (!this.isStandableCube(currentPosition.getCubeCoordinates()));
+		return (!this.getWorld().isStandableCube(currentPosition.getCubeCoordinate(0),
+				currentPosition.getCubeCoordinate(1), currentPosition.getCubeCoordinate(2)));
 	}
 	
 	/**
@@ -888,13 +1203,7 @@ public class Unit extends GameObject{
 	 * @throws IllegalArgumentException
 	 */
 	public boolean isStandableCube(int[] cube) throws IllegalArgumentException{
-		int x = cube[0];
-		int y = cube[1];
-		int z = cube[2];
-		if (!this.getWorld().isValidCube(x, y, z))
-			throw new IllegalArgumentException();
-		return (this.getWorld().isPassable(x,y,z) && 
-				this.getWorld().hasSolidNeighbour(cube));
+		return this.getWorld().isStandableCube(cube[0], cube[1], cube[2]);
 	}
 	
 	/**
@@ -966,6 +1275,15 @@ public class Unit extends GameObject{
 		return factor*this.getBaseSpeed();
     }
 
+	/**
+	 * Let this moving Unit give up the step it is on, and head back to the
+	 * centre of the cube it is in before it continues its route.
+	 */
+	private void stopStep(){
+		this.timeToArrive = 0;
+		this.setShortTermTarget(Vector.getCubeCenter(this.getPosition().getCubeCoordinates()));
+	}
+	
 	/**
 	 * Used to set a short term target, i.e. a target that is the center of
 	 * a neighboring cube.
@@ -1058,13 +1376,15 @@ public class Unit extends GameObject{
 	 * 			| 		then (! new.isSprinting)
 	 * 
 	 * @effect	If the Unit has arrived at its subTarget, it moves further to its
-	 * 			long term target
-	 * 			| new.moveTo(this.target)
+	 * 			long term target, along its computed route if that is still valid
+	 * 			| if (this.canFollowPath())
+	 * 			|	then this.moveToNextStepPath()
+	 * 			| else new.moveTo(this.target)
 	 */
 	private void finishMoving(double duration){
 		if (this.timeToArrive > duration){
 			this.timeToArrive -= duration;
-			Vector newVector = this.getPosition().addVector(this.velocity.multiply(duration));
+			Vector newVector = this.getNextPosition(duration);
 			try{
 				this.setPosition(newVector);
 			} catch (IllegalArgumentException e){
@@ -1073,7 +1393,7 @@ public class Unit extends GameObject{
 			if (this.defaultBehaviorEnabled && !this.isSprinting() && 
 					!this.hasTriedSprintingDuringThisMove &&
 					(this.getCurrentStaminaPoints()>Unit.minStaminaPoints)) {
-				if (Math.random() < 0.25)
+				if (this.takeRoll() < 0.25)
 				{
 					this.startSprinting();
 				}
@@ -1089,7 +1409,10 @@ public class Unit extends GameObject{
 			}
 			else {
 				try{
-					this.moveTo(this.targetPosition.getCubeCoordinates());
+					if (this.canFollowPath())
+						this.moveToNextStepPath();
+					else
+						this.moveTo(this.targetPosition.getCubeCoordinates());
 				} catch (IllegalArgumentException e){
 					if (e.getMessage().equals("Can not stand on selected cube")){
 						shouldContinue = false;
@@ -1153,6 +1476,8 @@ public class Unit extends GameObject{
 	 * 			| this.setShortTermTarget(this.getPosition().stepDirectionInX(targetPosition),
 	 * 			|		this.getPosition().stepDirectionInY(targetPosition),
 	 * 			|		this.getPosition().stepDirectionInZ(targetPosition))
+	 * @post	If the world keeps a flow field towards the cube, the Unit follows
+	 * 			it one step at a time instead of computing its whole route.
 	 * @throws	IllegalArgumentException
 	 * 			The cube to move to must be in the game world.
 	 * 			|(!Position.isValidCube(cube))
@@ -1164,90 +1489,148 @@ public class Unit extends GameObject{
 			throw new IllegalArgumentException("Selected cube not in gameworld");
 		if (!this.isStandableCube(cube))
 			throw new IllegalArgumentException("Can not stand on selected cube");
-		if (Arrays.equals(cube, this.getPosition().getCubeCoordinates()))
+		CubeSpace space = this.getWorld().getCubeSpace();
+		int current = space.getId(this.getPosition());
+		int target = space.getId(cube);
+		if (current == target)
 			throw new IllegalArgumentException("Already standing on selected cube");
-		boolean result = this.setPath(Helper.converter(cube), Helper.converter(this.getPosition().getCubeCoordinates()));
-		if (!result)
+		FlowField field = this.isRoutePrepared(current, target)? null:
+			this.getWorld().requestFlowField(target);
+		int[] path = (field == null)? this.findRoute(current, target): null;
+		if ((field == null)? path == null: field.getDistance(current) == -1)
 			throw new IllegalArgumentException("Position not reachable");
 		this.targetPosition = Vector.getCubeCenter(cube);
+		this.setPath(path);
+		this.flowTarget = (field == null)? -1: target;
+		this.pathStep = 0;
+		this.moveToNextStepPath();
+	}
+	
+	/**
+	 * Start moving to the next cube of the route of this Unit.
+	 * 
+	 * @effect	The Unit starts moving to the center of the next cube on its
+	 * 			route, or of the next step of the flow field it follows.
+	 * 			| if (this.flowTarget == -1)
+	 * 			|	then this.setShortTermTarget(Vector.getCubeCenter(
+	 * 			|		this.getWorld().getCubeSpace().getCube(this.path[this.pathStep])))
+	 * 			| else this.setShortTermTarget(Vector.getCubeCenter(
+	 * 			|		this.getWorld().getCubeSpace().getCube(this.getNextFlowStep())))
+	 * @post	If the Unit follows its route, the next step on the route is the
+	 * 			following cube.
+	 * 			| if (this.flowTarget == -1)
+	 * 			|	then new.pathStep == this.pathStep + 1
+	 */
+	private void moveToNextStepPath(){
+		int next;
+		if (this.flowTarget != -1)
+			next = this.getNextFlowStep();
+		else
+			next = this.path[this.pathStep++];
 		this.hasTriedSprintingDuringThisMove = false;
-		this.setShortTermTarget(Vector.getCubeCenter(this.getNextStepPath(Helper.converter(this.getPosition().getCubeCoordinates()))));
+		this.setShortTermTarget(Vector.getCubeCenter(this.getWorld().getCubeSpace().getCube(next)));
 	}
 	
-	private int[] getNextStepPath(Integer[] current) throws IllegalStateException{
-		if (!this.pathfinderContains(current))
-			throw new IllegalStateException();
-		Integer[] currentBest = null;
-		for (Integer[] neighbour: this.getWorld().getValidNeigbouringCubes(current)){
-			if (this.getPathfinderValue(neighbour) != null){
-				if (currentBest == null || this.getPathfinderValue(neighbour) < this.getPathfinderValue(currentBest)){
-					currentBest = neighbour;
-				}
+	/**
+	 * Return the identifier of the next cube on a shortest route from the cube
+	 * of this Unit to the target of the flow field it follows, or -1 if the
+	 * world no longer keeps that flow field or the target cannot be reached.
+	 */
+	private int getNextFlowStep(){
+		FlowField field = this.getWorld().getFlowField(this.flowTarget);
+		if (field == null)
+			return -1;
+		return field.getNextStep(this.getWorld().getCubeSpace().getId(this.getPosition()));
+	}
+	
+	/**
+	 * Return whether this Unit can continue along its computed route from
+	 * its current position.
+	 * 
+	 * @return	If the Unit follows a flow field, whether that flow field still
+	 * 			leads on from its current cube.
+	 * 			| if (this.flowTarget != -1)
+	 * 			|	then result == (this.getNextFlowStep() != -1)
+	 * @return	Otherwise, false if the route has been invalidated or is finished,
+	 * 			or if the Unit is not standing on the last reached cube of it.
+	 */
+	private boolean canFollowPath(){
+		if (this.flowTarget != -1)
+			return this.getNextFlowStep() != -1;
+		if (this.path == null || this.pathStep == 0 || this.pathStep >= this.path.length)
+			return false;
+		return this.getWorld().getCubeSpace().getId(this.getPosition()) == this.path[this.pathStep-1];
+	}
+	
+	/**
+	 * Drop the computed route of this Unit if the terrain change of the given
+	 * cube could affect one of the cubes it still has to pass.
+	 * 
+	 * @param	x
+	 * 			The x-coordinate of the changed cube.
+	 * @param	y
+	 * 			The y-coordinate of the changed cube.
+	 * @param	z
+	 * 			The z-coordinate of the changed cube.
+	 * @post	If the changed cube is one of the remaining cubes on the route,
+	 * 			or one of their neighbours (which determine whether a unit can
+	 * 			stand there), the route is dropped and will be searched again
+	 * 			at the next cube.
+	 */
+	void notifyTerrainChanged(int x, int y, int z){
+		if (this.path == null)
+			return;
+		CubeSpace space = this.getWorld().getCubeSpace();
+		int changedCube = space.getId(x, y, z);
+		for (int step = Math.max(this.pathStep-1, 0); step < this.path.length; step++){
+			if (space.getStepDistance(this.path[step], changedCube) <= 1){
+				this.clearPath();
+				return;
 			}
 		}
-		if (currentBest == null)
-			return null;
-		return Helper.converter(currentBest);
 	}
 	
-	private Map<String, Integer> pathFinder = new HashMap<>();
-	
-	private Integer getPathfinderValue(Integer[] cube){
-		return this.pathFinder.get(Arrays.deepToString(cube));
+	/**
+	 * Drop the computed route of this Unit, and stop following a flow field.
+	 * 
+	 * @post	| new.path == null && new.flowTarget == -1
+	 */
+	void clearPath(){
+		this.setPath(null);
+		this.flowTarget = -1;
 	}
 	
-	private boolean addToPathfinder(Integer[] cube, int nbSteps){
-		boolean shouldAdd = true;
-		if (this.getPathfinderValue(cube) != null && this.getPathfinderValue(cube) <= nbSteps)
-			shouldAdd = false;
-		if (shouldAdd)
-			this.pathFinder.put(Arrays.deepToString(cube), nbSteps);
-		return shouldAdd;
-		
+	/**
+	 * Set the route of this Unit to the given route, and register in the world
+	 * of this Unit which cubes it passes.
+	 */
+	private void setPath(int[] path){
+		if (this.path != null)
+			this.getWorld().removeRoute(this, this.path);
+		this.path = path;
+		if (path != null)
+			this.getWorld().addRoute(this, path);
 	}
 	
-	private boolean pathfinderContains(Integer[] cube){
-		return this.pathFinder.containsKey(Arrays.deepToString(cube));
-	}
+	/**
+	 * Variable registering the identifiers of the cubes on the route to the
+	 * target position, or null if there is no valid route.
+	 */
+	private int[] path = null;
 	
-	private void clearPathfinder(){
-		this.pathFinder = new HashMap<>();
-	}
+	/**
+	 * Variable registering the position in the route of the next cube
+	 * to move to.
+	 */
+	private int pathStep = 0;
 	
-	private ArrayList<Integer[]> searchPathStep(Integer[] cube, int numberSteps){
-		ArrayList<Integer[]> nextSteps = new ArrayList<>();
-		for (Integer[] nextCube: this.getWorld().getValidNeigbouringCubes(cube)){
-			if (this.isStandableCube(Helper.converter(nextCube))){
-				if (this.getPathfinderValue(nextCube) == null ||
-					this.getPathfinderValue(nextCube) > numberSteps+1){
-					nextSteps.add(nextCube);
-				}
-			}
-		}
-		return nextSteps;
-	}
-	
-	private boolean setPath(Integer[] target, Integer[] current){
-		this.clearPathfinder();
-		this.addToPathfinder(target, 0);
-		ArrayList<Integer[]> nextSteps = new ArrayList<>();
-		nextSteps.add(target);
-		ArrayList<Integer[]> foundCubes = new ArrayList<>();
-		int nbSteps = 0;
-		while (!this.pathfinderContains(current) && !nextSteps.isEmpty()){
-			for (Integer[] nextCube: nextSteps){
-				foundCubes.addAll(this.searchPathStep(nextCube, nbSteps));
-			}
-			nbSteps += 1;
-			nextSteps.clear();
-			for (Integer[] foundCube: foundCubes){
-				if (this.addToPathfinder(foundCube, nbSteps))
-					nextSteps.add(foundCube);
-			}
-			foundCubes.clear();
-		}
-		return this.pathfinderContains(current);		
-	}
+	/**
+	 * Variable registering the identifier of the target cube of the flow field
+	 * this Unit follows instead of a computed route, or -1 if there is none.
+	 * The flow field is kept up to date by the world, so this Unit need not be
+	 * told about terrain changes along the way.
+	 */
+	private int flowTarget = -1;
 
 	
 	/**
@@ -1352,19 +1735,26 @@ public class Unit extends GameObject{
 	 * 			The amount of gaming time a Unit has worked since the last update.
 	 * @post	The Unit's time left to finish is work is updated.
 	 * 			| (new.timeToWork == this.timeToWork - duration)
-	 * @post	If the Unit is ready working, it is set back to the idle State.
-	 * 			| if (this.timeToWork - duration < 0)
-	 * 			| 		(new.isState(State.IDLE))
 	 * @post	If the Unit has finished working, timeToWork is set to 0.
 	 * 			| (new.timeToWork == 0)
+	 * @effect	If the Unit is ready working, it is set back to the idle State
+	 * 			and the result of its work is applied, both together in the
+	 * 			commit phase of the current tick of its world.
+	 * 			| if (this.timeToWork - duration <= 0)
+	 * 			|	then this.submit(() -> {setState(State.IDLE);
+	 * 			|		finishWorkAt(workingSpace[0], workingSpace[1], workingSpace[2])})
 	 */
 	private void finishWork(double duration){
 		if (this.timeToWork > duration)
 			this.timeToWork -= duration;
 		else{
 			this.timeToWork = 0;
-			this.setState(State.IDLE);
-			this.finishWorkAt(this.workingSpace[0], this.workingSpace[1], this.workingSpace[2]);
+			int[] cube = this.workingSpace;
+			this.submit(() -> {
+				this.setState(State.IDLE);
+				if (this.getWorld() != null)
+					this.finishWorkAt(cube[0], cube[1], cube[2]);
+			});
 		}
 	}
 	
@@ -1408,17 +1798,19 @@ public class Unit extends GameObject{
 	 * 
 	 * @effect	workAt a valid random cube.
 	 * 			| this.workAt(randomPos[0], randomPos[1], randomPos[2])
-	 * 			| where randomPos in this.getSurroundingCubes(this.getPosition())
+	 * 			| where randomPos is the cube of this Unit or a neighbouring cube
 	 * @throws NullPointerException
 	 */
 	public void work() throws NullPointerException{
 		if (this.getWorld() == null)
 			throw new NullPointerException();
-		List<Integer[]> possibleWorkingPlaces = this.getWorld().getSurroundingCubes(this.getPosition());
-		int nbPossiblePlaces = possibleWorkingPlaces.size();
-		int[] randomPos = Helper.converter(possibleWorkingPlaces.get(
-				(int) (Math.random()*nbPossiblePlaces)));
-		this.workAt(randomPos[0], randomPos[1], randomPos[2]);
+		CubeSpace space = this.getWorld().getCubeSpace();
+		int current = space.getId(this.getPosition());
+		int[] possibleWorkingPlaces = new int[27];
+		int nbPossiblePlaces = space.getNeighbours(current, possibleWorkingPlaces);
+		possibleWorkingPlaces[nbPossiblePlaces++] = current;
+		int randomPos = possibleWorkingPlaces[(int) (this.random.nextDouble()*nbPossiblePlaces)];
+		this.workAt(space.getX(randomPos), space.getY(randomPos), space.getZ(randomPos));
 	}
 	
 	/**
@@ -1440,13 +1832,15 @@ public class Unit extends GameObject{
 	 * 			If the current state can not be replaced with the workingState.
 	 * 			| !this.isStateTransitionAllowed(State.WORKING)
 	 * @throws 	IllegalArgumentException
-	 * 			If the selected cube is not a valid neigbouring cube.
-	 * 			| !this.containsCube(
-	 *			|		this.getSurroundingCubes(this.getPosition()), new int[] {x,y,z}))
+	 * 			If the selected cube is not the cube of this unit or a valid
+	 * 			neigbouring cube.
+	 * 			| !this.getWorld().isValidCube(x, y, z) ||
+	 *			|		space.getStepDistance(space.getId(x,y,z), space.getId(this.getPosition())) > 1
 	 */
 	public void workAt(int x, int y, int z) throws IllegalStateException, IllegalArgumentException{
-		if (!Helper.containsCube(
-				this.getWorld().getSurroundingCubes(this.getPosition()), new int[] {x,y,z}))
+		CubeSpace space = this.getWorld().getCubeSpace();
+		if (!space.isValidCube(x, y, z) ||
+				space.getStepDistance(space.getId(x, y, z), space.getId(this.getPosition())) > 1)
 			throw new IllegalArgumentException("Can not work on selected cube");
 		this.workingSpace = new int[]{x,y,z};
 		this.startWorking();
@@ -1730,7 +2124,9 @@ public class Unit extends GameObject{
 	 * @param 	defender
 	 * 			The unit to which this will fight.
 	 * @effect	this.attack(defender)
-	 * @effect	defender.defend(this)
+	 * @effect	The defender defends itself, once the changes to other units
+	 * 			are committed.
+	 * 			| this.submit(() -> defender.defend(this))
 	 * @throws 	IllegalStateException
 	 * 			The Units can't already be fighting and a Unit can't
 	 * 			fight itself.
@@ -1753,7 +2149,10 @@ public class Unit extends GameObject{
 				throw new IllegalArgumentException("Unit from the same faction");
 		}
 		this.attack(defender);
-		defender.defend(this);
+		this.submit(() -> {
+			if (this.isAlive() && defender.isAlive())
+				defender.defend(this);
+		});
 	}
 	
 	public boolean canFightWith(Unit defender){
@@ -1850,6 +2249,8 @@ public class Unit extends GameObject{
 	 *			|		this.isDefendingTo.getStrength()/10.0+0.5)
 	 */
 	private void defend(Unit attacker){
+		if (this.getWorld() != null)
+			this.getWorld().wake(this);
 		this.interrupt();
 		if ((! this.tryToDodge(attacker)) && (! this.block(attacker))){
 			int newHitPoints = (int) (this.getCurrentHitPoints()-
@@ -1873,18 +2274,21 @@ public class Unit extends GameObject{
 	 * 			|	(new.getPosition() == this.getPosition().dodge())
 	 * 			
 	 * @return 	Whether the Unit was able to dodge
-	 * 			| if (Math.random() >= 0.2*this.getAgility()/this.isDefendingTo.getAgility())
+	 * 			| if (this.random.nextDouble() >= 0.2*this.getAgility()/this.isDefendingTo.getAgility())
 	 * 			|	(result == true)
 	 * 			| else
 	 * 			| 	(result == false)
 	 */
 	private boolean tryToDodge(Unit attacker){
 		double dodgeProbability = 0.2*this.getAgility()/attacker.getAgility();
-		double result = Math.random();
+		double result = this.random.nextDouble();
 		if (Util.fuzzyGreaterThanOrEqualTo(result, dodgeProbability))
 			return false;
 		else{
 			this.setPosition(this.dodgePosition());
+			if (this.isMoving())
+				// the step it was on no longer starts from where it landed
+				this.stopStep();
 			return true;
 		}
 	}
@@ -1900,7 +2304,7 @@ public class Unit extends GameObject{
 		boolean goodPosition = false;
 		Vector newPosition = this.getPosition().clear();
 		while (! goodPosition){
-			double[] jumpStep = new double[] {Math.random()*2-1.0, Math.random()*2-1.0, 0};
+			double[] jumpStep = new double[] {this.random.nextDouble()*2-1.0, this.random.nextDouble()*2-1.0, 0};
 			// x +- 0..1; y +- 0..1; same z plane
 			newPosition = this.getPosition().addVector(new Vector(jumpStep));
 			goodPosition = (this.getWorld().isValidPosition(newPosition) && 
@@ -1915,7 +2319,7 @@ public class Unit extends GameObject{
 	 * Succeeds with a chance dependent on Unit and attacker.
 	 * 
 	 * @return 	Whether the Unit was able to block.
-	 * 			| if (Math.random() >= 0.25*(this.getAgility() + this.getStrength())/
+	 * 			| if (this.random.nextDouble() >= 0.25*(this.getAgility() + this.getStrength())/
 				| 	(1.0*this.isDefendingTo.getAgility()+this.isDefendingTo.getStrength())
 	 * 			|		(result == true)
 	 * 			| else
@@ -1924,7 +2328,7 @@ public class Unit extends GameObject{
 	private boolean block(Unit attacker){
 		double blockProbability = 0.25*(this.getAgility() + this.getStrength())/
 				(1.0*attacker.getAgility()+attacker.getStrength());
-		double result = Math.random();
+		double result = this.random.nextDouble();
 		if (Util.fuzzyGreaterThanOrEqualTo(result, blockProbability))
 			return false;
 		else			
@@ -2008,6 +2412,19 @@ public class Unit extends GameObject{
 			this.setOrientation(Unit.defaultOrientation);
 	}
 	
+	/**
+	 * Return the time this resting Unit needs to recover at least one point,
+	 * or to stop resting if it has fully recovered.
+	 */
+	private double getTimeToRecover(){
+		double nbOfTicks = 1;
+		if (this.getCurrentHitPoints() != this.getMaxHitPoints())
+			nbOfTicks = Math.ceil(200.0/this.getToughness());
+		else if (this.getCurrentStaminaPoints() != this.getMaxStaminaPoints())
+			nbOfTicks = Math.ceil(100.0/this.getToughness());
+		return nbOfTicks*Unit.restingUpdateTime-this.elapsedRestingTime;
+	}
+	
 	/**
 	 * Method for advancing the parameters of a resting Unit when the difference in time
 	 * is duration.
@@ -2106,6 +2523,8 @@ public class Unit extends GameObject{
 			this.startDefaultBehavior();
 		else
 			this.stopDefaultBehavior();
+		if (this.getWorld() != null)
+			this.getWorld().wake(this);
 	}
 	
 	/**
@@ -2164,19 +2583,26 @@ public class Unit extends GameObject{
 //
 //			if (i >= possibleTasks.size())
 			else{
-				double rand = Math.random();
-				if (rand < 0.25 && this.getAttackableUnit() != null)
-					this.fight(this.getAttackableUnit());
+				double rand = this.takeRoll();
+				Unit attackableUnit = this.preparedAttackableUnit;
+				if (!this.isDecisionPrepared && rand < 0.25)
+					attackableUnit = this.getAttackableUnit();
+				if (rand < 0.25 && attackableUnit != null && this.canFightWith(attackableUnit))
+					this.fight(attackableUnit);
 				else if (rand<0.5)
 					this.work();
 				else if (rand<0.75)
 					this.rest();
 				else
 					try{
-					this.moveTo(this.getWorld().getRandomCube());
+					int[] cube = this.isDecisionPrepared? this.preparedCube:
+						this.getWorld().getRandomCube(this.random);
+					this.moveTo(cube);
 					} catch (IllegalArgumentException e) {
+						// the prepared cube may have been dug away beneath
 						if (!e.getMessage().equals("Position not reachable") 
-								&& !e.getMessage().equals("Already standing on selected cube"))
+								&& !e.getMessage().equals("Already standing on selected cube")
+								&& !e.getMessage().equals("Can not stand on selected cube"))
 							throw e;
 				}
 			}
@@ -2200,8 +2626,10 @@ public class Unit extends GameObject{
 	
 	
 	public boolean executeTask(Task task){
-		this.clearVariableTable(); // clean up old variable types from earlier tasks
+		this.executionContext.clear(); // clean up the frames and variables of earlier tasks
 		this.setTask(task);
+		if (this.getWorld() != null)
+			this.getWorld().wake(this);
 		if (!task.execute(this)){
 			this.interrupt();
 			return false;
@@ -2214,12 +2642,14 @@ public class Unit extends GameObject{
 		if (this.isExecutingTask()){
 			this.task.interrupt();
 			this.task = null;
+			this.executionContext.clear();
 		}
 	}
 	
 	public void finishTask(){
 		this.task.finish();
 		this.task = null;
+		this.executionContext.clear();
 	}
 	
 	
@@ -2275,33 +2705,20 @@ public class Unit extends GameObject{
 		return (task != null);
 	}
 	
-	// -------------------
-	// VARIABLE STATEMENTS
-	// -------------------
-	
-	// Handle this on unit level, such that there is no interference between variable declaration of other tasks on other units or even previous tasks on this unit
-	private Map<String, Object> variableTable = new HashMap<>();
-	
-	public void writeVariable(String name, Object value) throws IllegalArgumentException {
-		if (variableTable.containsKey(name)) {
-			if (variableTable.get(name).getClass() != value.getClass()) {
-				throw new IllegalArgumentException("assignment to " + name + " of type " + value.getClass() + ", while " + variableTable.get(name).getClass() + " expected");
-			}
-		}
-		variableTable.put(name, value);
-	}
-	
-	public Object readVariable(String name) throws IllegalArgumentException {
-		if (!variableTable.containsKey(name)) {
-			throw new IllegalArgumentException("reading " + name + " not possible, since variable was not assigned yet");
-		}
-		return variableTable.get(name);
-	}
-	
-	public void clearVariableTable() {
-		variableTable.clear();
+	/**
+	 * Return the context in which this Unit executes the statements of its
+	 * task.
+	 */
+	@Basic @Immutable
+	public ExecutionContext getExecutionContext(){
+		return this.executionContext;
 	}
 	
+	/**
+	 * Variable registering the execution context of this Unit, reused by
+	 * every task it executes.
+	 */
+	private final ExecutionContext executionContext = new ExecutionContext(this);
 	
 	// -----------------
 	// EXPERIENCE POINTS
@@ -2349,7 +2766,7 @@ public class Unit extends GameObject{
 		int ExpReward = (Math.floorMod(this.getExperiencePoints(),10) + ExpPoints)/
 								nbExpPointsForReward;
 		for (int i=0; i<ExpReward; i++){
-			double randomNumber = Math.random()*3;
+			double randomNumber = this.random.nextDouble()*3;
 			if (Util.fuzzyLessThanOrEqualTo(randomNumber,1))
 				this.setStrength(this.getStrength()+1);
 			else if(Util.fuzzyLessThanOrEqualTo(randomNumber,2))
@@ -2428,8 +2845,8 @@ public class Unit extends GameObject{
 		if (this.getCurrentHitPoints() != 0)
 			throw new IllegalStateException();
 		if (this.isCarryingMaterial())
-			this.dropMaterial(this.getPosition().getCubeCoordinates()[0],
-					this.getPosition().getCubeCoordinates()[1], this.getPosition().getCubeCoordinates()[2]);
+			this.dropMaterial(this.getPosition().getCubeCoordinate(0),
+					this.getPosition().getCubeCoordinate(1), this.getPosition().getCubeCoordinate(2));
 		this.isAlive = false;
 		this.getFaction().removeUnit(this);
 		if (this.getWorld() != null)
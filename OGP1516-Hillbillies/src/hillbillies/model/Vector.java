@@ -1,7 +1,5 @@
 package hillbillies.model;
 
-import java.util.Arrays;
-
 import be.kuleuven.cs.som.annotate.*;
 import ogp.framework.util.Util;
 
@@ -212,14 +210,25 @@ public class Vector {
 	 */
 	public int[] getCubeCoordinates(){
 		int[] cubeCoordinates = new int[3];
-		for (int i=0; i<3; i++){
-			double elementToInspect = this.getVector()[i];
-			if (Util.fuzzyGreaterThanOrEqualTo(elementToInspect,0.0))
-				cubeCoordinates[i] = (int) (elementToInspect/cubeLength);
-			else
-				cubeCoordinates[i] = (int) (elementToInspect/cubeLength - 1);
-		}
-		return cubeCoordinates.clone();
+		for (int i=0; i<3; i++)
+			cubeCoordinates[i] = this.getCubeCoordinate(i);
+		return cubeCoordinates;
+	}
+	
+	/**
+	 * Return the coordinate along the given axis of the cube the Vector is
+	 * occupying.
+	 * 
+	 * @param	axis
+	 * 			The axis, 0 for x, 1 for y and 2 for z.
+	 * @return	| result == getCubeCoordinates()[axis]
+	 */
+	public int getCubeCoordinate(int axis){
+		double elementToInspect = this.vector[axis];
+		if (Util.fuzzyGreaterThanOrEqualTo(elementToInspect,0.0))
+			return (int) (elementToInspect/cubeLength);
+		else
+			return (int) (elementToInspect/cubeLength - 1);
 	}
 	
 	/**
@@ -317,11 +326,10 @@ public class Vector {
 	 * 			| result == (this.getCubeCoordinates == target.getCubeCoordinates)
 	 */
 	public boolean isTheSameCube(Vector target){
-		if ((this.getCubeCoordinates() == null) || (target.getCubeCoordinates() == null) ||
-				(this.getLength() != target.getLength()))
+		if (this.getLength() != target.getLength())
 			return false;
-		for (int i=0;i<this.getCubeCoordinates().length;i++)
-			if (this.getCubeCoordinates()[i] != target.getCubeCoordinates()[i])
+		for (int i=0;i<3;i++)
+			if (this.getCubeCoordinate(i) != target.getCubeCoordinate(i))
 				return false;
 		return true;
 	}
@@ -396,7 +404,8 @@ public class Vector {
 	public boolean inCube(int[] cube) throws IllegalArgumentException{
 		if (cube.length != 3)
 			throw new IllegalArgumentException();
-		return Arrays.equals(this.getCubeCoordinates(),cube);
+		return this.getCubeCoordinate(0) == cube[0] && this.getCubeCoordinate(1) == cube[1] &&
+				this.getCubeCoordinate(2) == cube[2];
 	}
 	
 	public boolean isOnEdge(){
@@ -2,69 +2,144 @@ package hillbillies.model;
 
 import java.util.Set;
 import java.util.function.Predicate;
-import java.util.stream.Collectors;
 
-import hillbillies.util.ConnectedToBorder;
 import hillbillies.model.Unit;
+import hillbillies.model.connectivity.BorderConnectivity;
+import hillbillies.model.connectivity.ConnectivityBackend;
+import hillbillies.model.path.FlowField;
+import hillbillies.model.path.FlowFieldCache;
+import hillbillies.model.path.PathFinder;
 import hillbillies.part2.listener.TerrainChangeListener;
 import ogp.framework.util.Util;
 
+import java.util.AbstractSet;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
 
 
 
 public class World {
 	public World(int[][][] terrainTypes, TerrainChangeListener listener) throws IllegalArgumentException{
-		this.terrain = terrainTypes.clone();
+		this(terrainTypes, listener, ConnectivityBackend.SEARCH);
+	}
+	
+	/**
+	 * Initialize this new world with the given terrain, keeping track of which
+	 * solid cubes are connected to the border in the given way.
+	 * 
+	 * @param	terrainTypes
+	 * 			The terrain type of every cube, indexed by its coordinates.
+	 * @param	listener
+	 * 			The listener to notify of terrain changes.
+	 * @param	backend
+	 * 			The way connectivity to the border is kept track of.
+	 */
+	public World(int[][][] terrainTypes, TerrainChangeListener listener, ConnectivityBackend backend)
+			throws IllegalArgumentException{
+		this(terrainTypes, listener, backend, TickMode.SERIAL, new Random().nextLong());
+	}
+	
+	/**
+	 * Initialize this new world with the given terrain, advancing its units in
+	 * the given way, and drawing all its random numbers from generators
+	 * derived from the given seed.
+	 * 
+	 * @param	terrainTypes
+	 * 			The terrain type of every cube, indexed by its coordinates.
+	 * @param	listener
+	 * 			The listener to notify of terrain changes.
+	 * @param	backend
+	 * 			The way connectivity to the border is kept track of.
+	 * @param	tickMode
+	 * 			The way units are advanced in every tick.
+	 * @param	seed
+	 * 			The seed of the random numbers of this world.
+	 * @post	| new.getTickMode() == tickMode
+	 * @note	Two worlds created with the same terrain and seed, and advanced
+	 * 			in the same way, evolve the same, whatever their tick mode.
+	 */
+	public World(int[][][] terrainTypes, TerrainChangeListener listener, ConnectivityBackend backend,
+			TickMode tickMode, long seed) throws IllegalArgumentException{
+		this.tickMode = tickMode;
+		this.random = new Random(seed);
+		this.cubeSpace = new CubeSpace(terrainTypes.length, terrainTypes[0].length,
+				terrainTypes[0][0].length);
+		this.terrain = new TerrainMap(this.cubeSpace, terrainTypes);
 		this.listener = listener;
-		this.connectedToBorderHelper = 
-				new	ConnectedToBorder(this.getNbCubesX(),this.getNbCubesY(),this.getNbCubesZ());
-		List<int[]> cubesToCheck = new LinkedList<>();
-		for (int x=0; x<this.getNbCubesX(); x++){
-			for (int y=0; y<this.getNbCubesY(); y++){
-				for (int z=0; z<this.getNbCubesZ(); z++){
-					int terrain = terrainTypes[x][y][z];
-					if (!World.isValidTerrainType(terrain))
-						throw new IllegalArgumentException();
-					if (World.isPassableTerrain(terrain))
-						this.connectedToBorderHelper.changeSolidToPassable(x, y, z);
-					else
-						cubesToCheck.add(new int[]{x,y,z});
-						
+		this.connectivity = backend.create(this.cubeSpace);
+		this.cubesToCollapse = new TimerWheel(this.cubeSpace.getNbCubes(), World.collapseResolution);
+		this.pathFinder = new PathFinder(this.cubeSpace);
+		this.flowFields = new FlowFieldCache(this.pathFinder, this::isStandableId,
+				World.maxNbFlowFields);
+		this.standable = new long[(this.cubeSpace.getNbCubes()+63)/64];
+		this.changedCubesMask = new long[this.standable.length];
+		this.logGrid = new ProximityGrid<>(this.cubeSpace, World.proximityCellSize);
+		this.boulderGrid = new ProximityGrid<>(this.cubeSpace, World.proximityCellSize);
+		this.workshopGrid = new ProximityGrid<>(this.cubeSpace, World.proximityCellSize);
+		for (int chunk=0; chunk<this.terrain.getNbChunks(); chunk++){
+			boolean uniform = this.terrain.isUniformChunk(chunk);
+			if (!uniform || this.terrain.getUniformType(chunk) == World.TYPE_WORKSHOP)
+				this.addWorkshops(chunk);
+			if (uniform && World.isSolidTerrain(this.terrain.getUniformType(chunk)))
+				// no cube can be stood in
+				continue;
+			int[] origin = this.terrain.getChunkOrigin(chunk);
+			int[] limit = this.terrain.getChunkLimit(chunk);
+			for (int x=origin[0]; x<limit[0]; x++){
+				for (int y=origin[1]; y<limit[1]; y++){
+					for (int z=origin[2]; z<limit[2]; z++){
+						// inner cubes of a uniform passable chunk only have passable neighbours
+						if (!uniform || z <= 1 || x == origin[0] || x == limit[0]-1 ||
+								y == origin[1] || y == limit[1]-1 || z == origin[2] || z == limit[2]-1)
+							this.setStandable(x, y, z, this.computeStandable(x, y, z));
+					}
 				}
 			}
 		}
-		List<int[]> cubesToCollapse = new LinkedList<>();
-		for (int[] cube: cubesToCheck){
-			if (!this.connectedToBorderHelper.isSolidConnectedToBorder(cube[0], cube[1], cube[2])){
-				cubesToCollapse.add(cube);
-			}
-		}
-		this.updateCubesToCollapse(cubesToCollapse);
+		int nbCutOff = this.connectivity.reset(id -> World.isPassableTerrain(this.terrain.getType(id)));
+		for (int i=0; i<nbCutOff; i++)
+			this.scheduleCollapse(this.connectivity.getChangedCube(i));
 	}
 	
 	private final TerrainChangeListener listener;
-	private final ConnectedToBorder connectedToBorderHelper;
+	private final CubeSpace cubeSpace;
+	private final BorderConnectivity connectivity;
+	private final PathFinder pathFinder;
+	private final FlowFieldCache flowFields;
+	private static final int maxNbFlowFields = 8;
 	
-	private int[][][] terrain;
+	/**
+	 * Variable registering the terrain type of every cube of this world.
+	 */
+	private final TerrainMap terrain;
 	
 	
 	public int getNbCubesX(){
-		return this.terrain.length;
+		return this.cubeSpace.getNbCubesX();
 	}
 	
 	public int getNbCubesY(){
-		return this.terrain[0].length;
+		return this.cubeSpace.getNbCubesY();
 	}
 	
 	public int getNbCubesZ(){
-		return this.terrain[0][0].length;
+		return this.cubeSpace.getNbCubesZ();
+	}
+	
+	/**
+	 * Return the cube space identifying the cubes of this world.
+	 */
+	public CubeSpace getCubeSpace(){
+		return this.cubeSpace;
 	}
 	
 	public boolean isValidPosition(Vector position){
@@ -79,40 +154,204 @@ public class World {
 	public int getTerrainType(int x, int y, int z) throws IllegalArgumentException{
 		if (!this.isValidCube(x, y, z))
 			throw new IllegalArgumentException();
-		return this.terrain[x][y][z];
+		return this.terrain.getType(x, y, z);
 	}
 	
 	public int getTerrainType(Vector position) throws IllegalArgumentException{
 		if (!this.isValidPosition(position))
 			throw new IllegalArgumentException();
-		int[] cube = position.getCubeCoordinates();
-		return this.terrain[cube[0]][cube[1]][cube[2]];
+		return this.terrain.getType(this.cubeSpace.getId(position));
 	}
 	
 	public void setCubeType(int x, int y, int z, int newType) throws IllegalArgumentException{
 		if (!isValidCoordinateX(x) || !isValidCoordinateY(y) || !isValidCoordinateZ(z) ||
 				!isValidTerrainType(newType))
 			throw new IllegalArgumentException();
-		this.terrain[x][y][z] = newType;
-		this.listener.notifyTerrainChanged(x, y, z);
-		if (World.isPassableTerrain(newType)){
-			List<int[]> cubesToUpdate =
-					this.connectedToBorderHelper.changeSolidToPassable(x, y, z);
-			this.updateCubesToCollapse(cubesToUpdate);
-		}
+		int oldType = this.terrain.getType(x, y, z);
+		this.terrain.setType(this.cubeSpace.getId(x, y, z), newType);
+		if (oldType == World.TYPE_WORKSHOP && newType != World.TYPE_WORKSHOP)
+			this.workshopGrid.remove(this.cubeSpace.getId(x, y, z), Vector.getCubeCenter(new int[]{x,y,z}));
+		else if (oldType != World.TYPE_WORKSHOP && newType == World.TYPE_WORKSHOP)
+			this.workshopGrid.add(this.cubeSpace.getId(x, y, z), Vector.getCubeCenter(new int[]{x,y,z}));
+		this.updateStandable(x, y, z);
+		this.wakeNear(this.cubeSpace.getId(x, y, z));
+		this.flowFields.notifyTerrainChanged(x, y, z);
+		this.notifyRoutesNear(x, y, z);
+		if (this.isInTerrainTransaction())
+			this.addChangedCube(this.cubeSpace.getId(x, y, z));
 		else{
-			this.connectedToBorderHelper.changePassableToSolid(x, y, z);
-			// impossible that cubes will be disconnected from border by this operation 
+			this.startTerrainTransaction();
+			this.addChangedCube(this.cubeSpace.getId(x, y, z));
+			this.commitTerrainTransaction();
 		}
 	}
 	
-	private void updateCubesToCollapse(List<int[]> listOfCubes){
-		for (int[] cube: listOfCubes)
-			if (!Helper.mapContainsIntArray(this.cubesToCollapse, cube))
-				this.cubesToCollapse.put(cube, Math.random()*5);
+	/**
+	 * Start a terrain transaction in this world.
+	 * 
+	 * Until the transaction is committed, cubes changed by setCubeType get
+	 * their new type right away, but the listener of this world is not
+	 * notified, and it is not checked which cubes are cut off from the border.
+	 * 
+	 * @post	| new.isInTerrainTransaction()
+	 * @throws	IllegalStateException
+	 * 			A terrain transaction has already been started.
+	 * 			| isInTerrainTransaction()
+	 */
+	public void startTerrainTransaction() throws IllegalStateException{
+		if (this.isInTerrainTransaction())
+			throw new IllegalStateException("Terrain transaction already started");
+		this.inTerrainTransaction = true;
+	}
+	
+	/**
+	 * Return whether a terrain transaction has been started and not yet
+	 * committed in this world.
+	 */
+	public boolean isInTerrainTransaction(){
+		return this.inTerrainTransaction;
+	}
+	
+	private boolean inTerrainTransaction = false;
+	
+	/**
+	 * Commit the terrain transaction of this world.
+	 * 
+	 * The listener is notified of all changed cubes; a batch listener gets
+	 * them in a single notification. The connectivity of the changed cubes to
+	 * the border is then updated in one go, and every cube that is cut off by
+	 * the changes is scheduled to collapse.
+	 * 
+	 * @post	| !new.isInTerrainTransaction()
+	 * @throws	IllegalStateException
+	 * 			No terrain transaction has been started.
+	 * 			| !isInTerrainTransaction()
+	 */
+	public void commitTerrainTransaction() throws IllegalStateException{
+		if (!this.isInTerrainTransaction())
+			throw new IllegalStateException("No terrain transaction started");
+		this.inTerrainTransaction = false;
+		int nbChanged = this.nbChangedCubes;
+		this.nbChangedCubes = 0;
+		if (this.listener instanceof BatchTerrainChangeListener){
+			List<int[]> cubes = new ArrayList<>(nbChanged);
+			for (int i=0; i<nbChanged; i++)
+				cubes.add(this.cubeSpace.getCube(this.changedCubes[i]));
+			((BatchTerrainChangeListener) this.listener).notifyTerrainChanged(cubes);
+		}
+		else
+			for (int i=0; i<nbChanged; i++){
+				int id = this.changedCubes[i];
+				this.listener.notifyTerrainChanged(this.cubeSpace.getX(id), this.cubeSpace.getY(id),
+						this.cubeSpace.getZ(id));
+			}
+		// cubes that became solid can only connect cubes, so they go first
+		int nbDug = 0;
+		for (int i=0; i<nbChanged; i++){
+			int id = this.changedCubes[i];
+			this.changedCubesMask[id >>> 6] &= ~(1L << id);
+			if (World.isPassableTerrain(this.terrain.getType(id)))
+				this.changedCubes[nbDug++] = id;
+			else
+				this.connectivity.markSolid(id);
+		}
+		int nbDisconnected = this.connectivity.markPassable(this.changedCubes, nbDug);
+		for (int i=0; i<nbDisconnected; i++)
+			this.scheduleCollapse(this.connectivity.getChangedCube(i));
+	}
+	
+	/**
+	 * Register that the cube with the given identifier changed during the
+	 * current terrain transaction.
+	 */
+	private void addChangedCube(int id){
+		if ((this.changedCubesMask[id >>> 6] & (1L << id)) != 0)
+			return;
+		this.changedCubesMask[id >>> 6] |= 1L << id;
+		if (this.nbChangedCubes == this.changedCubes.length)
+			this.changedCubes = Arrays.copyOf(this.changedCubes, 2*this.nbChangedCubes);
+		this.changedCubes[this.nbChangedCubes++] = id;
+	}
+	
+	/**
+	 * Variables registering the identifiers of the cubes changed during the
+	 * current terrain transaction, each listed once, and a bit per cube telling
+	 * whether it is listed.
+	 */
+	private int[] changedCubes = new int[16];
+	private int nbChangedCubes = 0;
+	private final long[] changedCubesMask;
+	
+	/**
+	 * Let the cube with the given identifier collapse after a random time, 
+	 * unless it is already going to collapse.
+	 */
+	private void scheduleCollapse(int id){
+		if (!this.cubesToCollapse.isScheduled(id))
+			this.cubesToCollapse.schedule(id, this.getTime()+this.random.nextDouble()*5);
+	}
+	
+	/**
+	 * Timer wheel registering the simulation time at which each cube that is
+	 * no longer connected to the border collapses, by identifier of the cube.
+	 */
+	private final TimerWheel cubesToCollapse;
+	
+	/**
+	 * The duration of a tick of the timer wheel of collapsing cubes.
+	 */
+	private static final double collapseResolution = 1.0/64;
+	
+	/**
+	 * Return the way the units of this world are advanced in every tick.
+	 */
+	public TickMode getTickMode(){
+		return this.tickMode;
 	}
 	
-	private Map<int[], Double> cubesToCollapse = new HashMap<>();
+	private final TickMode tickMode;
+	
+	/**
+	 * Return the way time passes in this world.
+	 */
+	public TimeMode getTimeMode(){
+		return this.timeMode;
+	}
+	
+	/**
+	 * Set the way time passes in this world to the given mode.
+	 * 
+	 * @param	timeMode
+	 * 			The new way time passes in this world.
+	 * @post	| new.getTimeMode() == timeMode
+	 * @effect	All sleeping game objects are woken up, and fall asleep again
+	 * 			as the new mode prescribes in the next tick.
+	 * @throws	IllegalArgumentException
+	 * 			The given mode is not effective.
+	 */
+	public void setTimeMode(TimeMode timeMode) throws IllegalArgumentException{
+		if (timeMode == null)
+			throw new IllegalArgumentException();
+		for (GameObject object: new ArrayList<>(this.sleeps.keySet()))
+			this.wake(object);
+		this.timeMode = timeMode;
+	}
+	
+	private TimeMode timeMode = TimeMode.FIXED_STEP;
+	
+	/**
+	 * Variable registering the random generator of this world, from which
+	 * the generators of its units are seeded as well.
+	 */
+	private final Random random;
+	
+	/**
+	 * Return the simulation time of this world, being the total duration by
+	 * which its time has been advanced.
+	 */
+	public double getTime(){
+		return this.cubesToCollapse.getTime();
+	}
 	
 	public boolean isValidCube(int x, int y, int z){
 		return (this.isValidCoordinateX(x) && this.isValidCoordinateY(y) &&
@@ -136,16 +375,27 @@ public class World {
 				this.isValidPosition(unit.getPosition()));
 	}
 	
+	/**
+	 * Add a new unit with random attributes to this world, at a random cube,
+	 * if this world has room for another unit.
+	 * 
+	 * @param	enableDefaultBehavior
+	 * 			Whether the new unit performs default behaviour.
+	 * @effect	The new unit is added to this world, which lets it draw its
+	 * 			random numbers from a generator seeded by this world.
+	 * 			| addGameObjectToWorld(result)
+	 * @return	The new unit, or null if it could not be added.
+	 */
 	public Unit spawnUnit(boolean enableDefaultBehavior){
 		try{
 			if (this.getNbUnits()<World.maxNbUnits){
 				Unit unit = new Unit(
 						"Unit",
 						this.getRandomCube(),
-						(int) (75*Math.random())+25,
-						(int) (75*Math.random())+25,
-						(int) (75*Math.random())+25,
-						(int) (75*Math.random())+25,
+						(int) (75*this.random.nextDouble())+25,
+						(int) (75*this.random.nextDouble())+25,
+						(int) (75*this.random.nextDouble())+25,
+						(int) (75*this.random.nextDouble())+25,
 						enableDefaultBehavior,
 						this.getSpawnFaction());
 				if (this.addGameObjectToWorld(unit))
@@ -156,13 +406,25 @@ public class World {
 	}
 	
 	public int[] getRandomCube(){
+		return this.getRandomCube(this.random);
+	}
+	
+	/**
+	 * Return a random cube of this world a unit can stand in, drawn from the
+	 * given generator.
+	 * 
+	 * @param	random
+	 * 			The generator to draw from.
+	 * @return	| isPassable(result) && hasSolidBeneath(result)
+	 */
+	public int[] getRandomCube(Random random){
 		int[] validCube = new int[]{-1,-1,-1};
 		while (!this.isValidPosition(Vector.getCubeCenter(validCube)) ||
 				!this.isPassable(Vector.getCubeCenter(validCube)) ||
 				!this.hasSolidBeneath(validCube)){
-			int x = (int) (Math.random()*this.getNbCubesX());
-			int y = (int) (Math.random()*this.getNbCubesY());
-			int z = (int) (Math.random()*this.getNbCubesZ());
+			int x = (int) (random.nextDouble()*this.getNbCubesX());
+			int y = (int) (random.nextDouble()*this.getNbCubesY());
+			int z = (int) (random.nextDouble()*this.getNbCubesZ());
 			validCube =  new int[] {x,y,z};
 		}
 		return validCube;
@@ -178,27 +440,89 @@ public class World {
 		return new int[]{cube[0],cube[1],cube[2]-1};
 	}
 	
+	/**
+	 * Return a read-only view on the game objects in this world satisfying the
+	 * given condition.
+	 * 
+	 * @return	The view reflects later additions and removals of game objects,
+	 * 			and tests the condition while it is iterated.
+	 * 			| result.equals({o in getGameObjects() | condition.test(o)})
+	 */
 	public Set<? extends GameObject> 
 		getGameObjectsSatisfying(Predicate<? super GameObject> condition){
-		return this.getGameObjects().stream().filter(condition).collect(Collectors.toSet());		
+		return new AbstractSet<GameObject>(){
+			@Override
+			public Iterator<GameObject> iterator(){
+				return World.this.gameObjects.stream().filter(condition).iterator();
+			}
+			@Override
+			public int size(){
+				return World.this.getNbGameObjectsSatisfying(condition);
+			}
+			@Override
+			public boolean contains(Object object){
+				return World.this.gameObjects.contains(object) && condition.test((GameObject) object);
+			}
+		};
 	}
 	
+	/**
+	 * Return the number of game objects in this world satisfying the given
+	 * condition.
+	 * 
+	 * @return	| result == getGameObjectsSatisfying(condition).size()
+	 */
 	public int getNbGameObjectsSatisfying(Predicate<? super GameObject> condition){
-		return (int) this.getGameObjects().stream().filter(condition).count();		
+		int result = 0;
+		for (GameObject object: this.gameObjects)
+			if (condition.test(object))
+				result++;
+		return result;
 	}
 		
-	@SuppressWarnings("unchecked")
+	/**
+	 * Return a read-only view on the units in this world.
+	 * 
+	 * @return	The view reflects later additions and removals of units.
+	 * 			| result.equals(getGameObjectsSatisfying(o->(o instanceof Unit)))
+	 */
 	public Set<Unit> getUnits(){
-		return (Set<Unit>) this.getGameObjectsSatisfying(o->(o instanceof Unit));
+		return this.unitsView;
 	}
 	
+	/**
+	 * Return the number of units in this world.
+	 * 
+	 * @return	| result == getUnits().size()
+	 */
 	public int getNbUnits(){
-		return this.getNbGameObjectsSatisfying(o->(o instanceof Unit));
+		return this.units.size();
+	}
+	
+	/**
+	 * Return a read-only view on the units of the given faction in this world.
+	 * 
+	 * @return	| result.equals({unit in getUnits() | unit.getFaction() == faction})
+	 */
+	public Set<Unit> getUnitsOfFaction(Faction faction){
+		Set<Unit> result = this.unitsOfFactionViews.get(faction);
+		if (result == null)
+			return Collections.emptySet();
+		return result;
+	}
+	
+	/**
+	 * Return the number of units of the given faction in this world.
+	 * 
+	 * @return	| result == getUnitsOfFaction(faction).size()
+	 */
+	public int getNbUnitsOfFaction(Faction faction){
+		return this.getUnitsOfFaction(faction).size();
 	}
 	
 	private static final int maxNbUnits = 100;
 	
-	private Set<Faction> factionsInWorld = new HashSet<>();
+	private Set<Faction> factionsInWorld = new LinkedHashSet<>();
 	
 	private int getNbFactionsInWorld(){
 		return this.factionsInWorld.size();
@@ -247,25 +571,337 @@ public class World {
 	
 	private final static int maxNbFactions = 5;
 	
+	/**
+	 * Advance the time of this world by the given duration.
+	 * 
+	 * A tick runs in four phases. In the sense phase, the active game objects
+	 * and the cubes that collapse in the tick are collected. In the decide phase, all
+	 * units prepare their tick against that same state, concurrently if this
+	 * world ticks in parallel. In the act phase, the game objects advance one
+	 * by one in the order they became active, only changing their own state;
+	 * changes to the terrain and to other game objects are submitted as
+	 * commands. In the commit phase, the collapsing cubes collapse and the
+	 * commands are applied in the order they were submitted, all in a single
+	 * terrain transaction. Finally, the game objects that came to rest fall
+	 * asleep.
+	 * 
+	 * If this world is driven by events, all game objects fall asleep until
+	 * their next event, and the given duration is covered by a tick up to
+	 * every time at which events are due, only advancing the game objects
+	 * woken up by those events, followed by a tick up to the end of the
+	 * duration.
+	 * 
+	 * @param	duration
+	 * 			The duration to advance the time with.
+	 * @effect	Every tick hook of this world is notified of the start and end of
+	 * 			every phase.
+	 * @throws	IllegalArgumentException
+	 * 			The duration is not valid.
+	 * 			| !isValidDuration(duration)
+	 */
 	public void advanceTime(double duration) throws IllegalArgumentException{
 		if (!isValidDuration(duration))
 			throw new IllegalArgumentException(Double.toString(duration));
-		// collapsing cubes
-		Iterator<int[]> cubeIterator = this.cubesToCollapse.keySet().iterator();
-		while(cubeIterator.hasNext()){
-			int[] cube = cubeIterator.next();
-			if(this.advanceCollapse(cube, duration)){
-				this.collapseCube(cube[0], cube[1], cube[2]);
-				cubeIterator.remove();
+		if (this.getTimeMode() == TimeMode.FIXED_STEP){
+			this.tick(this.getTime()+duration, duration);
+			return;
+		}
+		double end = this.getTime()+duration;
+		boolean isLastTick;
+		do {
+			for (GameObject object: new ArrayList<>(this.activeObjects))
+				this.sleep(object);
+			double time = end;
+			if (!this.alarms.isEmpty() && this.alarms.peek().time < end)
+				time = Math.max(this.alarms.peek().time, this.getTime());
+			isLastTick = (time == end);
+			this.tick(time, time-this.getTime());
+		} while (!isLastTick);
+	}
+	
+	/**
+	 * Advance the time of this world to the given end time, advancing the
+	 * active game objects by the given duration.
+	 */
+	private void tick(double end, double duration){
+		this.startPhase(TickPhase.SENSE);
+		while (!this.alarms.isEmpty() && this.alarms.peek().time <= end){
+			Alarm alarm = this.alarms.poll();
+			if (alarm.object.getWorld() == this && alarm.isCurrent())
+				this.wake(alarm.object);
+		}
+		List<GameObject> gameObjects = new ArrayList<>(this.activeObjects);
+		List<Unit> units = new ArrayList<>();
+		for (GameObject object: gameObjects)
+			if (object instanceof Unit)
+				units.add((Unit) object);
+		int[] cubesCollapsing = new int[this.cubesToCollapse.advanceTo(end)];
+		for (int i=0; i<cubesCollapsing.length; i++)
+			cubesCollapsing[i] = this.cubesToCollapse.getDueItem(i);
+		this.finishPhase(TickPhase.SENSE);
+		
+		this.startPhase(TickPhase.DECIDE);
+		if (this.getTickMode() == TickMode.PARALLEL)
+			units.parallelStream().forEach(unit -> unit.prepareTick(duration));
+		else
+			for (Unit unit: units)
+				unit.prepareTick(duration);
+		this.finishPhase(TickPhase.DECIDE);
+		
+		this.startPhase(TickPhase.ACT);
+		this.isActing = true;
+		try{
+			for (GameObject object: gameObjects){ 
+				if (object.getWorld() == this) //exclude objects that are removed during iteration
+					object.advanceBy(duration);
+			}
+		} finally{
+			this.isActing = false;
+		}
+		this.finishPhase(TickPhase.ACT);
+		
+		this.startPhase(TickPhase.COMMIT);
+		for (Map.Entry<GameObject, Vector> move: this.stagedMoves.entrySet())
+			this.moveInIndexes(move.getKey(), move.getValue());
+		this.stagedMoves.clear();
+		// all terrain changes of a tick cost a single connectivity update
+		this.startTerrainTransaction();
+		try{
+			for (int cube: cubesCollapsing){
+				int x = this.cubeSpace.getX(cube), y = this.cubeSpace.getY(cube), z = this.cubeSpace.getZ(cube);
+				if (this.isSolid(x, y, z))
+					this.collapseCube(x, y, z);
 			}
+			for (int i=0; i<this.commands.size(); i++)
+				this.commands.get(i).run();
+		} finally{
+			this.commands.clear();
+			this.commitTerrainTransaction();
+		}
+		if (this.getTimeMode() == TimeMode.FIXED_STEP)
+			for (GameObject object: gameObjects)
+				if (object.getWorld() == this && object.canSleep())
+					this.sleep(object);
+		this.finishPhase(TickPhase.COMMIT);
+	}
+	
+	// ----------
+	// ACTIVE SET
+	// ----------
+	
+	/**
+	 * Check whether the given game object of this world advances in every
+	 * tick, rather than being asleep.
+	 * 
+	 * A game object at rest falls asleep at the end of a tick, and is woken
+	 * up when a cube in its 3x3x3 neighbourhood changes, when it is moved or
+	 * given something to do, or when it has slept as long as it can. In a
+	 * world driven by events, the other game objects sleep until their next
+	 * event as well.
+	 */
+	public boolean isActive(GameObject object){
+		return this.activeObjects.contains(object);
+	}
+	
+	/**
+	 * Return the number of active game objects in this world.
+	 */
+	public int getNbActiveObjects(){
+		return this.activeObjects.size();
+	}
+	
+	/**
+	 * Wake up the given game object of this world, if it is asleep.
+	 * 
+	 * @post	| new.isActive(object)
+	 * @effect	The object catches up with the time it slept.
+	 */
+	void wake(GameObject object){
+		Sleep sleep = this.sleeps.remove(object);
+		if (sleep != null){
+			this.activeObjects.add(object);
+			object.wakeUp(this.getTime()-sleep.since);
 		}
-		Set<GameObject> gameObjects = new HashSet<>();
-		gameObjects.addAll(this.getGameObjects());
-		for (GameObject object: gameObjects){ 
-			if (object.getWorld() == this) //exclude objects that are removed during iteration
-				object.advanceTime(duration);
+	}
+	
+	private void sleep(GameObject object){
+		if (this.activeObjects.remove(object)){
+			Sleep sleep = new Sleep(this.getTime(), this.nbSleeps++);
+			this.sleeps.put(object, sleep);
+			double maxDuration = object.getMaxSleepDuration();
+			if (this.getTimeMode() == TimeMode.EVENT_DRIVEN)
+				maxDuration = Math.max(object.getTimeToNextEvent(), World.minEventInterval);
+			if (maxDuration < Double.POSITIVE_INFINITY)
+				this.alarms.add(new Alarm(this.getTime()+maxDuration, object, sleep.generation));
 		}
 	}
+	
+	/**
+	 * The shortest time between two events of a game object, so that events
+	 * that are due immediately or only fall short due to rounding cannot
+	 * keep time from passing.
+	 */
+	private static final double minEventInterval = 0.001;
+	
+	/**
+	 * Return the time during which the given game object of this world has
+	 * not advanced, because it is asleep.
+	 */
+	double getTimeAsleep(GameObject object){
+		Sleep sleep = this.sleeps.get(object);
+		if (sleep == null)
+			return 0;
+		return this.getTime()-sleep.since;
+	}
+	
+	/**
+	 * Wake up the game objects in the cube with the given identifier and in
+	 * its neighbouring cubes.
+	 */
+	private void wakeNear(int id){
+		if (this.sleeps.isEmpty())
+			return;
+		int nbCubes = this.cubeSpace.getNeighbours(id, this.wakeBuffer);
+		this.wakeBuffer[nbCubes++] = id;
+		for (int i=0; i<nbCubes; i++){
+			List<GameObject> objects = this.objectsByCube.get(this.wakeBuffer[i]);
+			// objects that catch up with their movement can leave the cube
+			if (objects != null)
+				for (GameObject object: new ArrayList<>(objects))
+					this.wake(object);
+		}
+	}
+	
+	private final int[] wakeBuffer = new int[27];
+	
+	/**
+	 * Set registering the active game objects of this world, in the order they
+	 * became active.
+	 */
+	private final Set<GameObject> activeObjects = new LinkedHashSet<>();
+	
+	/**
+	 * Map registering the sleep of each sleeping game object of this world,
+	 * in the order they fell asleep.
+	 */
+	private final Map<GameObject, Sleep> sleeps = new LinkedHashMap<>();
+	
+	/**
+	 * The number of times game objects of this world have fallen asleep, which
+	 * numbers their sleeps.
+	 */
+	private long nbSleeps = 0;
+	
+	private static class Sleep {
+		
+		private Sleep(double since, long generation){
+			this.since = since;
+			this.generation = generation;
+		}
+		
+		/**
+		 * The time at which the object fell asleep.
+		 */
+		private final double since;
+		
+		/**
+		 * The number of this sleep among all sleeps in the world.
+		 */
+		private final long generation;
+	}
+	
+	/**
+	 * Queue registering the times at which sleeping game objects must wake
+	 * up, earliest first. An alarm is only current as long as its object
+	 * has not been woken up in the meantime.
+	 */
+	private final PriorityQueue<Alarm> alarms = new PriorityQueue<>((a, b) -> Double.compare(a.time, b.time));
+	
+	private class Alarm {
+		
+		private Alarm(double time, GameObject object, long generation){
+			this.time = time;
+			this.object = object;
+			this.generation = generation;
+		}
+		
+		/**
+		 * Check whether the object of this alarm is still in the sleep for
+		 * which this alarm was set. Sleeps are told apart by their number, as
+		 * several sleeps of an object can start at the same time.
+		 */
+		private boolean isCurrent(){
+			Sleep sleep = World.this.sleeps.get(this.object);
+			return sleep != null && sleep.generation == this.generation;
+		}
+		
+		private final double time;
+		private final GameObject object;
+		private final long generation;
+	}
+	
+	/**
+	 * Apply the given change to the terrain or to the game objects of this
+	 * world, as part of the commit phase if this world is in the act phase of
+	 * a tick, or immediately otherwise.
+	 * 
+	 * @param	command
+	 * 			The change to apply.
+	 */
+	void submit(Runnable command){
+		if (this.isActing)
+			this.commands.add(command);
+		else
+			command.run();
+	}
+	
+	/**
+	 * Variables registering whether this world is in the act phase of a tick,
+	 * and the commands submitted during that phase, in order.
+	 */
+	private boolean isActing = false;
+	private final List<Runnable> commands = new ArrayList<>();
+	
+	/**
+	 * Add the given hook to the hooks notified of the phases of every tick of
+	 * this world.
+	 */
+	public void addTickHook(TickHook hook){
+		this.tickHooks.add(hook);
+	}
+	
+	/**
+	 * Remove the given hook from the hooks of this world.
+	 */
+	public void removeTickHook(TickHook hook){
+		this.tickHooks.remove(hook);
+	}
+	
+	private final List<TickHook> tickHooks = new ArrayList<>();
+	
+	/**
+	 * Return the time the given phase took in the last tick of this world,
+	 * in nanoseconds.
+	 */
+	public long getPhaseDuration(TickPhase phase){
+		return this.phaseDurations[phase.ordinal()];
+	}
+	
+	private void startPhase(TickPhase phase){
+		for (TickHook hook: this.tickHooks)
+			hook.phaseStarted(this, phase);
+		this.phaseStart = System.nanoTime();
+	}
+	
+	private void finishPhase(TickPhase phase){
+		long duration = System.nanoTime()-this.phaseStart;
+		this.phaseDurations[phase.ordinal()] = duration;
+		for (TickHook hook: this.tickHooks)
+			hook.phaseFinished(this, phase, duration);
+	}
+	
+	private long phaseStart;
+	private final long[] phaseDurations = new long[TickPhase.values().length];
 
 	/**
 	 * Return if dt is a legal duration for all Units.
@@ -292,26 +928,19 @@ public class World {
 			throw new IllegalArgumentException();
 		int currentType = this.getTerrainType(x, y, z);
 		this.setCubeType(x, y, z, 0);
-		if (Util.fuzzyLessThanOrEqualTo(Math.random(),0.25))
+		if (Util.fuzzyLessThanOrEqualTo(this.random.nextDouble(),0.25)){
+			int weight = (int) (40*this.random.nextDouble() + 10);
 			if (currentType == World.TYPE_ROCK)
-				this.addGameObjectToWorld(new Boulder(position));
+				this.addGameObjectToWorld(new Boulder(position, weight));
 			else if (currentType == World.TYPE_TREE)
-				this.addGameObjectToWorld(new Log(position));
-	}
-	
-	private boolean advanceCollapse(int[] cube, double dt) throws IllegalArgumentException{
-		if (!this.cubesToCollapse.containsKey(cube))
-			throw new IllegalArgumentException();
-		double timeLeft = this.cubesToCollapse.get(cube);
-		boolean collapse = Util.fuzzyLessThanOrEqualTo(timeLeft, dt);
-		if (!collapse){
-			this.cubesToCollapse.put(cube, timeLeft-dt);
+				this.addGameObjectToWorld(new Log(position, weight));
 		}
-		return collapse;
 	}
 	
 	public boolean isSolidConnectedToBorder(int x, int y, int z) throws IllegalArgumentException{
-		return connectedToBorderHelper.isSolidConnectedToBorder(x, y, z);
+		if (!this.isValidCube(x, y, z))
+			throw new IllegalArgumentException();
+		return this.connectivity.isSolidConnectedToBorder(this.cubeSpace.getId(x, y, z));
 	}
 	
 	public boolean isWorkshop(int x, int y, int z) throws IllegalArgumentException{
@@ -350,24 +979,48 @@ public class World {
 		return (World.isSolidTerrain(terrain) || World.isPassableTerrain(terrain));
 	}
 	
+	/**
+	 * Return a read-only view on the boulders in this world.
+	 */
 	public Set<Boulder> getBoulders() {
-		Set<Boulder> bouldersInWorld = new HashSet<>();
-		for (GameObject gameObject: this.getGameObjects()){
-			if (gameObject instanceof Boulder)
-				bouldersInWorld.add((Boulder) gameObject);
-		}
-		return bouldersInWorld;
+		return this.bouldersView;
+	}
+	
+	/**
+	 * Return the number of boulders in this world.
+	 */
+	public int getNbBoulders(){
+		return this.boulders.size();
 	}
 
+	/**
+	 * Return a read-only view on the logs in this world.
+	 */
 	public Set<Log> getLogs() {
-		Set<Log> logsInWorld = new HashSet<>();
-		for (GameObject gameObject: this.getGameObjects()){
-			if (gameObject instanceof Log)
-				logsInWorld.add((Log) gameObject);
-		}
-		return logsInWorld;
+		return this.logsView;
+	}
+	
+	/**
+	 * Return the number of logs in this world.
+	 */
+	public int getNbLogs(){
+		return this.logs.size();
 	}
 	
+	/**
+	 * Add the given game object to this world, if it is not yet part of it
+	 * and its position can hold it.
+	 * 
+	 * @param	object
+	 * 			The game object to add.
+	 * @effect	A unit that is added draws its random numbers from a new
+	 * 			generator, seeded with the next random number of this world, so
+	 * 			that worlds created with the same seed evolve the same. A unit
+	 * 			added again after it was removed gets a new generator again.
+	 * 			| if (result && object instanceof Unit)
+	 * 			|	then ((Unit) object).reseed(this.random.nextLong())
+	 * @return	Whether the object was added.
+	 */
 	public boolean addGameObjectToWorld(GameObject object){
 		if (this.getGameObjects().contains(object))
 			return false;
@@ -381,17 +1034,254 @@ public class World {
 			else
 				return false;
 		}
+		if (object instanceof Unit)
+			((Unit) object).reseed(this.random.nextLong());
 		this.gameObjects.add(object);
+		this.activeObjects.add(object);
+		this.addToIndexes(object);
 		object.setWorld(this);
 		return true;
 	}
 		
 	public void removeGameObjectFromWorld(GameObject object){
-		this.gameObjects.remove(object);
+		if (this.gameObjects.remove(object)){
+			this.removeFromIndexes(object);
+			this.activeObjects.remove(object);
+			this.sleeps.remove(object);
+		}
 		object.setWorld(null);
 	}
 	
-	private Set<GameObject> gameObjects = new HashSet<>();
+	/**
+	 * Register the given object, just added to this world, in the index of
+	 * its type.
+	 */
+	private void addToIndexes(GameObject object){
+		this.addToCube(object, this.getCubeIdOf(object.getPosition()));
+		if (object instanceof Unit){
+			Unit unit = (Unit) object;
+			this.units.add(unit);
+			Set<Unit> ofFaction = this.unitsOfFaction.get(unit.getFaction());
+			if (ofFaction == null){
+				ofFaction = new LinkedHashSet<>();
+				this.unitsOfFaction.put(unit.getFaction(), ofFaction);
+				this.unitsOfFactionViews.put(unit.getFaction(), Collections.unmodifiableSet(ofFaction));
+			}
+			ofFaction.add(unit);
+		}
+		else if (object instanceof Boulder){
+			this.boulders.add((Boulder) object);
+			this.boulderGrid.add((Boulder) object, object.getPosition());
+		}
+		else if (object instanceof Log){
+			this.logs.add((Log) object);
+			this.logGrid.add((Log) object, object.getPosition());
+		}
+	}
+	
+	/**
+	 * Remove the given object, just removed from this world, from the index
+	 * of its type.
+	 */
+	private void removeFromIndexes(GameObject object){
+		Vector position = this.stagedMoves.remove(object);
+		if (position == null)
+			position = object.getPosition();
+		this.removeFromCube(object, this.getCubeIdOf(position));
+		if (object instanceof Unit){
+			Unit unit = (Unit) object;
+			unit.clearPath();
+			this.units.remove(unit);
+			this.unitsOfFaction.get(unit.getFaction()).remove(unit);
+		}
+		else if (object instanceof Boulder){
+			this.boulders.remove(object);
+			this.boulderGrid.remove((Boulder) object, position);
+		}
+		else if (object instanceof Log){
+			this.logs.remove(object);
+			this.logGrid.remove((Log) object, position);
+		}
+	}
+	
+	private Set<GameObject> gameObjects = new LinkedHashSet<>();
+	
+	/**
+	 * Sets registering the game objects of this world by type, in order of
+	 * addition, together with read-only views on them.
+	 */
+	private final Set<Unit> units = new LinkedHashSet<>();
+	private final Set<Unit> unitsView = Collections.unmodifiableSet(this.units);
+	private final Set<Boulder> boulders = new LinkedHashSet<>();
+	private final Set<Boulder> bouldersView = Collections.unmodifiableSet(this.boulders);
+	private final Set<Log> logs = new LinkedHashSet<>();
+	private final Set<Log> logsView = Collections.unmodifiableSet(this.logs);
+	
+	/**
+	 * Maps registering the units of this world by faction, together with
+	 * read-only views on them.
+	 */
+	private final Map<Faction, Set<Unit>> unitsOfFaction = new HashMap<>();
+	private final Map<Faction, Set<Unit>> unitsOfFactionViews = new HashMap<>();
+	
+	/**
+	 * Return a read-only view on the game objects of this world occupying the
+	 * cube with the given coordinates.
+	 * 
+	 * @return	| result.equals({o in getGameObjects() | o.getPosition().inCube(new int[]{x,y,z})})
+	 */
+	public List<GameObject> getGameObjectsIn(int x, int y, int z){
+		return Collections.unmodifiableList(this.getObjectsInCube(x, y, z));
+	}
+	
+	private List<GameObject> getObjectsInCube(int x, int y, int z){
+		if (!this.isValidCube(x, y, z))
+			return Collections.emptyList();
+		List<GameObject> objects = this.objectsByCube.get(this.cubeSpace.getId(x, y, z));
+		if (objects == null)
+			return Collections.emptyList();
+		return objects;
+	}
+	
+	/**
+	 * Move the given game object of this world in the spatial index, after
+	 * its position has changed. Moves made in the act phase of a tick are
+	 * staged until its commit phase, so that all objects acting in a tick
+	 * find each other at their positions at the start of that tick.
+	 * 
+	 * @param	object
+	 * 			The object that has moved.
+	 * @param	oldPosition
+	 * 			The position of the object before it moved.
+	 */
+	void notifyPositionChanged(GameObject object, Vector oldPosition){
+		if (!this.gameObjects.contains(object))
+			return;
+		this.wake(object);
+		if (!this.isActing)
+			this.moveInIndexes(object, oldPosition);
+		else if (!this.stagedMoves.containsKey(object))
+			this.stagedMoves.put(object, oldPosition);
+	}
+	
+	/**
+	 * Map registering, for every game object of this world that moved in the
+	 * act phase of the current tick, its position in the spatial index.
+	 */
+	private final Map<GameObject, Vector> stagedMoves = new LinkedHashMap<>();
+	
+	/**
+	 * Move the given game object of this world in the spatial index from the
+	 * given old position to its current position.
+	 */
+	private void moveInIndexes(GameObject object, Vector oldPosition){
+		int oldCube = this.getCubeIdOf(oldPosition);
+		int newCube = this.getCubeIdOf(object.getPosition());
+		if (oldCube != newCube){
+			this.removeFromCube(object, oldCube);
+			this.addToCube(object, newCube);
+			if (object instanceof Boulder)
+				this.boulderGrid.move((Boulder) object, oldPosition, object.getPosition());
+			else if (object instanceof Log)
+				this.logGrid.move((Log) object, oldPosition, object.getPosition());
+		}
+	}
+	
+	/**
+	 * Return the identifier of the cube occupied by the given position, or -1
+	 * if that cube lies outside this world, as for positions on its far edges.
+	 */
+	private int getCubeIdOf(Vector position){
+		int x = position.getCubeCoordinate(0);
+		int y = position.getCubeCoordinate(1);
+		int z = position.getCubeCoordinate(2);
+		if (!this.isValidCube(x, y, z))
+			return -1;
+		return this.cubeSpace.getId(x, y, z);
+	}
+	
+	private void addToCube(GameObject object, int cube){
+		if (cube == -1)
+			return;
+		List<GameObject> objects = this.objectsByCube.get(cube);
+		if (objects == null){
+			objects = new ArrayList<>(2);
+			this.objectsByCube.put(cube, objects);
+		}
+		objects.add(object);
+	}
+	
+	private void removeFromCube(GameObject object, int cube){
+		if (cube == -1)
+			return;
+		List<GameObject> objects = this.objectsByCube.get(cube);
+		objects.remove(object);
+		if (objects.isEmpty())
+			this.objectsByCube.remove(cube);
+	}
+	
+	/**
+	 * Map registering the game objects of this world by the identifier of the
+	 * cube they occupy. Cubes without objects have no entry.
+	 */
+	private final Map<Integer, List<GameObject>> objectsByCube = new HashMap<>();
+	
+	/**
+	 * Register that the route of the given unit passes the cubes with the
+	 * given identifiers.
+	 */
+	void addRoute(Unit unit, int[] route){
+		for (int cube: route){
+			List<Unit> units = this.routesByCube.get(cube);
+			if (units == null){
+				units = new ArrayList<>(2);
+				this.routesByCube.put(cube, units);
+			}
+			units.add(unit);
+		}
+	}
+	
+	/**
+	 * Register that the route of the given unit, passing the cubes with the
+	 * given identifiers, has been dropped.
+	 */
+	void removeRoute(Unit unit, int[] route){
+		for (int cube: route){
+			List<Unit> units = this.routesByCube.get(cube);
+			units.remove(unit);
+			if (units.isEmpty())
+				this.routesByCube.remove(cube);
+		}
+	}
+	
+	/**
+	 * Notify the units whose route passes the given cube or one of its
+	 * neighbouring cubes that the terrain of the given cube has changed.
+	 */
+	private void notifyRoutesNear(int x, int y, int z){
+		if (this.routesByCube.isEmpty())
+			return;
+		int id = this.cubeSpace.getId(x, y, z);
+		int nbCubes = this.cubeSpace.getNeighbours(id, this.routeBuffer);
+		this.routeBuffer[nbCubes++] = id;
+		List<Unit> units = new ArrayList<>();
+		for (int i=0; i<nbCubes; i++){
+			List<Unit> passing = this.routesByCube.get(this.routeBuffer[i]);
+			if (passing != null)
+				units.addAll(passing);
+		}
+		// units dropping their route leave the lists
+		for (Unit unit: units)
+			unit.notifyTerrainChanged(x, y, z);
+	}
+	
+	private final int[] routeBuffer = new int[27];
+	
+	/**
+	 * Map registering the units of this world by the identifiers of the cubes
+	 * their route passes. Cubes on no route have no entry.
+	 */
+	private final Map<Integer, List<Unit>> routesByCube = new HashMap<>();
 	
 	public Set<GameObject> getGameObjects(){
 		return this.gameObjects;
@@ -402,9 +1292,9 @@ public class World {
 	}
 	
 	public Log getLogOn(int x, int y, int z){
-		for (Log log: this.getLogs())
-			if (log.getPosition().inCube(new int[]{x,y,z}))
-				return log;
+		for (GameObject object: this.getObjectsInCube(x, y, z))
+			if (object instanceof Log)
+				return (Log) object;
 		return null;
 	}
 	
@@ -415,61 +1305,238 @@ public class World {
 	}
 	
 	public Boulder getBoulderOn(int x, int y, int z){
-		for (Boulder boulder: this.getBoulders())
-			if (boulder.getPosition().inCube(new int[]{x,y,z}))
-				return boulder;
+		for (GameObject object: this.getObjectsInCube(x, y, z))
+			if (object instanceof Boulder)
+				return (Boulder) object;
 		return null;
 	}
 	
+	/**
+	 * Return the log of this world closest to the given position, or null if
+	 * there are no logs in this world.
+	 * 
+	 * @return	| for each log in getLogs():
+	 * 			|	position.distanceBetween(result.getPosition()) <= 
+	 * 			|		position.distanceBetween(log.getPosition())
+	 */
+	public Log getNearestLog(Vector position){
+		return this.logGrid.findNearest(position, log->position.distanceBetween(log.getPosition()));
+	}
+	
+	/**
+	 * Return the boulder of this world closest to the given position, or null
+	 * if there are no boulders in this world.
+	 * 
+	 * @return	| for each boulder in getBoulders():
+	 * 			|	position.distanceBetween(result.getPosition()) <= 
+	 * 			|		position.distanceBetween(boulder.getPosition())
+	 */
+	public Boulder getNearestBoulder(Vector position){
+		return this.boulderGrid.findNearest(position,
+				boulder->position.distanceBetween(boulder.getPosition()));
+	}
+	
+	/**
+	 * Return the coordinates of the workshop cube of this world whose center
+	 * is closest to the given position, or null if this world has no workshops.
+	 * 
+	 * @return	| this.isWorkshop(result[0], result[1], result[2]) &&
+	 * 			| for each x,y,z with this.isWorkshop(x,y,z):
+	 * 			|	position.distanceBetween(Vector.getCubeCenter(result)) <=
+	 * 			|		position.distanceBetween(Vector.getCubeCenter(new int[]{x,y,z}))
+	 */
+	public int[] getNearestWorkshop(Vector position){
+		Integer workshop = this.workshopGrid.findNearest(position,
+				cube->position.distanceBetween(Vector.getCubeCenter(this.cubeSpace.getCube(cube))));
+		if (workshop == null)
+			return null;
+		return this.cubeSpace.getCube(workshop);
+	}
+	
+	/**
+	 * Return the number of workshop cubes in this world.
+	 */
+	public int getNbWorkshops(){
+		return this.workshopGrid.getNbItems();
+	}
+	
+	/**
+	 * Register the workshop cubes of the given chunk in the workshop grid.
+	 */
+	private void addWorkshops(int chunk){
+		int[] origin = this.terrain.getChunkOrigin(chunk);
+		int[] limit = this.terrain.getChunkLimit(chunk);
+		for (int x=origin[0]; x<limit[0]; x++)
+			for (int y=origin[1]; y<limit[1]; y++)
+				for (int z=origin[2]; z<limit[2]; z++)
+					if (this.terrain.getType(x, y, z) == World.TYPE_WORKSHOP)
+						this.workshopGrid.add(this.cubeSpace.getId(x, y, z),
+								Vector.getCubeCenter(new int[]{x,y,z}));
+	}
+	
+	/**
+	 * Grids registering the logs, the boulders and the workshop cubes of this
+	 * world by position.
+	 */
+	private final ProximityGrid<Log> logGrid;
+	private final ProximityGrid<Boulder> boulderGrid;
+	private final ProximityGrid<Integer> workshopGrid;
+	
+	/**
+	 * The number of cubes along each axis of a cell of the proximity grids.
+	 */
+	private static final int proximityCellSize = 8;
+	
 	public boolean hasSolidNeighbour(int[] currentcube) throws IllegalArgumentException{
-		if (!this.isValidPosition(Vector.getCubeCenter(currentcube)))
+		if (!this.isValidCube(currentcube[0], currentcube[1], currentcube[2]))
 			throw new IllegalArgumentException();
-		List<Integer[]> validNeighbours = this.getValidNeigbouringCubes(Helper.converter(currentcube));
-		if (validNeighbours.size() != 26)
+		return this.computeSolidNeighbour(currentcube[0], currentcube[1], currentcube[2]);
+	}
+	
+	/**
+	 * Return whether a unit can stand in the given cube.
+	 * 
+	 * @return	whether the cube is passable and has a solid neighbour.
+	 * 			| result == this.isPassable(x,y,z) && this.hasSolidNeighbour(new int[]{x,y,z})
+	 * @throws	IllegalArgumentException
+	 * 			The cube is not in this world.
+	 * 			| !this.isValidCube(x, y, z)
+	 */
+	public boolean isStandableCube(int x, int y, int z) throws IllegalArgumentException{
+		if (!this.isValidCube(x, y, z))
+			throw new IllegalArgumentException();
+		return this.isStandableId(this.cubeSpace.getId(x, y, z));
+	}
+	
+	/**
+	 * Return whether a unit can stand in the cube with the given identifier.
+	 */
+	private boolean isStandableId(int id){
+		return (this.standable[id >>> 6] & (1L << id)) != 0;
+	}
+	
+	/**
+	 * Recompute whether a unit can stand in the given cube and in each of
+	 * its neighbours, after the terrain of the given cube has changed.
+	 */
+	private void updateStandable(int x, int y, int z){
+		for (int dx=-1; dx<=1; dx++)
+			for (int dy=-1; dy<=1; dy++)
+				for (int dz=-1; dz<=1; dz++)
+					if (this.isValidCube(x+dx, y+dy, z+dz))
+						this.setStandable(x+dx, y+dy, z+dz, 
+								this.computeStandable(x+dx, y+dy, z+dz));
+	}
+	
+	private void setStandable(int x, int y, int z, boolean standable){
+		int id = this.cubeSpace.getId(x, y, z);
+		if (standable)
+			this.standable[id >>> 6] |= (1L << id);
+		else
+			this.standable[id >>> 6] &= ~(1L << id);
+	}
+	
+	/**
+	 * Compute whether a unit can stand in the given cube from the terrain.
+	 */
+	private boolean computeStandable(int x, int y, int z){
+		return World.isPassableTerrain(this.terrain.getType(x, y, z)) &&
+				this.computeSolidNeighbour(x, y, z);
+	}
+	
+	/**
+	 * Compute whether the given cube lies against the boundaries of this world
+	 * or has a solid neighbour.
+	 */
+	private boolean computeSolidNeighbour(int x, int y, int z){
+		if (x == 0 || y == 0 || z <= 1 || x == this.getNbCubesX()-1 ||
+				y == this.getNbCubesY()-1 || z == this.getNbCubesZ()-1)
 			return true; //the boundaries of the world are seen as solid
-		for (Integer[] cube: validNeighbours){
-			int newX = cube[0];
-			int newY = cube[1];
-			int newZ = cube[2];
-			if (this.isValidCoordinateX(newX) && this.isValidCoordinateY(newY) &&
-				(newZ == 0 || this.isValidCoordinateZ(newZ)) &&
-				(newZ == 0 || this.isSolid(newX,newY,newZ)))
-				return true;
-		}
+		for (int dx=-1; dx<=1; dx++)
+			for (int dy=-1; dy<=1; dy++)
+				for (int dz=-1; dz<=1; dz++)
+					if (World.isSolidTerrain(this.terrain.getType(x+dx, y+dy, z+dz)))
+						return true;
 		return false;
 	}
 	
-	public List<Integer[]> getValidNeigbouringCubes(Integer[] cube){
-		List<Integer[]> neighbours = World.getNeigbouringCubes(cube);
-		Integer[] keyToThisCube = Helper.getKeyArrayListInt(neighbours, cube);
-		neighbours.remove(keyToThisCube);
-		List<Integer[]> validNeighbours = new ArrayList<>();
-		for (Integer[] neighbour: neighbours){
-			if (this.isValidCube(neighbour[0], neighbour[1], neighbour[2])){
-				validNeighbours.add(neighbour);
-			}
-		}
-		return validNeighbours;
+	/**
+	 * Bit set registering, for the cube with identifier i in bit i, whether a unit
+	 * can stand in it.
+	 */
+	private final long[] standable;
+	
+	/**
+	 * Return a shortest route between the given cubes along which a unit can
+	 * walk.
+	 * 
+	 * @param	from
+	 * 			The identifier of the cube the route starts from.
+	 * @param	to
+	 * 			The identifier of the cube the route leads to.
+	 * @return	The identifiers of the successive cubes of the route, from the
+	 * 			first step up to and including the target, or null if the target
+	 * 			is not reachable. Routes to popular targets are read from a shared
+	 * 			flow field.
+	 * 			| result.length == this.getPathFinder().findPath(from, to, 
+	 * 			|		id -> this.isStandableCube(getX(id), getY(id), getZ(id))).length
+	 * @throws	IllegalArgumentException
+	 * 			One of the cubes is not in this world.
+	 */
+	public int[] findPath(int from, int to) throws IllegalArgumentException{
+		return this.flowFields.findPath(from, to);
+	}
+	
+	/**
+	 * Return the flow field towards the given cube, if routes towards it are
+	 * asked for often enough to keep one, so that a unit can read its next
+	 * step towards the cube from it.
+	 * 
+	 * @param	to
+	 * 			The identifier of the cube routes lead to.
+	 * @return	The flow field towards the given cube, or null if that cube was
+	 * 			not asked for before or units cannot stand on it.
+	 * @effect	If the cube was asked for before, a flow field towards it is
+	 * 			built, which is kept up to date when the terrain changes for as
+	 * 			long as it is among the most recently used ones.
+	 * @throws	IllegalArgumentException
+	 * 			The cube is not in this world.
+	 */
+	FlowField requestFlowField(int to) throws IllegalArgumentException{
+		return this.flowFields.requestFlowField(to);
 	}
 	
-	public List<Integer[]> getSurroundingCubes(Vector position){
-		List<Integer[]> surroundingCubes = this.getValidNeigbouringCubes(
-				Helper.converter(position.getCubeCoordinates()));
-		surroundingCubes.add(Helper.converter(position.getCubeCoordinates()));
-		return surroundingCubes;
+	/**
+	 * Return the flow field towards the given cube kept by this world, or null
+	 * if there is none.
+	 */
+	FlowField getFlowField(int to){
+		return this.flowFields.getFlowField(to);
 	}
 	
-	public static List<Integer[]> getNeigbouringCubes(Integer[] cube){
-		List<Integer[]> neighbours = new ArrayList<>();
-		int[] adjacent = {0,-1,1};
-		for (int dx: adjacent)
-			for (int dy: adjacent)
-				for (int dz: adjacent)
-					neighbours.add(new Integer[]{cube[0]+dx, cube[1]+dy, cube[2]+dz});
-		return neighbours;
+	/**
+	 * Return a shortest route between the given cubes along which a unit can
+	 * walk, searched by the path finder of this world.
+	 * 
+	 * Unlike findPath, this neither reads nor builds flow fields, so that the
+	 * units of this world can search their routes concurrently, as long as the
+	 * terrain does not change.
+	 * 
+	 * @return	| result.length == this.getPathFinder().findPath(from, to, 
+	 * 			|		id -> this.isStandableCube(getX(id), getY(id), getZ(id))).length
+	 * @throws	IllegalArgumentException
+	 * 			One of the cubes is not in this world.
+	 */
+	int[] searchPath(int from, int to) throws IllegalArgumentException{
+		return this.pathFinder.findPath(from, to, this::isStandableId);
 	}
-					
 	
+	/**
+	 * Return the path finder shared by all units in this world.
+	 */
+	public PathFinder getPathFinder(){
+		return this.pathFinder;
+	}
 	
 	private static final int TYPE_AIR = 0;
 	private static final int TYPE_ROCK = 1;
@@ -0,0 +1,88 @@
+package hillbillies.model.connectivity;
+
+import java.util.function.IntPredicate;
+
+import hillbillies.model.CubeSpace;
+
+/**
+ * An interface for registrations of which solid cubes of a world are
+ * connected to a border of the world through other directly adjacent solid
+ * cubes.
+ *
+ * A new registration considers the entire world solid. Every change reports
+ * the cubes whose connection changed; their identifiers can be read with
+ * getChangedCube until the next change.
+ */
+public interface BorderConnectivity {
+
+	/**
+	 * Return the cube space of this connectivity registration.
+	 */
+	public CubeSpace getCubeSpace();
+
+	/**
+	 * Check whether the cube with the given identifier is solid.
+	 */
+	public boolean isSolid(int id);
+
+	/**
+	 * Check whether the cube with the given identifier is a solid cube
+	 * connected to a border of the world.
+	 */
+	public boolean isSolidConnectedToBorder(int id);
+
+	/**
+	 * Make the cube with the given identifier passable.
+	 *
+	 * @return	The number of solid cubes that are no longer connected to a border
+	 * 			of the world because of this change.
+	 * @post	| !new.isSolid(id)
+	 */
+	public int markPassable(int id);
+
+	/**
+	 * Make the cubes with the given identifiers passable at once.
+	 *
+	 * @param	ids
+	 * 			An array holding the identifiers of the cubes.
+	 * @param	nbIds
+	 * 			The number of identifiers at the start of the array.
+	 * @return	The number of solid cubes that are no longer connected to a border
+	 * 			of the world because of these changes.
+	 * @post	| for i in 0..nbIds-1: !new.isSolid(ids[i])
+	 */
+	public int markPassable(int[] ids, int nbIds);
+
+	/**
+	 * Make the cube with the given identifier solid.
+	 *
+	 * @return	The number of solid cubes that became connected to a border of the
+	 * 			world because of this change, including the given cube if that
+	 * 			number is not zero.
+	 * @post	| new.isSolid(id)
+	 */
+	public int markSolid(int id);
+
+	/**
+	 * Set whether each cube is passable at once, and determine from scratch
+	 * which solid cubes are connected to the border.
+	 *
+	 * @param	isPassable
+	 * 			The condition satisfied by the identifiers of passable cubes.
+	 * @return	The number of solid cubes that are not connected to a border of
+	 * 			the world.
+	 * @post	| for each id in getCubeSpace():
+	 * 			|	new.isSolid(id) == !isPassable.test(id)
+	 */
+	public int reset(IntPredicate isPassable);
+
+	/**
+	 * Return the identifier of the changed cube with the given index, reported
+	 * by the last change.
+	 *
+	 * @param	index
+	 * 			The index of the cube, between 0 and the number returned by the
+	 * 			last change.
+	 */
+	public int getChangedCube(int index);
+}
@@ -0,0 +1,601 @@
+package hillbillies.model.connectivity;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+import be.kuleuven.cs.som.annotate.*;
+import hillbillies.model.PagedIntArray;
+import hillbillies.model.CubeSpace;
+
+/**
+ * A class registering which solid cubes of a world are connected to a border
+ * of the world, by keeping the components of directly adjacent solid cubes.
+ *
+ * Every solid cube carries the label of its component, and the labels form
+ * a union-find structure in which the root of a component registers the
+ * number of border cubes in it. A component is connected to the border as
+ * long as that number is positive.
+ *
+ * Making a cube solid merges the components around it. Making a cube
+ * passable may split its component: breadth-first searches are started from
+ * all its solid neighbours at the same time, one cube per search in turn.
+ * Searches that meet are merged, and as soon as a single search is still
+ * running, all other searches have explored a complete piece. Those pieces
+ * get new labels; the piece of the running search keeps the old label and is
+ * never explored further, unless it turns out to have lost its last border
+ * cube. The cost of a dig is thus bounded by the size of the pieces that
+ * break off, not by the size of the mountain they break off from.
+ *
+ * Labels and search marks are kept in paged arrays. The first component
+ * found gets label 0, which is the default label, so the cubes of the
+ * component that usually holds most of the world take no memory for their
+ * label.
+ *
+ * Merged components keep the labels of their parts, and components that are
+ * dug away entirely leave their labels behind. Once the labels fill their
+ * arrays, the solid cubes on allocated pages are labelled again with one
+ * label per component that still exists, before a change. Component
+ * connectivity is unaffected, and the number of labels stays in proportion
+ * to the number of components and allocated pages.
+ *
+ * @invar	A solid cube is connected to the border if and only if its
+ * 			component has at least one cube on the border.
+ */
+public class ComponentConnectivity implements BorderConnectivity {
+
+	/**
+	 * Initialize this new connectivity registration for a world of the given
+	 * cube space that is entirely solid.
+	 *
+	 * @param 	space
+	 * 			The cube space of the world.
+	 * @post	| for each id in space: new.isSolidConnectedToBorder(id)
+	 */
+	public ComponentConnectivity(CubeSpace space){
+		this.space = space;
+		int nbCubes = space.getNbCubes();
+		this.passable = new long[(nbCubes+63)/64];
+		this.labels = new PagedIntArray(space, 0);
+		this.marks = new PagedIntArray(space, 0);
+		// a single component holding every cube
+		int label = this.newLabel();
+		int nbBorderCubes = 0;
+		for (int id=0; id<nbCubes; id++)
+			if (this.isBorder(id))
+				nbBorderCubes++;
+		this.nbBorderCubes[label] = nbBorderCubes;
+	}
+
+	@Override @Basic @Immutable
+	public CubeSpace getCubeSpace(){
+		return this.space;
+	}
+
+	private final CubeSpace space;
+
+	@Override
+	public boolean isSolid(int id){
+		return !this.isPassable(id);
+	}
+
+	@Override
+	public boolean isSolidConnectedToBorder(int id){
+		return !this.isPassable(id) && this.nbBorderCubes[this.getComponent(id)] > 0;
+	}
+
+	/**
+	 * Return the root label of the component of the given solid cube.
+	 */
+	private int getComponent(int id){
+		int label = this.labels.get(id);
+		while (this.parents[label] != label){
+			// halve the path on the way up
+			this.parents[label] = this.parents[this.parents[label]];
+			label = this.parents[label];
+		}
+		return label;
+	}
+
+	/**
+	 * Return the number of labels in use for the components of solid cubes.
+	 */
+	@Basic
+	public int getNbLabels(){
+		return this.nbLabels;
+	}
+
+	private int newLabel(){
+		if (this.nbLabels == this.parents.length){
+			this.parents = Arrays.copyOf(this.parents, 2*this.nbLabels);
+			this.nbBorderCubes = Arrays.copyOf(this.nbBorderCubes, 2*this.nbLabels);
+		}
+		this.parents[this.nbLabels] = this.nbLabels;
+		this.nbBorderCubes[this.nbLabels] = 0;
+		return this.nbLabels++;
+	}
+
+	@Override
+	public int reset(IntPredicate isPassable){
+		this.nbLabels = 0;
+		this.labels.clear();
+		int nbCubes = this.space.getNbCubes();
+		for (int id=0; id<nbCubes; id++)
+			this.setPassable(id, isPassable.test(id));
+		long[] reached = new long[this.passable.length];
+		this.nbChanged = 0;
+		for (int id=0; id<nbCubes; id++){
+			if (this.isPassable(id) || (reached[id >>> 6] & (1L << id)) != 0)
+				continue;
+			int label = this.newLabel();
+			int first = this.nbChanged;
+			reached[id >>> 6] |= 1L << id;
+			this.addChanged(id);
+			this.fill(first, reached, label);
+			if (this.nbBorderCubes[label] > 0)
+				// only report the components that are cut off
+				this.nbChanged = first;
+		}
+		// the buffer held every cube of the components labelled
+		this.changed = Arrays.copyOf(this.changed, Math.max(64, this.nbChanged));
+		return this.nbChanged;
+	}
+
+	/**
+	 * Label all cubes of the component of the cubes in the changed buffer from
+	 * the given index on, which must be set in the given bit set of reached
+	 * cubes, with the given label, adding all of them to the buffer.
+	 */
+	private void fill(int first, long[] reached, int label){
+		int head = first;
+		while (head < this.nbChanged){
+			int cube = this.changed[head++];
+			this.labels.set(cube, label);
+			if (this.isBorder(cube))
+				this.nbBorderCubes[label]++;
+			int nbNeighbours = this.loadNeighbours(cube, this.neighbours);
+			for (int i=0; i<nbNeighbours; i++){
+				int neighbour = this.neighbours[i];
+				if (!this.isPassable(neighbour) && (reached[neighbour >>> 6] & (1L << neighbour)) == 0){
+					reached[neighbour >>> 6] |= 1L << neighbour;
+					this.addChanged(neighbour);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Label the solid cubes again with one label per component, if a change
+	 * might not find room for the labels it needs. The root of the component
+	 * of label 0 keeps label 0, so unallocated pages stay valid.
+	 *
+	 * Every label created before the arrays fill up again pays for at most
+	 * 128 cubes labelled in this pass.
+	 */
+	private void compactLabels(){
+		// a change creates at most six labels
+		if (this.nbLabels+6 <= this.parents.length)
+			return;
+		int[] newLabels = new int[this.nbLabels];
+		Arrays.fill(newLabels, -1);
+		int[] nbBorderCubes = new int[this.nbLabels];
+		int nbNewLabels = 0;
+		int rootOfDefault = 0;
+		while (this.parents[rootOfDefault] != rootOfDefault)
+			rootOfDefault = this.parents[rootOfDefault];
+		newLabels[rootOfDefault] = nbNewLabels;
+		nbBorderCubes[nbNewLabels++] = this.nbBorderCubes[rootOfDefault];
+		int nbCubes = this.space.getNbCubes();
+		int pageSize = PagedIntArray.getPageSize();
+		int nbPages = 0;
+		for (int first=0; first<nbCubes; first+=pageSize){
+			if (!this.labels.isAllocatedPage(PagedIntArray.getPage(first)))
+				continue;
+			nbPages++;
+			for (int id=first; id<Math.min(nbCubes, first+pageSize); id++){
+				if (this.isPassable(id)){
+					this.labels.set(id, 0);
+					continue;
+				}
+				int root = this.getComponent(id);
+				if (newLabels[root] == -1){
+					newLabels[root] = nbNewLabels;
+					nbBorderCubes[nbNewLabels++] = this.nbBorderCubes[root];
+				}
+				this.labels.set(id, newLabels[root]);
+			}
+		}
+		int capacity = 64;
+		while (capacity < 2*nbNewLabels+6 || capacity < 64*nbPages)
+			capacity *= 2;
+		this.parents = new int[capacity];
+		for (int label=0; label<nbNewLabels; label++)
+			this.parents[label] = label;
+		this.nbBorderCubes = Arrays.copyOf(nbBorderCubes, capacity);
+		this.nbLabels = nbNewLabels;
+	}
+
+	@Override
+	public int markSolid(int id){
+		this.nbChanged = 0;
+		if (!this.isPassable(id))
+			return 0;
+		this.compactLabels();
+		this.setPassable(id, false);
+		int nbNeighbours = this.loadNeighbours(id, this.neighbours);
+		int nbComponents = 0;
+		boolean connected = this.isBorder(id);
+		for (int i=0; i<nbNeighbours; i++){
+			int neighbour = this.neighbours[i];
+			if (this.isPassable(neighbour))
+				continue;
+			int component = this.getComponent(neighbour);
+			boolean known = false;
+			for (int j=0; j<nbComponents; j++)
+				known |= this.components[j] == component;
+			if (!known){
+				this.componentCubes[nbComponents] = neighbour;
+				this.components[nbComponents++] = component;
+				connected |= this.nbBorderCubes[component] > 0;
+			}
+		}
+		if (connected){
+			// the cut off components around the new cube become connected
+			this.addChanged(id);
+			int stamp = this.nextStamps(1);
+			this.marks.set(id, stamp);
+			for (int j=0; j<nbComponents; j++)
+				if (this.nbBorderCubes[this.components[j]] == 0){
+					this.marks.set(this.componentCubes[j], stamp);
+					this.addChanged(this.componentCubes[j]);
+				}
+			this.collect(1, stamp);
+		}
+		// merge the components around the new cube
+		int root;
+		if (nbComponents == 0)
+			root = this.newLabel();
+		else{
+			root = this.components[0];
+			for (int j=1; j<nbComponents; j++){
+				this.parents[this.components[j]] = root;
+				this.nbBorderCubes[root] += this.nbBorderCubes[this.components[j]];
+			}
+		}
+		this.labels.set(id, root);
+		if (this.isBorder(id))
+			this.nbBorderCubes[root]++;
+		return this.nbChanged;
+	}
+
+	/**
+	 * Add all solid cubes that are directly connected to the cubes in the
+	 * changed buffer from the given index on, which must be marked with the
+	 * given stamp, to the buffer. The cube at index 0 is not expanded.
+	 */
+	private void collect(int first, int stamp){
+		int head = first;
+		while (head < this.nbChanged){
+			int nbNeighbours = this.loadNeighbours(this.changed[head++], this.neighbours);
+			for (int i=0; i<nbNeighbours; i++){
+				int neighbour = this.neighbours[i];
+				if (!this.isPassable(neighbour) && this.marks.get(neighbour) != stamp){
+					this.marks.set(neighbour, stamp);
+					this.addChanged(neighbour);
+				}
+			}
+		}
+	}
+
+	@Override
+	public int markPassable(int id) throws IllegalStateException{
+		this.nbChanged = 0;
+		if (this.isPassable(id))
+			return 0;
+		this.compactLabels();
+		int root = this.getComponent(id);
+		boolean wasConnected = this.nbBorderCubes[root] > 0;
+		this.setPassable(id, true);
+		if (this.isBorder(id))
+			this.nbBorderCubes[root]--;
+		int nbNeighbours = this.loadNeighbours(id, this.neighbours);
+		int nbSearches = 0;
+		int base = this.nextStamps(6);
+		for (int i=0; i<nbNeighbours; i++){
+			int neighbour = this.neighbours[i];
+			if (this.isPassable(neighbour))
+				continue;
+			this.startSearch(nbSearches, neighbour, base);
+			nbSearches++;
+		}
+		if (nbSearches == 0)
+			// the component consisted of the given cube only
+			return 0;
+		int running = this.runSearches(nbSearches, base);
+		// all finished searches but the running one break off as new components
+		int remainder = running;
+		if (remainder == -1)
+			for (int s=0; s<nbSearches; s++)
+				if (this.searchParents[s] == s &&
+						(remainder == -1 || this.searchSizes[s] > this.searchSizes[remainder]))
+					remainder = s;
+		for (int s=0; s<nbSearches; s++){
+			if (this.searchParents[s] != s || s == remainder)
+				continue;
+			int label = this.newLabel();
+			int[] cubes = this.searchCubes[s];
+			for (int i=0; i<this.searchSizes[s]; i++)
+				this.labels.set(cubes[i], label);
+			this.nbBorderCubes[label] = this.searchBorderCubes[s];
+			this.nbBorderCubes[root] -= this.searchBorderCubes[s];
+			if (wasConnected && this.searchBorderCubes[s] == 0)
+				for (int i=0; i<this.searchSizes[s]; i++)
+					this.addChanged(cubes[i]);
+		}
+		if (wasConnected && this.nbBorderCubes[root] == 0){
+			// the piece that kept the label lost its last border cube
+			if (remainder == running)
+				this.finishSearch(remainder, base);
+			int[] cubes = this.searchCubes[remainder];
+			for (int i=0; i<this.searchSizes[remainder]; i++)
+				this.addChanged(cubes[i]);
+		}
+		return this.nbChanged;
+	}
+
+	/**
+	 * Make the cubes with the given identifiers passable at once.
+	 *
+	 * The cubes are dug out one after the other; each dig only explores the
+	 * pieces it splits off, so there is no shared search to merge.
+	 */
+	@Override
+	public int markPassable(int[] ids, int nbIds) throws IllegalStateException{
+		int nbCutOff = 0;
+		int[] cutOff = this.batchChanged;
+		for (int i=0; i<nbIds; i++){
+			int nbChanged = this.markPassable(ids[i]);
+			if (nbCutOff+nbChanged > cutOff.length)
+				cutOff = Arrays.copyOf(cutOff, 2*(nbCutOff+nbChanged));
+			System.arraycopy(this.changed, 0, cutOff, nbCutOff, nbChanged);
+			nbCutOff += nbChanged;
+		}
+		// the collected cubes become the result of this change
+		this.batchChanged = this.changed;
+		this.changed = cutOff;
+		this.nbChanged = nbCutOff;
+		return nbCutOff;
+	}
+
+	/**
+	 * Start the search with the given number from the given cube.
+	 */
+	private void startSearch(int search, int origin, int base){
+		this.searchParents[search] = search;
+		this.searchHeads[search] = 0;
+		this.searchSizes[search] = 0;
+		this.searchBorderCubes[search] = 0;
+		if (this.searchCubes[search] == null)
+			this.searchCubes[search] = new int[64];
+		this.marks.set(origin, base+search);
+		this.addSearchCube(search, origin);
+	}
+
+	/**
+	 * Let the given searches expand one cube each in turn, until at most one
+	 * search has cubes left to expand, and return that search, or -1 if all
+	 * searches have finished.
+	 *
+	 * @throws	IllegalStateException
+	 * 			The current thread was interrupted.
+	 */
+	private int runSearches(int nbSearches, int base) throws IllegalStateException{
+		int nbExpanded = 0;
+		while (true){
+			int nbRunning = 0;
+			int running = -1;
+			for (int s=0; s<nbSearches; s++)
+				if (this.searchParents[s] == s && this.searchHeads[s] < this.searchSizes[s]){
+					nbRunning++;
+					running = s;
+				}
+			if (nbRunning <= 1)
+				return running;
+			// this might take a long time - check if the impatient user has stopped us
+			if ((++nbExpanded & 1023) == 0 && Thread.currentThread().isInterrupted())
+				throw new IllegalStateException();
+			for (int s=0; s<nbSearches; s++)
+				if (this.searchParents[s] == s && this.searchHeads[s] < this.searchSizes[s])
+					this.expand(s, base);
+		}
+	}
+
+	/**
+	 * Let the given search expand all its cubes.
+	 */
+	private void finishSearch(int search, int base){
+		while (this.searchHeads[search] < this.searchSizes[search])
+			this.expand(search, base);
+	}
+
+	/**
+	 * Let the given search expand its next cube. If it meets the cubes of
+	 * another search, the smaller of both is merged into the larger.
+	 */
+	private void expand(int search, int base){
+		int cube = this.searchCubes[search][this.searchHeads[search]++];
+		int nbNeighbours = this.loadNeighbours(cube, this.searchNeighbours);
+		for (int i=0; i<nbNeighbours; i++){
+			int neighbour = this.searchNeighbours[i];
+			if (this.isPassable(neighbour))
+				continue;
+			int mark = this.marks.get(neighbour) - base;
+			if (mark < 0 || mark >= 6){
+				this.marks.set(neighbour, base+search);
+				this.addSearchCube(search, neighbour);
+			}
+			else{
+				int other = this.getSearch(mark);
+				if (other != search)
+					search = this.mergeSearches(search, other);
+			}
+		}
+	}
+
+	private int getSearch(int search){
+		while (this.searchParents[search] != search)
+			search = this.searchParents[search];
+		return search;
+	}
+
+	/**
+	 * Merge the smaller of the given searches into the larger one, and return
+	 * the search that is left.
+	 */
+	private int mergeSearches(int first, int second){
+		int small = (this.searchSizes[first] < this.searchSizes[second])? first: second;
+		int large = (small == first)? second: first;
+		// cubes the small search already expanded are expanded once more, finding nothing new
+		int[] cubes = this.searchCubes[small];
+		for (int i=0; i<this.searchSizes[small]; i++)
+			this.addSearchCube(large, cubes[i]);
+		this.searchParents[small] = large;
+		return large;
+	}
+
+	private void addSearchCube(int search, int cube){
+		int size = this.searchSizes[search];
+		if (size == this.searchCubes[search].length)
+			this.searchCubes[search] = Arrays.copyOf(this.searchCubes[search], 2*size);
+		this.searchCubes[search][size] = cube;
+		this.searchSizes[search] = size+1;
+		if (this.isBorder(cube))
+			this.searchBorderCubes[search]++;
+	}
+
+	@Override
+	public int getChangedCube(int index){
+		return this.changed[index];
+	}
+
+	private void addChanged(int id){
+		if (this.nbChanged == this.changed.length)
+			this.changed = Arrays.copyOf(this.changed, 2*this.nbChanged);
+		this.changed[this.nbChanged++] = id;
+	}
+
+	/**
+	 * Return the first of the given number of fresh stamps to mark cubes with.
+	 * When the stamps run out, or the marks have spread over too many pages,
+	 * all marks are cleared; in the former case numbering starts over.
+	 */
+	private int nextStamps(int number){
+		if (this.stamp > Integer.MAX_VALUE - number){
+			this.marks.clear();
+			this.stamp = 0;
+		}
+		else if (this.marks.getNbAllocatedPages() > ComponentConnectivity.maxNbMarkedPages)
+			this.marks.clear();
+		int result = this.stamp+1;
+		this.stamp += number;
+		return result;
+	}
+
+	private boolean isBorder(int id){
+		int x = this.space.getX(id);
+		int y = this.space.getY(id);
+		int z = this.space.getZ(id);
+		return x == 0 || x == this.space.getNbCubesX()-1 || y == 0 ||
+				y == this.space.getNbCubesY()-1 || z == 0 || z == this.space.getNbCubesZ()-1;
+	}
+
+	/**
+	 * Store the identifiers of the directly adjacent cubes of the given cube
+	 * in the given buffer, and return their number.
+	 */
+	private int loadNeighbours(int id, int[] buffer){
+		int nbX = this.space.getNbCubesX();
+		int nbXY = nbX*this.space.getNbCubesY();
+		int x = this.space.getX(id);
+		int y = this.space.getY(id);
+		int z = this.space.getZ(id);
+		int nb = 0;
+		if (x > 0)
+			buffer[nb++] = id-1;
+		if (x < nbX-1)
+			buffer[nb++] = id+1;
+		if (y > 0)
+			buffer[nb++] = id-nbX;
+		if (y < this.space.getNbCubesY()-1)
+			buffer[nb++] = id+nbX;
+		if (z > 0)
+			buffer[nb++] = id-nbXY;
+		if (z < this.space.getNbCubesZ()-1)
+			buffer[nb++] = id+nbXY;
+		return nb;
+	}
+
+	private boolean isPassable(int id){
+		return (this.passable[id >>> 6] & (1L << id)) != 0;
+	}
+
+	private void setPassable(int id, boolean passable){
+		if (passable)
+			this.passable[id >>> 6] |= 1L << id;
+		else
+			this.passable[id >>> 6] &= ~(1L << id);
+	}
+
+	/**
+	 * Bit set registering, per cube, whether it is passable.
+	 */
+	private final long[] passable;
+
+	/**
+	 * Array registering, per solid cube, a label of its component.
+	 */
+	private final PagedIntArray labels;
+
+	/**
+	 * Arrays registering, per label, its parent label, and per root label,
+	 * the number of border cubes of its component.
+	 */
+	private int[] parents = new int[64];
+	private int[] nbBorderCubes = new int[64];
+	private int nbLabels = 0;
+
+	/**
+	 * Array registering, per cube, the stamp of the last search that visited
+	 * it.
+	 */
+	private final PagedIntArray marks;
+	private int stamp = 0;
+
+	private static final int maxNbMarkedPages = 256;
+
+	/**
+	 * The state of the at most six searches started when a cube becomes
+	 * passable: the cubes each has visited, how many of them it has expanded,
+	 * how many lie on the border, and into which search it was merged.
+	 */
+	private final int[][] searchCubes = new int[6][];
+	private final int[] searchHeads = new int[6];
+	private final int[] searchSizes = new int[6];
+	private final int[] searchBorderCubes = new int[6];
+	private final int[] searchParents = new int[6];
+	private final int[] searchNeighbours = new int[6];
+
+	/**
+	 * The distinct components around a cube that becomes solid, with a cube
+	 * of each.
+	 */
+	private final int[] components = new int[6];
+	private final int[] componentCubes = new int[6];
+
+	/**
+	 * Reusable buffers for the results and the neighbours of a cube.
+	 */
+	private int[] changed = new int[64];
+	private int nbChanged;
+	private int[] batchChanged = new int[64];
+	private final int[] neighbours = new int[6];
+}
@@ -0,0 +1,32 @@
+package hillbillies.model.connectivity;
+
+import hillbillies.model.CubeSpace;
+
+/**
+ * An enumeration of the ways a world can keep track of which solid cubes are
+ * connected to its border.
+ */
+public enum ConnectivityBackend {
+
+	/**
+	 * Search for a path to the border from every solid cube next to a dug out
+	 * cube. Cheap in memory, but a search may cover a whole mountain.
+	 */
+	SEARCH,
+
+	/**
+	 * Keep the solid components with the number of their border cubes, and
+	 * only explore the pieces a dug out cube splits off.
+	 */
+	COMPONENTS;
+
+	/**
+	 * Return a new connectivity registration of this kind for a world of the
+	 * given cube space that is entirely solid.
+	 */
+	public BorderConnectivity create(CubeSpace space){
+		if (this == COMPONENTS)
+			return new ComponentConnectivity(space);
+		return new SearchConnectivity(space);
+	}
+}
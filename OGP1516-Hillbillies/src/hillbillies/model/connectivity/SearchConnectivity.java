@@ -0,0 +1,454 @@
+package hillbillies.model.connectivity;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntPredicate;
+
+import be.kuleuven.cs.som.annotate.*;
+import hillbillies.model.PagedIntArray;
+import hillbillies.model.CubeSpace;
+
+/**
+ * A class registering which solid cubes of a world are connected to a border
+ * of the world through other directly adjacent solid cubes.
+ *
+ * This class offers the contract of the provided ConnectedToBorder helper:
+ * initially the entire world is solid and connected, and every change of a
+ * cube reports the cubes whose connection changed. When a cube becomes
+ * passable, a depth-first search to the border is started from each of its
+ * solid neighbours.
+ *
+ * All bookkeeping works on cube identifiers. The searches reuse the same
+ * int stacks, and mark visited cubes with the number of the search instead
+ * of collecting them in sets. Whether a cube is passable or cut off takes a
+ * bit per cube; the marks are kept in paged arrays, so they only take
+ * memory in the pages the searches have been through.
+ *
+ * @invar	A solid cube is not connected to the border if and only if none of
+ * 			the solid cubes it is directly connected to lies on the border.
+ */
+public class SearchConnectivity implements BorderConnectivity {
+
+	/**
+	 * Initialize this new connectivity registration for a world of the given
+	 * cube space that is entirely solid.
+	 *
+	 * @param 	space
+	 * 			The cube space of the world.
+	 * @post	| for each id in space: new.isSolidConnectedToBorder(id)
+	 */
+	public SearchConnectivity(CubeSpace space){
+		this.space = space;
+		int nbCubes = space.getNbCubes();
+		this.passable = new long[(nbCubes+63)/64];
+		this.notConnected = new long[this.passable.length];
+		this.visited = new PagedIntArray(space, 0);
+		this.knownConnected = new PagedIntArray(space, 0);
+	}
+
+	/**
+	 * Return the cube space of this connectivity registration.
+	 */
+	@Override @Basic @Immutable
+	public CubeSpace getCubeSpace(){
+		return this.space;
+	}
+
+	private final CubeSpace space;
+
+	/**
+	 * Check whether the cube with the given identifier is solid.
+	 */
+	@Override
+	public boolean isSolid(int id){
+		return !this.isPassable(id);
+	}
+
+	/**
+	 * Check whether the cube with the given identifier is a solid cube
+	 * connected to a border of the world.
+	 */
+	@Override
+	public boolean isSolidConnectedToBorder(int id){
+		return !this.isPassable(id) && !this.isNotConnected(id);
+	}
+
+	/**
+	 * Check whether the cube with the given coordinates is a solid cube
+	 * connected to a border of the world.
+	 *
+	 * @return	| result == isSolidConnectedToBorder(getCubeSpace().getId(x, y, z))
+	 */
+	public boolean isSolidConnectedToBorder(int x, int y, int z){
+		return this.isSolidConnectedToBorder(this.space.getId(x, y, z));
+	}
+
+	/**
+	 * Make the cube with the given coordinates passable, and return the
+	 * coordinates {x, y, z} of the cubes that are no longer connected to a
+	 * border of the world because of this change.
+	 *
+	 * @effect	| markPassable(getCubeSpace().getId(x, y, z))
+	 * @return	The cubes reported by that call.
+	 */
+	public List<int[]> changeSolidToPassable(int x, int y, int z){
+		return this.getChangedCubes(this.markPassable(this.space.getId(x, y, z)));
+	}
+
+	/**
+	 * Make the cube with the given coordinates solid, and return the
+	 * coordinates {x, y, z} of the cubes that became connected to a border of
+	 * the world because of this change.
+	 *
+	 * @effect	| markSolid(getCubeSpace().getId(x, y, z))
+	 * @return	The cubes reported by that call; if not empty, this includes the
+	 * 			given cube itself.
+	 */
+	public List<int[]> changePassableToSolid(int x, int y, int z){
+		return this.getChangedCubes(this.markSolid(this.space.getId(x, y, z)));
+	}
+
+	/**
+	 * Make the cube with the given identifier passable.
+	 *
+	 * @param	id
+	 * 			The identifier of the cube.
+	 * @return	The number of solid cubes that are no longer connected to a border
+	 * 			of the world because of this change. Their identifiers are
+	 * 			available through getChangedCube until the next change.
+	 * @post	| !new.isSolid(id)
+	 */
+	@Override
+	public int markPassable(int id){
+		this.single[0] = id;
+		return this.markPassable(this.single, 1);
+	}
+
+	/**
+	 * Make the cubes with the given identifiers passable at once.
+	 *
+	 * All cubes are made passable first, and then the solid neighbours of all
+	 * of them are searched from during a single change, so a cube found to
+	 * be connected from one dug out cube is not searched from again.
+	 *
+	 * @param	ids
+	 * 			An array holding the identifiers of the cubes.
+	 * @param	nbIds
+	 * 			The number of identifiers at the start of the array.
+	 * @return	The number of solid cubes that are no longer connected to a border
+	 * 			of the world because of these changes. Their identifiers are
+	 * 			available through getChangedCube until the next change.
+	 * @post	| for i in 0..nbIds-1: !new.isSolid(ids[i])
+	 */
+	@Override
+	public int markPassable(int[] ids, int nbIds){
+		this.nbChanged = 0;
+		if (this.dug.length < nbIds)
+			this.dug = new int[nbIds];
+		int nbDug = 0;
+		for (int i=0; i<nbIds; i++)
+			if (!this.isPassable(ids[i])){
+				this.setPassable(ids[i], true);
+				this.setNotConnected(ids[i], true);
+				this.dug[nbDug++] = ids[i];
+			}
+		int call = this.nextStamp();
+		for (int k=0; k<nbDug; k++){
+			int nbNeighbours = this.loadNeighbours(this.dug[k], this.changedNeighbours);
+			for (int i=0; i<nbNeighbours; i++){
+				int neighbour = this.changedNeighbours[i];
+				if (this.isPassable(neighbour) || this.isNotConnected(neighbour) ||
+						this.knownConnected.get(neighbour) == call)
+					continue;
+				if (this.searchBorder(neighbour, call))
+					for (int j=0; j<this.nbVisited; j++)
+						this.knownConnected.set(this.visitedCubes[j], call);
+				else
+					for (int j=0; j<this.nbVisited; j++)
+						if (!this.isNotConnected(this.visitedCubes[j])){
+							this.setNotConnected(this.visitedCubes[j], true);
+							this.addChanged(this.visitedCubes[j]);
+						}
+			}
+		}
+		return this.nbChanged;
+	}
+
+	/**
+	 * Make the cube with the given identifier solid.
+	 *
+	 * @param	id
+	 * 			The identifier of the cube.
+	 * @return	The number of solid cubes that became connected to a border of the
+	 * 			world because of this change, including the given cube if that
+	 * 			number is not zero. Their identifiers are available through
+	 * 			getChangedCube until the next change.
+	 * @post	| new.isSolid(id)
+	 */
+	@Override
+	public int markSolid(int id){
+		this.nbChanged = 0;
+		if (!this.isPassable(id))
+			return 0;
+		this.setPassable(id, false);
+		this.setNotConnected(id, true);
+		boolean connected = this.isBorder(id);
+		int nbNeighbours = this.loadNeighbours(id, this.neighbours);
+		for (int i=0; i<nbNeighbours && !connected; i++)
+			connected = this.isSolidConnectedToBorder(this.neighbours[i]);
+		if (!connected)
+			return 0;
+		// the new cube connects all solid cubes it touches, and so on
+		this.setNotConnected(id, false);
+		this.addChanged(id);
+		int head = 0;
+		while (head < this.nbChanged){
+			nbNeighbours = this.loadNeighbours(this.changed[head++], this.neighbours);
+			for (int i=0; i<nbNeighbours; i++){
+				int neighbour = this.neighbours[i];
+				if (!this.isPassable(neighbour) && this.isNotConnected(neighbour)){
+					this.setNotConnected(neighbour, false);
+					this.addChanged(neighbour);
+				}
+			}
+		}
+		return this.nbChanged;
+	}
+
+	/**
+	 * Set whether each cube is passable at once, and determine from scratch
+	 * which solid cubes are connected to the border.
+	 *
+	 * All solid cubes on the border are flooded breadth-first over directly
+	 * adjacent solid cubes at the same time, so every cube is visited at most
+	 * once, however many cubes are passable.
+	 *
+	 * @param	isPassable
+	 * 			The condition satisfied by the identifiers of passable cubes.
+	 * @return	The number of solid cubes that are not connected to a border of
+	 * 			the world. Their identifiers are available through getChangedCube
+	 * 			until the next change.
+	 * @post	| for each id in getCubeSpace():
+	 * 			|	new.isSolid(id) == !isPassable.test(id)
+	 */
+	@Override
+	public int reset(IntPredicate isPassable){
+		int nbCubes = this.space.getNbCubes();
+		int nbQueued = 0;
+		for (int id=0; id<nbCubes; id++){
+			this.setPassable(id, isPassable.test(id));
+			this.setNotConnected(id, this.isPassable(id) || !this.isBorder(id));
+			if (!this.isNotConnected(id)){
+				if (nbQueued == this.stack.length)
+					this.stack = Arrays.copyOf(this.stack, 2*nbQueued);
+				this.stack[nbQueued++] = id;
+			}
+		}
+		int head = 0;
+		while (head < nbQueued){
+			int nbNeighbours = this.loadNeighbours(this.stack[head++], this.neighbours);
+			for (int i=0; i<nbNeighbours; i++){
+				int neighbour = this.neighbours[i];
+				if (!this.isPassable(neighbour) && this.isNotConnected(neighbour)){
+					this.setNotConnected(neighbour, false);
+					if (nbQueued == this.stack.length)
+						this.stack = Arrays.copyOf(this.stack, 2*nbQueued);
+					this.stack[nbQueued++] = neighbour;
+				}
+			}
+		}
+		// the queue of the flood held every connected cube
+		this.stack = new int[64];
+		this.nbChanged = 0;
+		for (int id=0; id<nbCubes; id++)
+			if (!this.isPassable(id) && this.isNotConnected(id))
+				this.addChanged(id);
+		return this.nbChanged;
+	}
+
+	/**
+	 * Return the identifier of the changed cube with the given index, reported
+	 * by the last change.
+	 *
+	 * @param	index
+	 * 			The index of the cube, between 0 and the number returned by the
+	 * 			last change.
+	 */
+	@Override
+	public int getChangedCube(int index){
+		return this.changed[index];
+	}
+
+	private List<int[]> getChangedCubes(int nbChanged){
+		List<int[]> result = new ArrayList<>(nbChanged);
+		for (int i=0; i<nbChanged; i++)
+			result.add(this.space.getCube(this.changed[i]));
+		return result;
+	}
+
+	private void addChanged(int id){
+		if (this.nbChanged == this.changed.length)
+			this.changed = Arrays.copyOf(this.changed, 2*this.nbChanged);
+		this.changed[this.nbChanged++] = id;
+	}
+
+	/**
+	 * Search depth-first for a path of solid cubes from the given cube to the
+	 * border of the world, or to a cube known to be connected during the
+	 * given call. All cubes visited are left in visitedCubes.
+	 *
+	 * @return	True if and only if such a path exists.
+	 * @throws	IllegalStateException
+	 * 			The current thread was interrupted during the search.
+	 */
+	private boolean searchBorder(int origin, int call) throws IllegalStateException{
+		int search = this.nextStamp();
+		this.nbVisited = 0;
+		int nbStacked = 0;
+		int nbPopped = 0;
+		this.visit(origin, search);
+		this.stack[nbStacked++] = origin;
+		while (nbStacked > 0){
+			// this might take a long time - check if the impatient user has stopped us
+			if ((++nbPopped & 1023) == 0 && Thread.currentThread().isInterrupted())
+				throw new IllegalStateException();
+			int cube = this.stack[--nbStacked];
+			if (this.knownConnected.get(cube) == call || this.isBorder(cube))
+				return true;
+			if (this.isNotConnected(cube))
+				// cut off earlier during this call
+				return false;
+			int nbNeighbours = this.loadNeighbours(cube, this.neighbours);
+			for (int i=0; i<nbNeighbours; i++){
+				int neighbour = this.neighbours[i];
+				if (!this.isPassable(neighbour) && this.visited.get(neighbour) != search){
+					this.visit(neighbour, search);
+					if (nbStacked == this.stack.length)
+						this.stack = Arrays.copyOf(this.stack, 2*nbStacked);
+					this.stack[nbStacked++] = neighbour;
+				}
+			}
+		}
+		return false;
+	}
+
+	private void visit(int id, int search){
+		this.visited.set(id, search);
+		if (this.nbVisited == this.visitedCubes.length)
+			this.visitedCubes = Arrays.copyOf(this.visitedCubes, 2*this.nbVisited);
+		this.visitedCubes[this.nbVisited++] = id;
+	}
+
+	/**
+	 * Return a fresh stamp to mark cubes with. When the stamps run out, all
+	 * marks are cleared and numbering starts over. The marks are cleared as
+	 * well when they have spread over too many pages; a cleared mark only
+	 * makes a later search of the same change do more work.
+	 */
+	private int nextStamp(){
+		if (this.stamp == Integer.MAX_VALUE){
+			this.clearMarks();
+			this.stamp = 0;
+		}
+		else if (this.visited.getNbAllocatedPages()+this.knownConnected.getNbAllocatedPages() >
+				SearchConnectivity.maxNbMarkedPages)
+			this.clearMarks();
+		return ++this.stamp;
+	}
+
+	private void clearMarks(){
+		this.visited.clear();
+		this.knownConnected.clear();
+	}
+
+	private static final int maxNbMarkedPages = 256;
+
+	/**
+	 * Check whether the cube with the given identifier lies on a border of the
+	 * world.
+	 */
+	private boolean isBorder(int id){
+		int x = this.space.getX(id);
+		int y = this.space.getY(id);
+		int z = this.space.getZ(id);
+		return x == 0 || x == this.space.getNbCubesX()-1 || y == 0 ||
+				y == this.space.getNbCubesY()-1 || z == 0 || z == this.space.getNbCubesZ()-1;
+	}
+
+	/**
+	 * Store the identifiers of the directly adjacent cubes of the given cube
+	 * in the given buffer, and return their number.
+	 */
+	private int loadNeighbours(int id, int[] buffer){
+		int nbX = this.space.getNbCubesX();
+		int nbXY = nbX*this.space.getNbCubesY();
+		int x = this.space.getX(id);
+		int y = this.space.getY(id);
+		int z = this.space.getZ(id);
+		int nb = 0;
+		if (x > 0)
+			buffer[nb++] = id-1;
+		if (x < nbX-1)
+			buffer[nb++] = id+1;
+		if (y > 0)
+			buffer[nb++] = id-nbX;
+		if (y < this.space.getNbCubesY()-1)
+			buffer[nb++] = id+nbX;
+		if (z > 0)
+			buffer[nb++] = id-nbXY;
+		if (z < this.space.getNbCubesZ()-1)
+			buffer[nb++] = id+nbXY;
+		return nb;
+	}
+
+	private boolean isPassable(int id){
+		return (this.passable[id >>> 6] & (1L << id)) != 0;
+	}
+
+	private void setPassable(int id, boolean passable){
+		if (passable)
+			this.passable[id >>> 6] |= 1L << id;
+		else
+			this.passable[id >>> 6] &= ~(1L << id);
+	}
+
+	private boolean isNotConnected(int id){
+		return (this.notConnected[id >>> 6] & (1L << id)) != 0;
+	}
+
+	private void setNotConnected(int id, boolean notConnected){
+		if (notConnected)
+			this.notConnected[id >>> 6] |= 1L << id;
+		else
+			this.notConnected[id >>> 6] &= ~(1L << id);
+	}
+
+	/**
+	 * Bit sets registering, per cube, whether it is passable and whether it is
+	 * cut off from the border.
+	 */
+	private final long[] passable;
+	private final long[] notConnected;
+
+	/**
+	 * Arrays registering, per cube, the stamp of the last search that visited
+	 * it and of the last change during which it was found to be connected.
+	 */
+	private final PagedIntArray visited;
+	private final PagedIntArray knownConnected;
+	private int stamp = 0;
+
+	/**
+	 * Reusable buffers for the searches and their results.
+	 */
+	private int[] stack = new int[64];
+	private int[] visitedCubes = new int[64];
+	private int nbVisited;
+	private int[] changed = new int[64];
+	private int nbChanged;
+	private final int[] neighbours = new int[6];
+	private final int[] changedNeighbours = new int[6];
+	private final int[] single = new int[1];
+	private int[] dug = new int[1];
+}
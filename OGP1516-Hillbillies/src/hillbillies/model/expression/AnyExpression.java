@@ -17,7 +17,7 @@ public class AnyExpression extends Expression<Unit>{
 		Unit other = executor;
 		if (nbUnits > 1){
 			while (executor == other){
-				int rand = (int) (Math.random()*nbUnits);
+				int rand = (int) (executor.getRandom().nextDouble()*nbUnits);
 				Iterator<Unit> iter = executor.getWorld().getUnits().iterator();
 				for (int i=0; i<rand; i++)
 					iter.next();
@@ -7,24 +7,25 @@ import hillbillies.part3.programs.SourceLocation;
 public abstract class BinaryExpression<T,U,V> extends Expression<T> {
 	
 	/**
-	 * Initialize this new UnaryExpression with given expression.
+	 * Initialize this new BinaryExpression with given expressions.
 	 *
-	 * @param  expression
-	 *         The expression for this new UnaryExpression.
-	 * @effect The expression of this new UnaryExpression is set to
-	 *         the given expression.
-	 *       | this.setExpression(expression)
+	 * @param  leftExpression
+	 *         The left expression for this new BinaryExpression.
+	 * @param  rightExpression
+	 *         The right expression for this new BinaryExpression.
+	 * @post   | new.getLeftExpression() == leftExpression
+	 * @post   | new.getRightExpression() == rightExpression
 	 */
 	public BinaryExpression(Expression<U> leftExpression, Expression<V> rightExpression, SourceLocation loc) {
 		super(loc);
-		this.setLeftExpression(leftExpression);
-		this.setRightExpression(rightExpression);
+		this.leftExpression = leftExpression;
+		this.rightExpression = rightExpression;
 	}
 
 	/**
 	 * Return the expression of this UnaryExpression.
 	 */
-	@Basic @Raw
+	@Basic @Raw @Immutable
 	public Expression<U> getLeftExpression() {
 		return this.leftExpression;
 	}
@@ -32,52 +33,20 @@ public abstract class BinaryExpression<T,U,V> extends Expression<T> {
 	/**
 	 * Return the expression of this UnaryExpression.
 	 */
-	@Basic @Raw
+	@Basic @Raw @Immutable
 	public Expression<V> getRightExpression() {
 		return this.rightExpression;
 	}
 	
-	/**
-	 * Set the expression of this UnaryExpression to the given expression.
-	 * 
-	 * @param  expression
-	 *         The new expression for this UnaryExpression.
-	 * @post   The expression of this new UnaryExpression is equal to
-	 *         the given expression.
-	 *       | new.getExpression() == expression
-
-	 */
-	@Raw
-	public void setLeftExpression(Expression<U> leftExpression) 
-			throws IllegalArgumentException {
-		this.leftExpression = leftExpression;
-	}
-	
-	/**
-	 * Set the expression of this UnaryExpression to the given expression.
-	 * 
-	 * @param  expression
-	 *         The new expression for this UnaryExpression.
-	 * @post   The expression of this new UnaryExpression is equal to
-	 *         the given expression.
-	 *       | new.getExpression() == expression
-
-	 */
-	@Raw
-	public void setRightExpression(Expression<V> rightExpression) 
-			throws IllegalArgumentException {
-		this.rightExpression = rightExpression;
-	}
-	
 	/**
 	 * Variable registering the expression of this UnaryExpression.
 	 */
-	private Expression<U> leftExpression;
+	private final Expression<U> leftExpression;
 	
 	/**
 	 * Variable registering the expression of this UnaryExpression.
 	 */
-	private Expression<V> rightExpression;
+	private final Expression<V> rightExpression;
 	
 	public abstract T evaluate(U left, V right, Unit executor);
 	
@@ -89,6 +58,14 @@ public abstract class BinaryExpression<T,U,V> extends Expression<T> {
 		return evaluate(leftResult, rightResult, executor);
 	}
 	
+	@Override
+	public void collectVariables(VariableResolver resolver) {
+		if (this.getLeftExpression() != null)
+			this.getLeftExpression().collectVariables(resolver);
+		if (this.getRightExpression() != null)
+			this.getRightExpression().collectVariables(resolver);
+	}
+	
 	public String toString() {
 		return toString(getLeftExpression().toString(), getRightExpression().toString());
 	}
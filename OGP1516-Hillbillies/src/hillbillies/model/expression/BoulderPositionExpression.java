@@ -12,15 +12,10 @@ public class BoulderPositionExpression extends Expression<int[]>{
 	
 	@Override
 	public int[] getResult(Unit executor) {
-		Boulder currentBoulder = null;
-		for (Boulder boulder:executor.getWorld().getBoulders())
-			if (currentBoulder == null || 
-			executor.getPosition().distanceBetween(currentBoulder.getPosition()) > 
-			executor.getPosition().distanceBetween(boulder.getPosition()))
-				currentBoulder = boulder;
-		if (currentBoulder == null)
+		Boulder boulder = executor.getWorld().getNearestBoulder(executor.getPosition());
+		if (boulder == null)
 			return null;
-		return currentBoulder.getPosition().getCubeCoordinates();
+		return boulder.getPosition().getCubeCoordinates();
 	}
 
 	@Override
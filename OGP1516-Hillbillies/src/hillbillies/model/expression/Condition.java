@@ -0,0 +1,14 @@
+package hillbillies.model.expression;
+
+import hillbillies.model.Unit;
+
+/**
+ * An interface of compiled boolean expressions.
+ */
+public interface Condition {
+	
+	/**
+	 * Check whether this condition holds for the given executing unit.
+	 */
+	public boolean holds(Unit executor);
+}
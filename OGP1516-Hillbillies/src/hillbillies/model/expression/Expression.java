@@ -1,5 +1,8 @@
 package hillbillies.model.expression;
 
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+
 import hillbillies.model.SourceReference;
 import hillbillies.part3.programs.SourceLocation;
 
@@ -16,4 +19,41 @@ public abstract class Expression<T> extends SourceReference implements IExpressi
 	public Expression(SourceLocation loc){
 		super(loc);
 	}
+	
+	/**
+	 * Return the type of the results of this expression, or null if it is
+	 * only known while the expression is evaluated.
+	 * 
+	 * The type is the first type argument given by the class of this
+	 * expression to its superclass, such as Boolean for expressions extending
+	 * Expression<Boolean> or UnaryExpression<Boolean, Unit>.
+	 */
+	public Class<?> getType(){
+		Type superclass = this.getClass().getGenericSuperclass();
+		if (superclass instanceof ParameterizedType){
+			Type type = ((ParameterizedType) superclass).getActualTypeArguments()[0];
+			if (type instanceof Class)
+				return (Class<?>) type;
+		}
+		return null;
+	}
+	
+	/**
+	 * Register the occurrences of variables in this expression with the
+	 * given resolver.
+	 */
+	public void collectVariables(VariableResolver resolver){
+	}
+	
+	/**
+	 * Return a condition evaluating this expression, which evaluates to
+	 * booleans.
+	 * 
+	 * Expressions combining booleans compile to conditions combining their
+	 * compiled operands, so that no intermediate result is boxed. Other
+	 * expressions evaluate to their result.
+	 */
+	public Condition compileCondition(){
+		return executor -> (Boolean) this.getResult(executor);
+	}
 }
@@ -14,6 +14,11 @@ public class FalseExpression extends Expression<Boolean>{
 		return false;
 	}
 
+	@Override
+	public Condition compileCondition() {
+		return executor -> false;
+	}
+
 	@Override
 	public String toString() {
 		return "false";
@@ -11,8 +11,8 @@ public class FriendExpression extends Expression<Unit>{
 
 	@Override
 	public Unit getResult(Unit executor) {
-		for (Unit other: executor.getWorld().getUnits())
-			if (executor != other && executor.hasSameFaction(other))
+		for (Unit other: executor.getWorld().getUnitsOfFaction(executor.getFaction()))
+			if (executor != other)
 				return other;
 		return null;
 	}
@@ -12,10 +12,10 @@ public class LiteralPositionExpression extends Expression<int[]> {
 		this.position = new int[]{x,y,z};
 	}
 	
-	private int[] position;
+	private final int[] position;
 	
 	public int[] getPosition(){
-		return this.position;
+		return this.position.clone();
 	}
 	
 	@Override
@@ -25,6 +25,7 @@ public class LiteralPositionExpression extends Expression<int[]> {
 	
 	@Override
 	public int[] getResult(Unit unit) {
-		return this.position;
+		// the same literal is shared by every unit executing the task
+		return this.position.clone();
 	}
 }
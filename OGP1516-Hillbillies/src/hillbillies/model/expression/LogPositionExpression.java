@@ -12,13 +12,10 @@ public class LogPositionExpression extends Expression<int[]>{
 	
 	@Override
 	public int[] getResult(Unit executor) {
-		Log currentLog = null;
-		for (Log log:executor.getWorld().getLogs())
-			if (currentLog == null || 
-			executor.getPosition().distanceBetween(currentLog.getPosition()) > 
-			executor.getPosition().distanceBetween(log.getPosition()))
-				currentLog = log;
-		return currentLog.getPosition().getCubeCoordinates();
+		Log log = executor.getWorld().getNearestLog(executor.getPosition());
+		if (log == null)
+			return null;
+		return log.getPosition().getCubeCoordinates();
 	}
 
 	@Override
@@ -1,9 +1,8 @@
 package hillbillies.model.expression;
 
-import java.util.List;
-import java.util.Optional;
-import hillbillies.model.Helper;
+import hillbillies.model.CubeSpace;
 import hillbillies.model.Unit;
+import hillbillies.model.World;
 import hillbillies.part3.programs.SourceLocation;
 
 public class NextToPositionExpression extends UnaryExpression<int[], int[]>{
@@ -14,15 +13,15 @@ public class NextToPositionExpression extends UnaryExpression<int[], int[]>{
 	
 	@Override
 	public int[] evaluate(int[] cube, Unit executor) {
-		List<Integer[]> neighbours =
-				executor.getWorld().getValidNeigbouringCubes(Helper.converter(cube));
-		Optional<Integer[]> result = 
-				neighbours.stream().
-				filter(inspect->executor.isStandableCube(Helper.converter(inspect))).
-				findAny();
-		if (!result.isPresent())
-			return null;
-		return Helper.converter(result.get());
+		World world = executor.getWorld();
+		for (int i=0; i<CubeSpace.nbNeighbours; i++){
+			int x = cube[0]+CubeSpace.getNeighbourDx(i);
+			int y = cube[1]+CubeSpace.getNeighbourDy(i);
+			int z = cube[2]+CubeSpace.getNeighbourDz(i);
+			if (world.isValidCube(x, y, z) && world.isStandableCube(x, y, z))
+				return new int[]{x,y,z};
+		}
+		return null;
 		}
 
 	@Override
@@ -14,6 +14,12 @@ public class NotExpression extends UnaryExpression <Boolean,Boolean>{
 		return !condition;
 	}
 
+	@Override
+	public Condition compileCondition() {
+		Condition condition = this.getSubExpression().compileCondition();
+		return executor -> !condition.holds(executor);
+	}
+
 	@Override
 	public String toString(String condition) {
 		return "not( " + condition + " )";
@@ -14,6 +14,17 @@ public class OrExpression extends BinaryExpression<Boolean, Boolean, Boolean>{
 		return left || right;
 	}
 
+	/**
+	 * Both operands are evaluated, as they are by the result of this
+	 * expression.
+	 */
+	@Override
+	public Condition compileCondition() {
+		Condition left = this.getLeftExpression().compileCondition();
+		Condition right = this.getRightExpression().compileCondition();
+		return executor -> left.holds(executor) | right.holds(executor);
+	}
+
 	@Override
 	public String toString(String left, String right) {
 		return "( " + left + " or " + right + " )";
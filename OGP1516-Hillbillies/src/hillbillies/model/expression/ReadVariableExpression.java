@@ -1,26 +1,53 @@
 package hillbillies.model.expression;
 
 import hillbillies.model.Unit;
-import hillbillies.model.statement.AssignmentStatement;
 import hillbillies.part3.programs.SourceLocation;
 
 public class ReadVariableExpression<T> extends Expression<T> {
 
-	public ReadVariableExpression(String name, SourceLocation loc) {
+	public ReadVariableExpression(Variable variable, SourceLocation loc) {
 		super(loc);
-		this.name = name;
+		this.variable = variable;
 	}
 	
-	private String name;
+	private final Variable variable;
+	
+	/**
+	 * Return the variable read by this expression.
+	 */
+	public Variable getVariable(){
+		return this.variable;
+	}
 	
 	@SuppressWarnings("unchecked")
 	@Override
 	public T getResult(Unit executor) {
-		return (T) AssignmentStatement.getVariable(this.name, executor);
+		return (T) executor.getExecutionContext().readVariable(this.variable);
+	}
+
+	/**
+	 * The type of a variable is its static type.
+	 */
+	@Override
+	public Class<?> getType() {
+		return this.variable.getType();
+	}
+
+	@Override
+	public void collectVariables(VariableResolver resolver) {
+		resolver.addVariable(this.variable);
+	}
+
+	@Override
+	public Condition compileCondition() {
+		if (this.variable.getType() != Boolean.class)
+			return super.compileCondition();
+		Variable variable = this.variable;
+		return executor -> executor.getExecutionContext().readBoolean(variable);
 	}
 
 	@Override
 	public String toString() {
-		return "read( " + this.name + " )";
+		return "read( " + this.variable.getName() + " )";
 	}
 }
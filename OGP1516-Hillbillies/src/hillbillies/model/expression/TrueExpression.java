@@ -14,6 +14,11 @@ public class TrueExpression extends Expression<Boolean>{
 		return true;
 	}
 
+	@Override
+	public Condition compileCondition() {
+		return executor -> true;
+	}
+
 	@Override
 	public String toString() {
 		return "true";
@@ -18,43 +18,26 @@ public abstract class UnaryExpression<T,U> extends Expression<T> {
 	 *
 	 * @param  expression
 	 *         The expression for this new UnaryExpression.
-	 * @effect The expression of this new UnaryExpression is set to
-	 *         the given expression.
-	 *       | this.setExpression(expression)
+	 * @post   | new.getSubExpression() == subExpression
 	 */
 	public UnaryExpression(Expression<U> subExpression, SourceLocation loc) {
 		super(loc);
-		this.setSubExpression(subExpression);
+		this.subExpression = subExpression;
 	}
 
 	/**
 	 * Return the expression of this UnaryExpression.
 	 */
-	@Basic @Raw
+	@Basic @Raw @Immutable
 	public Expression<U> getSubExpression() {
 		return this.subExpression;
 	}
 
 	
-	/**
-	 * Set the expression of this UnaryExpression to the given expression.
-	 * 
-	 * @param  expression
-	 *         The new expression for this UnaryExpression.
-	 * @post   The expression of this new UnaryExpression is equal to
-	 *         the given expression.
-	 *       | new.getExpression() == expression
-	 */
-	@Raw
-	public void setSubExpression(Expression<U> subExpression) 
-			throws IllegalArgumentException {
-		this.subExpression = subExpression;
-	}
-	
 	/**
 	 * Variable registering the expression of this UnaryExpression.
 	 */
-	private Expression<U> subExpression;
+	private final Expression<U> subExpression;
 
 	public abstract T evaluate(U sub, Unit executor);
 	public abstract String toString(String sub);
@@ -64,6 +47,12 @@ public abstract class UnaryExpression<T,U> extends Expression<T> {
 		return evaluate(result, executor);
 	}
 	
+	@Override
+	public void collectVariables(VariableResolver resolver) {
+		if (this.getSubExpression() != null)
+			this.getSubExpression().collectVariables(resolver);
+	}
+	
 	@Override
 	public String toString() {
 		return toString(getSubExpression().toString());
@@ -0,0 +1,97 @@
+package hillbillies.model.expression;
+
+import be.kuleuven.cs.som.annotate.*;
+
+/**
+ * A class of occurrences of variables in a task.
+ *
+ * Every assignment to a variable and every read of it has its own occurrence.
+ * Once the whole task is created, all occurrences of a variable are resolved
+ * to the same fixed slot, at which the executing unit keeps its value, and to
+ * the same static type, if it has one.
+ *
+ * @invar	| getName() != null
+ */
+public class Variable {
+
+	/**
+	 * Initialize this new, unresolved occurrence of the variable with the
+	 * given name.
+	 *
+	 * @param	name
+	 * 			The name of the variable.
+	 * @post	| new.getName() == name
+	 * @post	| !new.isResolved()
+	 */
+	public Variable(String name){
+		this.name = name;
+	}
+
+	/**
+	 * Return the name of this variable.
+	 */
+	@Basic @Immutable
+	public String getName(){
+		return this.name;
+	}
+
+	private final String name;
+
+	/**
+	 * Return the slot of this variable, or -1 if it is not resolved.
+	 */
+	@Basic
+	public int getSlot(){
+		return this.slot;
+	}
+
+	/**
+	 * Check whether this variable has been resolved.
+	 *
+	 * @return	| result == (getSlot() >= 0)
+	 */
+	public boolean isResolved(){
+		return this.slot >= 0;
+	}
+
+	private int slot = -1;
+
+	/**
+	 * Return the static type of this variable, or null if it has none or is
+	 * not resolved.
+	 */
+	@Basic
+	public Class<?> getType(){
+		return this.type;
+	}
+
+	private Class<?> type = null;
+
+	/**
+	 * Resolve this variable to the given slot and static type.
+	 *
+	 * @param	slot
+	 * 			The slot of this variable.
+	 * @param	type
+	 * 			The static type of this variable, or null if it has none.
+	 * @post	| new.getSlot() == slot && new.getType() == type
+	 * @throws	IllegalArgumentException
+	 * 			The given slot is negative.
+	 * @throws	IllegalStateException
+	 * 			This variable is already resolved to another slot or type.
+	 * 			| isResolved() && (getSlot() != slot || getType() != type)
+	 */
+	public void resolve(int slot, Class<?> type) throws IllegalArgumentException, IllegalStateException{
+		if (slot < 0)
+			throw new IllegalArgumentException();
+		if (this.isResolved() && (this.slot != slot || this.type != type))
+			throw new IllegalStateException();
+		this.slot = slot;
+		this.type = type;
+	}
+
+	@Override
+	public String toString(){
+		return this.name;
+	}
+}
@@ -0,0 +1,115 @@
+package hillbillies.model.expression;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A class of resolvers collecting the occurrences of the variables of a task,
+ * and resolving them to slots and static types.
+ *
+ * The variables get consecutive slots, in the order in which they are first
+ * collected. The static type of a variable is the type of every expression
+ * assigned to it, if they all have the same type. A variable assigned
+ * expressions of different types, or of types that are only known while the
+ * task is executed, has no static type; assigning a value of another type
+ * than its current value then fails while the task is executed.
+ */
+public class VariableResolver {
+
+	/**
+	 * Register the given occurrence of a variable.
+	 */
+	public void addVariable(Variable variable){
+		this.getEntry(variable.getName()).occurrences.add(variable);
+	}
+
+	/**
+	 * Register the given occurrence of a variable, to which the given
+	 * expression is assigned.
+	 */
+	public void addAssignment(Variable variable, Expression<?> value){
+		this.addVariable(variable);
+		this.getEntry(variable.getName()).values.add(value);
+	}
+
+	/**
+	 * Resolve all registered occurrences of variables.
+	 *
+	 * @throws	IllegalStateException
+	 * 			Some occurrence is already resolved to another slot or type.
+	 */
+	public void resolve() throws IllegalStateException{
+		int slot = 0;
+		for (Entry entry: this.entries.values()){
+			Class<?> type = this.getType(entry);
+			for (Variable variable: entry.occurrences)
+				variable.resolve(slot, type);
+			slot++;
+		}
+	}
+
+	private Entry getEntry(String name){
+		Entry entry = this.entries.get(name);
+		if (entry == null){
+			entry = new Entry();
+			this.entries.put(name, entry);
+		}
+		return entry;
+	}
+
+	/**
+	 * Return the static type of the variable of the given entry.
+	 */
+	private Class<?> getType(Entry entry){
+		if (entry.typeState == UNTYPED){
+			entry.typeState = TYPING;
+			Class<?> type = null;
+			for (int i=0; i<entry.values.size(); i++){
+				Class<?> valueType = this.getType(entry.values.get(i));
+				if (i == 0)
+					type = valueType;
+				else if (valueType != type)
+					type = null;
+			}
+			entry.type = type;
+			entry.typeState = TYPED;
+		}
+		// a variable assigned its own value while it is typed has no static type
+		if (entry.typeState == TYPING)
+			return null;
+		return entry.type;
+	}
+
+	/**
+	 * Return the type of the given assigned expression, which is the type of
+	 * the variable it reads, if any. An expression the factory does not
+	 * create, which is null, has no known type.
+	 */
+	private Class<?> getType(Expression<?> value){
+		if (value == null)
+			return null;
+		if (value instanceof ReadVariableExpression)
+			return this.getType(this.getEntry(((ReadVariableExpression<?>) value).getVariable().getName()));
+		return value.getType();
+	}
+
+	/**
+	 * Map registering the occurrences of every variable, and the expressions
+	 * assigned to it, by name, in the order the variables were first
+	 * collected.
+	 */
+	private final Map<String, Entry> entries = new LinkedHashMap<>();
+
+	private static class Entry {
+		private final List<Variable> occurrences = new ArrayList<>();
+		private final List<Expression<?>> values = new ArrayList<>();
+		private Class<?> type = null;
+		private int typeState = UNTYPED;
+	}
+
+	private static final int UNTYPED = 0;
+	private static final int TYPING = 1;
+	private static final int TYPED = 2;
+}
@@ -11,12 +11,7 @@ public class WorkshopPositionExpression extends Expression<int[]>{
 	
 	@Override
 	public int[] getResult(Unit executor) {
-		for (int x=0; x<executor.getWorld().getNbCubesX(); x++)
-			for (int y=0; y<executor.getWorld().getNbCubesX(); y++)
-				for (int z=0; z<executor.getWorld().getNbCubesX(); z++)
-					if (executor.getWorld().isWorkshop(x, y, z))
-						return new int[]{x,y,z};
-		return null;
+		return executor.getWorld().getNearestWorkshop(executor.getPosition());
 	}
 
 	@Override
@@ -0,0 +1,351 @@
+package hillbillies.model.path;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+import be.kuleuven.cs.som.annotate.*;
+import hillbillies.model.PagedIntArray;
+import hillbillies.model.CubeSpace;
+
+/**
+ * A class of flow fields, registering for every cube of a world the number
+ * of steps needed to walk to a fixed target cube.
+ *
+ * A cube that is not standable, or from which the target cannot be reached,
+ * has no distance. The next step towards the target from any reached cube
+ * is a neighbour that is one step closer, so it can be read from the field
+ * without searching.
+ *
+ * @invar	The target of this flow field has distance zero, as long as the
+ * 			field is valid.
+ * 			| !isValid() || getDistance(getTarget()) == 0
+ */
+public class FlowField {
+
+	/**
+	 * Initialize this new flow field towards the given target cube, by a
+	 * breadth-first flood over the cubes satisfying the given condition.
+	 *
+	 * @param 	space
+	 * 			The cube space of the world.
+	 * @param 	target
+	 * 			The identifier of the target cube.
+	 * @param 	isStandable
+	 * 			The condition every cube on a route must satisfy.
+	 */
+	FlowField(CubeSpace space, int target, IntPredicate isStandable){
+		this.space = space;
+		this.target = target;
+		this.distances = new PagedIntArray(space, FlowField.UNREACHED);
+		this.queue = new int[64];
+		if (isStandable.test(target)){
+			this.distances.set(target, 0);
+			this.flood(target, isStandable);
+		}
+		else
+			this.valid = false;
+	}
+
+	private final CubeSpace space;
+
+	/**
+	 * Return the identifier of the target cube of this flow field.
+	 */
+	@Basic @Immutable
+	public int getTarget(){
+		return this.target;
+	}
+
+	private final int target;
+
+	/**
+	 * Return the number of steps from the cube with the given identifier to the
+	 * target, or -1 if the target cannot be reached from that cube.
+	 */
+	public int getDistance(int id){
+		return this.distances.get(id);
+	}
+
+	/**
+	 * Return the identifier of the next cube on a shortest route from the cube
+	 * with the given identifier to the target, or -1 if there is none.
+	 *
+	 * @return	A neighbouring cube that is one step closer to the target.
+	 * 			| result == -1 || getDistance(result) == getDistance(id) - 1
+	 */
+	public int getNextStep(int id){
+		int distance = this.distances.get(id);
+		if (distance <= 0)
+			return -1;
+		int x = this.space.getX(id);
+		int y = this.space.getY(id);
+		int z = this.space.getZ(id);
+		for (int i=0; i<CubeSpace.nbNeighbours; i++){
+			int nextX = x + CubeSpace.getNeighbourDx(i);
+			int nextY = y + CubeSpace.getNeighbourDy(i);
+			int nextZ = z + CubeSpace.getNeighbourDz(i);
+			if (this.space.isValidCube(nextX, nextY, nextZ) &&
+					this.distances.get(this.space.getId(nextX, nextY, nextZ)) == distance-1)
+				return this.space.getId(nextX, nextY, nextZ);
+		}
+		return -1;
+	}
+
+	/**
+	 * Return the indices of the successive cubes on a shortest route from the
+	 * cube with the given identifier to the target, starting with the first step,
+	 * or null if the target cannot be reached from that cube.
+	 */
+	public int[] getPath(int id){
+		int distance = this.distances.get(id);
+		if (distance == FlowField.UNREACHED)
+			return null;
+		int[] path = new int[distance];
+		int current = id;
+		for (int step = 0; step < distance; step++){
+			current = this.getNextStep(current);
+			path[step] = current;
+		}
+		return path;
+	}
+
+	/**
+	 * Check whether this flow field still describes the current terrain.
+	 */
+	@Basic
+	public boolean isValid(){
+		return this.valid;
+	}
+
+	private boolean valid = true;
+
+	/**
+	 * Update this flow field after the terrain of the given cube has changed,
+	 * which may change the standability of the cube and its neighbours.
+	 *
+	 * @param	x
+	 * 			The x-coordinate of the changed cube.
+	 * @param	y
+	 * 			The y-coordinate of the changed cube.
+	 * @param	z
+	 * 			The z-coordinate of the changed cube.
+	 * @param	isStandable
+	 * 			The condition every cube on a route must satisfy, after the change.
+	 * @post	If the target is no longer standable, this field is no longer
+	 * 			valid.
+	 * @post	Otherwise, cubes with a distance that are no longer standable lose
+	 * 			it, and so do the cubes whose every shortest route passed them;
+	 * 			the latter get their distance back from the surrounding cubes
+	 * 			that kept theirs. Cubes that became standable next to a reached
+	 * 			cube get their distance, and all distances that shrink because of
+	 * 			them are updated, so the field stays exact.
+	 */
+	void notifyTerrainChanged(int x, int y, int z, IntPredicate isStandable){
+		if (!this.valid)
+			return;
+		this.queueSize = 0;
+		int nbLost = 0;
+		for (int dx=-1; dx<=1; dx++)
+			for (int dy=-1; dy<=1; dy++)
+				for (int dz=-1; dz<=1; dz++){
+					if (!this.space.isValidCube(x+dx, y+dy, z+dz))
+						continue;
+					int id = this.space.getId(x+dx, y+dy, z+dz);
+					if (this.distances.get(id) != FlowField.UNREACHED && !isStandable.test(id)){
+						if (id == this.target){
+							this.valid = false;
+							return;
+						}
+						this.lost[nbLost++] = id;
+					}
+				}
+		if (nbLost > 0)
+			this.unreach(nbLost, isStandable);
+		for (int dx=-1; dx<=1; dx++)
+			for (int dy=-1; dy<=1; dy++)
+				for (int dz=-1; dz<=1; dz++)
+					if (this.space.isValidCube(x+dx, y+dy, z+dz))
+						this.reach(this.space.getId(x+dx, y+dy, z+dz), isStandable);
+		this.propagate(isStandable);
+	}
+
+	/**
+	 * Remove the distances of the given number of lost cubes, and of all cubes
+	 * that were only as close to the target as they were through lost cubes,
+	 * and queue the cubes among the latter that get a distance back from their
+	 * neighbours.
+	 *
+	 * Cubes are handled in order of their old distance, so that a cube is only
+	 * checked once all cubes one step closer to the target that lose their
+	 * distance have lost it.
+	 */
+	private void unreach(int nbLost, IntPredicate isStandable){
+		// at most 27 cubes, sorted on their distance
+		for (int i=1; i<nbLost; i++){
+			int id = this.lost[i];
+			int j = i;
+			for (; j > 0 && this.distances.get(this.lost[j-1]) > this.distances.get(id); j--)
+				this.lost[j] = this.lost[j-1];
+			this.lost[j] = id;
+		}
+		for (int i=0; i<nbLost; i++){
+			this.lostDistances[i] = this.distances.get(this.lost[i]);
+			this.distances.set(this.lost[i], FlowField.UNREACHED);
+		}
+		this.nbUnreached = 0;
+		int nextLost = 0;
+		int head = 0;
+		while (nextLost < nbLost || head < this.nbUnreached){
+			int current, distance;
+			if (head == this.nbUnreached ||
+					(nextLost < nbLost && this.lostDistances[nextLost] <= this.unreachedDistances[head])){
+				current = this.lost[nextLost];
+				distance = this.lostDistances[nextLost++];
+			}
+			else {
+				current = this.unreached[head];
+				distance = this.unreachedDistances[head++];
+			}
+			int x = this.space.getX(current);
+			int y = this.space.getY(current);
+			int z = this.space.getZ(current);
+			for (int i=0; i<CubeSpace.nbNeighbours; i++){
+				int nextX = x + CubeSpace.getNeighbourDx(i);
+				int nextY = y + CubeSpace.getNeighbourDy(i);
+				int nextZ = z + CubeSpace.getNeighbourDz(i);
+				if (!this.space.isValidCube(nextX, nextY, nextZ))
+					continue;
+				int next = this.space.getId(nextX, nextY, nextZ);
+				if (this.distances.get(next) == distance+1 && this.getSmallestNeighbourDistance(next) != distance){
+					this.distances.set(next, FlowField.UNREACHED);
+					this.addUnreached(next, distance+1);
+				}
+			}
+		}
+		for (int i=0; i<this.nbUnreached; i++)
+			this.reach(this.unreached[i], isStandable);
+	}
+
+	/**
+	 * Give the cube with the given identifier a distance, if it has none, it
+	 * is standable and one of its neighbours has a distance, and queue it.
+	 */
+	private void reach(int id, IntPredicate isStandable){
+		if (this.distances.get(id) != FlowField.UNREACHED || !isStandable.test(id))
+			return;
+		int best = this.getSmallestNeighbourDistance(id);
+		if (best != FlowField.UNREACHED){
+			this.distances.set(id, best+1);
+			this.enqueue(id);
+		}
+	}
+
+	private void addUnreached(int id, int distance){
+		if (this.nbUnreached == this.unreached.length){
+			this.unreached = Arrays.copyOf(this.unreached, 2*this.nbUnreached);
+			this.unreachedDistances = Arrays.copyOf(this.unreachedDistances, 2*this.nbUnreached);
+		}
+		this.unreached[this.nbUnreached] = id;
+		this.unreachedDistances[this.nbUnreached++] = distance;
+	}
+
+	/**
+	 * Return the smallest distance of a neighbour of the given cube, or -1 if
+	 * no neighbour has a distance.
+	 */
+	private int getSmallestNeighbourDistance(int id){
+		int x = this.space.getX(id);
+		int y = this.space.getY(id);
+		int z = this.space.getZ(id);
+		int best = FlowField.UNREACHED;
+		for (int i=0; i<CubeSpace.nbNeighbours; i++){
+			int nextX = x + CubeSpace.getNeighbourDx(i);
+			int nextY = y + CubeSpace.getNeighbourDy(i);
+			int nextZ = z + CubeSpace.getNeighbourDz(i);
+			if (this.space.isValidCube(nextX, nextY, nextZ)){
+				int distance = this.distances.get(this.space.getId(nextX, nextY, nextZ));
+				if (distance != FlowField.UNREACHED && (best == FlowField.UNREACHED || distance < best))
+					best = distance;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Flood the field breadth-first from the given, already reached cube.
+	 */
+	private void flood(int start, IntPredicate isStandable){
+		this.queueSize = 0;
+		this.enqueue(start);
+		this.propagate(isStandable);
+	}
+
+	/**
+	 * Lower the distances of the standable neighbours of all queued cubes,
+	 * until no distance can be lowered any more.
+	 */
+	private void propagate(IntPredicate isStandable){
+		int head = 0;
+		while (head < this.queueSize){
+			int current = this.queue[head++];
+			int nextDistance = this.distances.get(current)+1;
+			int x = this.space.getX(current);
+			int y = this.space.getY(current);
+			int z = this.space.getZ(current);
+			for (int i=0; i<CubeSpace.nbNeighbours; i++){
+				int nextX = x + CubeSpace.getNeighbourDx(i);
+				int nextY = y + CubeSpace.getNeighbourDy(i);
+				int nextZ = z + CubeSpace.getNeighbourDz(i);
+				if (!this.space.isValidCube(nextX, nextY, nextZ))
+					continue;
+				int next = this.space.getId(nextX, nextY, nextZ);
+				int distance = this.distances.get(next);
+				if (distance != FlowField.UNREACHED && distance <= nextDistance)
+					continue;
+				if (!isStandable.test(next))
+					continue;
+				this.distances.set(next, nextDistance);
+				this.enqueue(next);
+			}
+		}
+		this.queueSize = 0;
+	}
+
+	private void enqueue(int id){
+		if (this.queueSize == this.queue.length)
+			this.queue = Arrays.copyOf(this.queue, 2*this.queueSize);
+		this.queue[this.queueSize++] = id;
+	}
+
+	/**
+	 * Array registering the number of steps from each cube to the target. Only
+	 * the pages holding reached cubes take memory.
+	 */
+	private final PagedIntArray distances;
+
+	/**
+	 * The work queue of the breadth-first floods.
+	 */
+	private int[] queue;
+	private int queueSize;
+
+	/**
+	 * Arrays registering the cubes of a terrain change that are no longer
+	 * standable, and their old distances.
+	 */
+	private final int[] lost = new int[27];
+	private final int[] lostDistances = new int[27];
+
+	/**
+	 * Arrays registering the cubes that lost their distance because of lost
+	 * cubes, in order of their old distances, which they register as well.
+	 */
+	private int[] unreached = new int[64];
+	private int[] unreachedDistances = new int[64];
+	private int nbUnreached;
+
+	/**
+	 * The distance of cubes from which the target cannot be reached.
+	 */
+	private static final int UNREACHED = -1;
+}
@@ -0,0 +1,184 @@
+package hillbillies.model.path;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.IntPredicate;
+
+import be.kuleuven.cs.som.annotate.*;
+import hillbillies.model.CubeSpace;
+
+/**
+ * A class of caches of flow fields towards popular target cubes of a world.
+ *
+ * A flow field is only built for a target once it has been asked for more
+ * than once; routes towards other targets are searched with the A* path
+ * finder. When the cache is full, the least recently used flow field is
+ * evicted.
+ *
+ * @invar	The number of cached flow fields never exceeds the capacity.
+ * 			| getNbFlowFields() <= getCapacity()
+ */
+public class FlowFieldCache {
+
+	/**
+	 * Initialize this new flow field cache.
+	 *
+	 * @param 	finder
+	 * 			The path finder used for targets without a flow field.
+	 * @param 	isStandable
+	 * 			The condition every cube on a route must satisfy.
+	 * @param 	capacity
+	 * 			The maximal number of flow fields kept.
+	 * @throws 	IllegalArgumentException
+	 * 			The capacity is not strictly positive.
+	 */
+	public FlowFieldCache(PathFinder finder, IntPredicate isStandable, int capacity)
+			throws IllegalArgumentException{
+		if (capacity <= 0)
+			throw new IllegalArgumentException();
+		this.finder = finder;
+		this.isStandable = isStandable;
+		this.capacity = capacity;
+		this.flowFields = new LinkedHashMap<Integer, FlowField>(16, 0.75f, true){
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, FlowField> eldest){
+				return this.size() > FlowFieldCache.this.getCapacity();
+			}
+		};
+		this.requests = new LinkedHashMap<Integer, Integer>(16, 0.75f, true){
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, Integer> eldest){
+				return this.size() > FlowFieldCache.maxNbRequestsTracked;
+			}
+		};
+	}
+
+	private final PathFinder finder;
+	private final IntPredicate isStandable;
+
+	/**
+	 * Return the maximal number of flow fields in this cache.
+	 */
+	@Basic @Immutable
+	public int getCapacity(){
+		return this.capacity;
+	}
+
+	private final int capacity;
+
+	/**
+	 * Return the number of flow fields in this cache.
+	 */
+	public int getNbFlowFields(){
+		return this.flowFields.size();
+	}
+
+	/**
+	 * Return the flow field towards the given target cube, or null if it is
+	 * not cached.
+	 */
+	public FlowField getFlowField(int target){
+		return this.flowFields.get(target);
+	}
+
+	/**
+	 * Return a shortest route between the given cubes.
+	 *
+	 * @param	start
+	 * 			The identifier of the cube the route starts from.
+	 * @param	target
+	 * 			The identifier of the cube the route leads to.
+	 * @return	The identifiers of the successive cubes on the route, as returned by
+	 * 			the path finder of this cache.
+	 * 			| result.length == finder.findPath(start, target, isStandable).length
+	 * @effect	If the target was asked for before, a flow field towards it is
+	 * 			built and cached, and the route is read from it.
+	 * @throws	IllegalArgumentException
+	 * 			One of the cubes is not in the world.
+	 */
+	public int[] findPath(int start, int target) throws IllegalArgumentException{
+		if (!this.finder.getCubeSpace().isValidId(start))
+			throw new IllegalArgumentException("Cube not in gameworld");
+		FlowField field = this.requestFlowField(target);
+		if (field == null)
+			return this.finder.findPath(start, target, this.isStandable);
+		return field.getPath(start);
+	}
+
+	/**
+	 * Return the flow field towards the given target cube, if routes towards
+	 * it are asked for often enough to keep one.
+	 *
+	 * @param	target
+	 * 			The identifier of the cube routes lead to.
+	 * @return	The cached flow field towards the given target, or null if the
+	 * 			target was not asked for before or is not standable.
+	 * @effect	If the target was asked for before, a flow field towards it is
+	 * 			built and cached.
+	 * @throws	IllegalArgumentException
+	 * 			The cube is not in the world.
+	 */
+	public FlowField requestFlowField(int target) throws IllegalArgumentException{
+		CubeSpace space = this.finder.getCubeSpace();
+		if (!space.isValidId(target))
+			throw new IllegalArgumentException("Cube not in gameworld");
+		FlowField field = this.flowFields.get(target);
+		if (field == null){
+			Integer nbRequests = this.requests.get(target);
+			if (nbRequests == null || nbRequests+1 < FlowFieldCache.minNbRequests){
+				this.requests.put(target, (nbRequests == null)? 1: nbRequests+1);
+				return null;
+			}
+			this.requests.remove(target);
+			field = new FlowField(space, target, this.isStandable);
+			if (!field.isValid())
+				return null;
+			this.flowFields.put(target, field);
+		}
+		return field;
+	}
+
+	/**
+	 * Update all cached flow fields after the terrain of the given cube has
+	 * changed.
+	 *
+	 * @effect	Every cached flow field is updated.
+	 * 			| for each field in flowFields.values()
+	 * 			|	field.notifyTerrainChanged(x, y, z, isStandable)
+	 * @post	Flow fields whose target is no longer standable are evicted.
+	 */
+	public void notifyTerrainChanged(int x, int y, int z){
+		Iterator<FlowField> iterator = this.flowFields.values().iterator();
+		while (iterator.hasNext()){
+			FlowField field = iterator.next();
+			field.notifyTerrainChanged(x, y, z, this.isStandable);
+			if (!field.isValid())
+				iterator.remove();
+		}
+	}
+
+	/**
+	 * Map registering the cached flow fields by the identifier of their target,
+	 * in order of last use.
+	 */
+	private final Map<Integer, FlowField> flowFields;
+
+	/**
+	 * Map registering how many times a route to a target without flow field
+	 * was asked for.
+	 */
+	private final Map<Integer, Integer> requests;
+
+	/**
+	 * The number of times a route to a target must be asked for before a
+	 * flow field towards it is built.
+	 */
+	private static final int minNbRequests = 2;
+
+	private static final int maxNbRequestsTracked = 64;
+}
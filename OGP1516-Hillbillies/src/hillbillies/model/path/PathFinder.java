@@ -0,0 +1,408 @@
+package hillbillies.model.path;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntPredicate;
+
+import be.kuleuven.cs.som.annotate.*;
+import hillbillies.model.CubeSpace;
+
+/**
+ * A class of path finders, searching the shortest route (in number of steps)
+ * between two cubes of a box-shaped game world.
+ *
+ * Cubes are identified by their integer identifier in the cube space of the
+ * world. A step goes from a cube to one of its (at most 26) neighbouring cubes and
+ * every step costs the same. The search is an A* search with a 3D octile
+ * heuristic; since a diagonal step costs as much as a straight one, the
+ * octile distance reduces to the largest coordinate difference, which is
+ * admissible and consistent, so every returned route has the minimal number
+ * of steps. The weighted octile distance (diagonals costing sqrt(2) and
+ * sqrt(3)) is only used to break ties between equally good cubes, preferring
+ * straight routes.
+ *
+ * All bookkeeping of a search is kept in a primitive hash table holding only
+ * the cubes the search reaches, so its size depends on the length of the
+ * route rather than on the size of the world. Tables are kept in a small pool
+ * and reused by later searches, so one path finder should be shared by all
+ * units of a world, and units can search their routes concurrently.
+ */
+public class PathFinder {
+
+	/**
+	 * Initialize this new path finder for the given cube space.
+	 *
+	 * @param 	space
+	 * 			The cube space of the world to search routes in.
+	 * @post	| new.getCubeSpace() == space
+	 */
+	public PathFinder(CubeSpace space){
+		this.space = space;
+	}
+
+	/**
+	 * Return the cube space this path finder searches routes in.
+	 */
+	@Basic @Immutable
+	public CubeSpace getCubeSpace(){
+		return this.space;
+	}
+
+	private final CubeSpace space;
+
+	/**
+	 * Search a shortest route from the start cube to the target cube, only
+	 * passing through cubes that satisfy the given condition.
+	 *
+	 * @param 	start
+	 * 			The identifier of the cube the route starts from.
+	 * @param 	target
+	 * 			The identifier of the cube the route leads to.
+	 * @param 	isStandable
+	 * 			The condition every cube on the route, including the start and
+	 * 			the target, must satisfy, given the identifier of the cube.
+	 * @return	The identifiers of the successive cubes on the route, starting
+	 * 			with the first step and ending with the target, or null if no
+	 * 			such route exists. The route is empty if the start is the target.
+	 * 			| if (result != null)
+	 * 			|	result.length == (minimal number of steps from start to target)
+	 * @throws 	IllegalArgumentException
+	 * 			The start or the target is not a cube of the cube space.
+	 * 			| !getCubeSpace().isValidId(start) || !getCubeSpace().isValidId(target)
+	 */
+	public int[] findPath(int start, int target, IntPredicate isStandable)
+			throws IllegalArgumentException{
+		if (!this.space.isValidId(start) || !this.space.isValidId(target))
+			throw new IllegalArgumentException("Cube not in gameworld");
+		if (!isStandable.test(start) || !isStandable.test(target))
+			return null;
+		if (start == target)
+			return new int[0];
+		this.nbSearches.incrementAndGet();
+		Search search = this.borrowSearch();
+		try {
+			if (!search.run(start, target, isStandable))
+				return null;
+			int entry = search.find(target);
+			int[] path = new int[search.stepsFromStart[entry]];
+			for (int step = path.length-1; step >= 0; step--){
+				path[step] = search.cubes[entry];
+				entry = search.find(search.previous[entry]);
+			}
+			return path;
+		} finally {
+			this.returnSearch(search);
+		}
+	}
+
+	/**
+	 * Return the number of searches this path finder has run, not counting
+	 * requests it could answer without searching.
+	 */
+	public long getNbSearches(){
+		return this.nbSearches.get();
+	}
+
+	private final AtomicLong nbSearches = new AtomicLong();
+
+	/**
+	 * Return the number of steps between two cubes at the given distances along
+	 * each axis, if nothing blocks the way.
+	 *
+	 * @return	| result == max(dx, dy, dz)
+	 */
+	private static int getStepDistance(int dx, int dy, int dz){
+		return Math.max(dx, Math.max(dy, dz));
+	}
+
+	/**
+	 * Return the octile distance between two cubes at the given distances along
+	 * each axis, where a step along one, two or three axes costs 1, sqrt(2)
+	 * and sqrt(3) respectively, scaled to an integer.
+	 */
+	private static int getOctileDistance(int dx, int dy, int dz){
+		int max = Math.max(dx, Math.max(dy, dz));
+		int min = Math.min(dx, Math.min(dy, dz));
+		int mid = dx + dy + dz - max - min;
+		return (int) (PathFinder.octileScale*((PathFinder.sqrt3 - PathFinder.sqrt2)*min +
+				(PathFinder.sqrt2 - 1)*mid + max));
+	}
+
+	private static final double sqrt2 = Math.sqrt(2);
+	private static final double sqrt3 = Math.sqrt(3);
+	private static final double octileScale = 1024;
+
+	// -------------
+	// BOOKKEEPING
+	// -------------
+
+	/**
+	 * Return a search that is not in use, from the pool if it has one.
+	 */
+	private Search borrowSearch(){
+		synchronized (this.idleSearches){
+			if (!this.idleSearches.isEmpty())
+				return this.idleSearches.pop();
+		}
+		return new Search();
+	}
+
+	/**
+	 * Return the given search, no longer in use, to the pool, unless the pool
+	 * is full.
+	 */
+	private void returnSearch(Search search){
+		search.shrink();
+		synchronized (this.idleSearches){
+			if (this.idleSearches.size() < PathFinder.maxNbIdleSearches)
+				this.idleSearches.push(search);
+		}
+	}
+
+	/**
+	 * The searches that are not in use.
+	 */
+	private final ArrayDeque<Search> idleSearches = new ArrayDeque<>();
+
+	private static final int maxNbIdleSearches = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * A class of searches, holding the bookkeeping of a single search at a
+	 * time in an open addressing hash table of the cubes reached. An entry
+	 * belongs to the current search if it is stamped with its generation, so
+	 * the table need not be cleared between searches.
+	 */
+	private class Search {
+
+		private Search(){
+			this.allocate(PathFinder.initialTableSize);
+			this.heapCubes = new int[64];
+			this.heapKeys = new long[64];
+		}
+
+		/**
+		 * Run the A* search from the start cube until the target cube is closed
+		 * or no open cubes remain, and return whether the target was reached.
+		 */
+		private boolean run(int start, int target, IntPredicate isStandable){
+			int targetX = PathFinder.this.space.getX(target);
+			int targetY = PathFinder.this.space.getY(target);
+			int targetZ = PathFinder.this.space.getZ(target);
+			this.nextGeneration();
+			this.heapSize = 0;
+			this.open(this.add(start), 0, -1, targetX, targetY, targetZ);
+			while (this.heapSize > 0){
+				int current = this.popMinimum();
+				int entry = this.find(current);
+				if (this.closed[entry])
+					continue; // outdated entry, a shorter route was found later
+				if (current == target)
+					return true;
+				this.closed[entry] = true;
+				int x = PathFinder.this.space.getX(current);
+				int y = PathFinder.this.space.getY(current);
+				int z = PathFinder.this.space.getZ(current);
+				int nbSteps = this.stepsFromStart[entry] + 1;
+				for (int i=0; i<CubeSpace.nbNeighbours; i++){
+					int nextX = x + CubeSpace.getNeighbourDx(i);
+					int nextY = y + CubeSpace.getNeighbourDy(i);
+					int nextZ = z + CubeSpace.getNeighbourDz(i);
+					if (!PathFinder.this.space.isValidCube(nextX, nextY, nextZ))
+						continue;
+					int next = PathFinder.this.space.getId(nextX, nextY, nextZ);
+					int nextEntry = this.find(next);
+					if (nextEntry != -1 && (this.closed[nextEntry] || this.stepsFromStart[nextEntry] <= nbSteps))
+						continue;
+					if (!isStandable.test(next))
+						continue;
+					if (nextEntry == -1)
+						nextEntry = this.add(next);
+					this.open(nextEntry, nbSteps, current, targetX, targetY, targetZ);
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * Register a (shorter) route to the cube of the given entry and put it on
+		 * the open heap.
+		 */
+		private void open(int entry, int nbSteps, int previous, int targetX, int targetY, int targetZ){
+			int id = this.cubes[entry];
+			this.stepsFromStart[entry] = nbSteps;
+			this.previous[entry] = previous;
+			int dx = Math.abs(PathFinder.this.space.getX(id) - targetX);
+			int dy = Math.abs(PathFinder.this.space.getY(id) - targetY);
+			int dz = Math.abs(PathFinder.this.space.getZ(id) - targetZ);
+			long estimate = nbSteps + PathFinder.getStepDistance(dx, dy, dz);
+			long key = (estimate << 32) | PathFinder.getOctileDistance(dx, dy, dz);
+			this.push(id, key);
+		}
+
+		/**
+		 * Start a new search, invalidating the entries of all earlier searches
+		 * without clearing the table.
+		 */
+		private void nextGeneration(){
+			if (this.generation == Integer.MAX_VALUE){
+				Arrays.fill(this.stamps, 0);
+				this.generation = 0;
+			}
+			this.generation++;
+			this.nbEntries = 0;
+		}
+
+		/**
+		 * Variable registering the number of the current search.
+		 */
+		private int generation = 0;
+
+		// -----
+		// TABLE
+		// -----
+
+		/**
+		 * Return the entry of the given cube in the current search, or -1 if the
+		 * search has not reached it.
+		 */
+		private int find(int id){
+			int mask = this.cubes.length-1;
+			for (int entry=PathFinder.hash(id) & mask; this.stamps[entry] == this.generation; entry=(entry+1) & mask)
+				if (this.cubes[entry] == id)
+					return entry;
+			return -1;
+		}
+
+		/**
+		 * Add an entry for the given cube, not yet reached in the current search,
+		 * and return it.
+		 */
+		private int add(int id){
+			if (2*(this.nbEntries+1) > this.cubes.length)
+				this.grow();
+			int mask = this.cubes.length-1;
+			int entry = PathFinder.hash(id) & mask;
+			while (this.stamps[entry] == this.generation)
+				entry = (entry+1) & mask;
+			this.stamps[entry] = this.generation;
+			this.cubes[entry] = id;
+			this.closed[entry] = false;
+			this.nbEntries++;
+			return entry;
+		}
+
+		/**
+		 * Double the size of the table, keeping the entries of the current search.
+		 */
+		private void grow(){
+			int[] oldStamps = this.stamps;
+			int[] oldCubes = this.cubes;
+			boolean[] oldClosed = this.closed;
+			int[] oldSteps = this.stepsFromStart;
+			int[] oldPrevious = this.previous;
+			this.allocate(2*oldCubes.length);
+			int mask = this.cubes.length-1;
+			for (int old=0; old<oldCubes.length; old++){
+				if (oldStamps[old] != this.generation)
+					continue;
+				int entry = PathFinder.hash(oldCubes[old]) & mask;
+				while (this.stamps[entry] == this.generation)
+					entry = (entry+1) & mask;
+				this.stamps[entry] = this.generation;
+				this.cubes[entry] = oldCubes[old];
+				this.closed[entry] = oldClosed[old];
+				this.stepsFromStart[entry] = oldSteps[old];
+				this.previous[entry] = oldPrevious[old];
+			}
+		}
+
+		/**
+		 * Fall back to a table and heap of the initial size if the last search
+		 * grew them beyond the size retained between searches.
+		 */
+		private void shrink(){
+			if (this.cubes.length > PathFinder.maxRetainedTableSize){
+				this.allocate(PathFinder.initialTableSize);
+				this.generation = 0;
+			}
+			if (this.heapCubes.length > PathFinder.maxRetainedTableSize){
+				this.heapCubes = new int[64];
+				this.heapKeys = new long[64];
+			}
+		}
+
+		private void allocate(int size){
+			this.stamps = new int[size];
+			this.cubes = new int[size];
+			this.closed = new boolean[size];
+			this.stepsFromStart = new int[size];
+			this.previous = new int[size];
+		}
+
+		/**
+		 * Arrays registering, per entry, the search it belongs to, its cube,
+		 * whether that cube is closed, the number of steps from the start to it
+		 * and the cube it was reached from. The table is at most half full.
+		 */
+		private int[] stamps;
+		private int[] cubes;
+		private boolean[] closed;
+		private int[] stepsFromStart;
+		private int[] previous;
+		private int nbEntries;
+
+		/**
+		 * A binary min-heap of open cubes, ordered on their keys.
+		 */
+		private int[] heapCubes;
+		private long[] heapKeys;
+		private int heapSize;
+
+		private void push(int id, long key){
+			if (this.heapSize == this.heapCubes.length){
+				this.heapCubes = Arrays.copyOf(this.heapCubes, 2*this.heapSize);
+				this.heapKeys = Arrays.copyOf(this.heapKeys, 2*this.heapSize);
+			}
+			int child = this.heapSize++;
+			while (child > 0){
+				int parent = (child-1)/2;
+				if (this.heapKeys[parent] <= key)
+					break;
+				this.heapCubes[child] = this.heapCubes[parent];
+				this.heapKeys[child] = this.heapKeys[parent];
+				child = parent;
+			}
+			this.heapCubes[child] = id;
+			this.heapKeys[child] = key;
+		}
+
+		private int popMinimum(){
+			int result = this.heapCubes[0];
+			this.heapSize--;
+			int lastCube = this.heapCubes[this.heapSize];
+			long lastKey = this.heapKeys[this.heapSize];
+			int parent = 0;
+			while (2*parent+1 < this.heapSize){
+				int child = 2*parent+1;
+				if (child+1 < this.heapSize && this.heapKeys[child+1] < this.heapKeys[child])
+					child++;
+				if (lastKey <= this.heapKeys[child])
+					break;
+				this.heapCubes[parent] = this.heapCubes[child];
+				this.heapKeys[parent] = this.heapKeys[child];
+				parent = child;
+			}
+			this.heapCubes[parent] = lastCube;
+			this.heapKeys[parent] = lastKey;
+			return result;
+		}
+	}
+
+	private static int hash(int id){
+		return id*0x9E3779B9 >>> 7;
+	}
+
+	private static final int initialTableSize = 1 << 10;
+	private static final int maxRetainedTableSize = 1 << 16;
+}
@@ -1,41 +1,62 @@
 package hillbillies.model.statement;
 
+import java.util.function.Consumer;
+
 import hillbillies.model.Unit;
+import hillbillies.model.expression.Condition;
 import hillbillies.model.expression.Expression;
+import hillbillies.model.expression.Variable;
+import hillbillies.model.expression.VariableResolver;
 import hillbillies.part3.programs.SourceLocation;
 
 @SuppressWarnings("rawtypes")
 public class AssignmentStatement extends Statement {
 
-	public AssignmentStatement(String name, Expression value, SourceLocation loc) {
+	public AssignmentStatement(Variable variable, Expression value, SourceLocation loc) {
 		super(loc);
-		this.name = name;
+		this.variable = variable;
 		this.value = value;
-		this.isExecuted = false;
 	}
 
 	@Override
-	public void execute(Unit executor) throws IllegalArgumentException {
-		Object result = this.value.getResult(executor);
-		executor.writeVariable(this.name, result);
-		this.isExecuted = true;
+	protected void start(ExecutionContext context, int depth) throws IllegalArgumentException {
+		Object result = this.value.getResult(context.getUnit());
+		context.writeVariable(this.variable, result);
+		context.setCounter(depth, 1);
 	}
 
 	@Override
-	public boolean isFinished(){
-		return this.isExecuted;
+	public void collectVariables(VariableResolver resolver) {
+		resolver.addAssignment(this.variable, this.value);
+		if (this.value != null)
+			this.value.collectVariables(resolver);
 	}
 
-	private String name;
-	private Expression value;
-	private boolean isExecuted;
-	
 	@Override
-	public String toString() {
-		return "assign " + value.toString() + " to " + name;
+	void compile(CodeBuilder code) {
+		Variable variable = this.variable;
+		if (variable.getType() == Boolean.class){
+			Condition condition = this.value.compileCondition();
+			code.emit(CompiledStatement.PERFORM, (Consumer<Unit>) executor -> 
+					executor.getExecutionContext().writeBoolean(variable, condition.holds(executor)));
+		}
+		else {
+			Expression value = this.value;
+			code.emit(CompiledStatement.PERFORM, (Consumer<Unit>) executor -> 
+					executor.getExecutionContext().writeVariable(variable, value.getResult(executor)));
+		}
 	}
+
+	@Override
+	public boolean isFinished(ExecutionContext context, int depth){
+		return context.getCounter(depth) == 1;
+	}
+
+	private final Variable variable;
+	private final Expression value;
 	
-	public static Object getVariable(String name, Unit executor){
-		return executor.readVariable(name);
+	@Override
+	public String toString() {
+		return "assign " + value.toString() + " to " + variable.getName();
 	}
 }
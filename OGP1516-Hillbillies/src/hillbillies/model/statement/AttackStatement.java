@@ -2,6 +2,7 @@ package hillbillies.model.statement;
 
 import hillbillies.model.Unit;
 import hillbillies.model.expression.Expression;
+import hillbillies.model.expression.VariableResolver;
 import hillbillies.part3.programs.SourceLocation;
 
 public class AttackStatement extends Statement{
@@ -10,11 +11,7 @@ public class AttackStatement extends Statement{
 		this.targetUnit = targetUnit;
 	}
 	
-	private Expression<Unit> targetUnit;
-	
-	private Unit getTargetUnit(){
-		return targetUnit.getResult(this.getExecutingUnit());
-	}
+	private final Expression<Unit> targetUnit;
 	
 	@Override
 	public String toString(){
@@ -22,14 +19,25 @@ public class AttackStatement extends Statement{
 	}
 
 	@Override
-	public void execute(Unit executor) {
-		super.setExecutingUnit(executor);
-		executor.fight(this.getTargetUnit());
+	protected void start(ExecutionContext context, int depth) {
+		Unit executor = context.getUnit();
+		executor.fight(this.targetUnit.getResult(executor));
 	}
 
 	@Override
-	public boolean isFinished() {
-		return !super.getExecutingUnit().isAttacking();
+	void compile(CodeBuilder code) {
+		code.emitAction(this);
+	}
+	
+	@Override
+	public void collectVariables(VariableResolver resolver) {
+		if (this.targetUnit != null)
+			this.targetUnit.collectVariables(resolver);
+	}
+	
+	@Override
+	public boolean isFinished(ExecutionContext context, int depth) {
+		return !context.getUnit().isAttacking();
 	}
 
 	
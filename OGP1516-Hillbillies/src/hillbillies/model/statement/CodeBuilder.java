@@ -0,0 +1,70 @@
+package hillbillies.model.statement;
+
+import java.util.Arrays;
+
+/**
+ * A class of builders collecting the instructions compiled from a tree of
+ * statements.
+ * 
+ * Every instruction has an opcode of CompiledStatement, an operand and the
+ * index of the instruction it jumps to, if any.
+ */
+class CodeBuilder {
+
+	/**
+	 * Return the number of instructions appended so far, which is the index
+	 * of the next instruction.
+	 */
+	int getSize(){
+		return this.size;
+	}
+
+	/**
+	 * Append an instruction with the given opcode and operand, and return its
+	 * index.
+	 */
+	int emit(int opcode, Object operand){
+		if (this.size == this.opcodes.length){
+			this.opcodes = Arrays.copyOf(this.opcodes, 2*this.size);
+			this.operands = Arrays.copyOf(this.operands, 2*this.size);
+			this.targets = Arrays.copyOf(this.targets, 2*this.size);
+		}
+		this.opcodes[this.size] = opcode;
+		this.operands[this.size] = operand;
+		this.targets[this.size] = -1;
+		return this.size++;
+	}
+
+	/**
+	 * Let the instruction at the given index jump to the given target.
+	 */
+	void setTarget(int index, int target){
+		this.targets[index] = target;
+	}
+
+	/**
+	 * Append the instructions executing the given statement, which waits for
+	 * its executing unit once it is started.
+	 */
+	void emitAction(Statement statement){
+		this.emit(CompiledStatement.START, statement);
+		this.emit(CompiledStatement.WAIT, statement);
+	}
+
+	int[] getOpcodes(){
+		return Arrays.copyOf(this.opcodes, this.size);
+	}
+
+	Object[] getOperands(){
+		return Arrays.copyOf(this.operands, this.size);
+	}
+
+	int[] getTargets(){
+		return Arrays.copyOf(this.targets, this.size);
+	}
+
+	private int size = 0;
+	private int[] opcodes = new int[16];
+	private Object[] operands = new Object[16];
+	private int[] targets = new int[16];
+}
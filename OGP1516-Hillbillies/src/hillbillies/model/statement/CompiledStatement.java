@@ -0,0 +1,191 @@
+package hillbillies.model.statement;
+
+import java.util.function.Consumer;
+
+import be.kuleuven.cs.som.annotate.*;
+import hillbillies.model.Unit;
+import hillbillies.model.expression.Condition;
+import hillbillies.model.expression.VariableResolver;
+
+/**
+ * A class of statements executing the code compiled from another statement.
+ *
+ * The tree of the compiled statement is lowered to a flat list of
+ * instructions: sequences become consecutive instructions, loops and
+ * conditional statements become jumps over compiled conditions, assignments
+ * and prints become single actions on the executing unit, and statements
+ * waiting for the executing unit are started and then waited for. Moving on
+ * from a statement of a sequence or from the body of a loop takes a step, as
+ * it does when the tree is walked.
+ *
+ * Instructions are dispatched on their opcode, and their operands are
+ * closures over the expressions of the tree rather than generated bytecode,
+ * so that compiling needs no class loading and keeps the steps and
+ * suspension points of the tree exactly. The gain comes from not walking
+ * the tree and its frames in every tick.
+ *
+ * The counter of the frame of a compiled statement holds the index of the
+ * next instruction. The statements it waits for use the frame just above it.
+ *
+ * @invar	| getSource() != null
+ */
+public class CompiledStatement extends Statement {
+
+	/**
+	 * Return a new statement executing the code compiled from the given
+	 * statement.
+	 *
+	 * @param	source
+	 * 			The statement to compile.
+	 * @return	| result.getSource() == source
+	 * @throws	IllegalArgumentException
+	 * 			Some statement in the given statement cannot be compiled.
+	 */
+	public static CompiledStatement compile(Statement source) throws IllegalArgumentException{
+		CodeBuilder code = new CodeBuilder();
+		source.compile(code);
+		return new CompiledStatement(source, code);
+	}
+
+	private CompiledStatement(Statement source, CodeBuilder code){
+		super(source.getSourceLocation());
+		this.source = source;
+		this.opcodes = code.getOpcodes();
+		this.operands = code.getOperands();
+		this.targets = code.getTargets();
+	}
+
+	/**
+	 * Return the statement this statement is compiled from.
+	 */
+	@Basic @Immutable
+	public Statement getSource(){
+		return this.source;
+	}
+
+	private final Statement source;
+
+	/**
+	 * Return the number of instructions of this statement.
+	 */
+	@Immutable
+	public int getNbInstructions(){
+		return this.opcodes.length;
+	}
+
+	@Override
+	public void collectVariables(VariableResolver resolver) {
+		this.source.collectVariables(resolver);
+	}
+
+	@Override
+	protected void start(ExecutionContext context, int depth) {
+		this.run(context, depth, 0, true);
+	}
+
+	@Override
+	public boolean isFinished(ExecutionContext context, int depth) {
+		return context.getCounter(depth) == this.opcodes.length;
+	}
+
+	@Override
+	public int advance(ExecutionContext context, int depth, int nbSteps) {
+		return this.run(context, depth, nbSteps, false);
+	}
+
+	/**
+	 * Run the instructions from the one the frame at the given depth is at,
+	 * until the last one is done or the execution is suspended, and return
+	 * the number of steps left.
+	 *
+	 * When the execution is started, it stops at the first instruction taking
+	 * a step or waiting for the executing unit, like the start of the compiled
+	 * statement does.
+	 */
+	@SuppressWarnings("unchecked")
+	private int run(ExecutionContext context, int depth, int nbSteps, boolean starting){
+		Unit unit = context.getUnit();
+		int index = context.getCounter(depth);
+		while (index < this.opcodes.length){
+			switch (this.opcodes[index]){
+			case STEP:
+				if (starting || nbSteps == 0){
+					context.setCounter(depth, index);
+					return 0;
+				}
+				nbSteps--;
+				index++;
+				break;
+			case WAIT:
+				if (starting || ((Statement) this.operands[index]).advance(context, depth+1, 1) == 0){
+					context.setCounter(depth, index);
+					return 0;
+				}
+				index++;
+				break;
+			case START:
+				((Statement) this.operands[index]).execute(context, depth+1);
+				index++;
+				break;
+			case PERFORM:
+				((Consumer<Unit>) this.operands[index]).accept(unit);
+				index++;
+				break;
+			case JUMP_UNLESS:
+				index = ((Condition) this.operands[index]).holds(unit)? index+1: this.targets[index];
+				break;
+			case JUMP:
+				index = this.targets[index];
+				break;
+			default:
+				throw new IllegalStateException();
+			}
+		}
+		context.setCounter(depth, index);
+		return nbSteps;
+	}
+
+	/**
+	 * Opcode of instructions taking a step.
+	 */
+	static final int STEP = 0;
+
+	/**
+	 * Opcode of instructions starting their statement.
+	 */
+	static final int START = 1;
+
+	/**
+	 * Opcode of instructions waiting until their statement is finished.
+	 */
+	static final int WAIT = 2;
+
+	/**
+	 * Opcode of instructions performing their action on the executing unit.
+	 */
+	static final int PERFORM = 3;
+
+	/**
+	 * Opcode of instructions jumping to their target unless their condition
+	 * holds.
+	 */
+	static final int JUMP_UNLESS = 4;
+
+	/**
+	 * Opcode of instructions jumping to their target.
+	 */
+	static final int JUMP = 5;
+
+	/**
+	 * Arrays registering, per instruction, its opcode, its operand and the
+	 * index of the instruction it jumps to.
+	 */
+	private final int[] opcodes;
+	private final Object[] operands;
+	private final int[] targets;
+
+	@Override
+	public String toString() {
+		return this.source.toString();
+	}
+}
@@ -0,0 +1,295 @@
+package hillbillies.model.statement;
+
+import java.util.Arrays;
+
+import be.kuleuven.cs.som.annotate.*;
+import hillbillies.model.Unit;
+import hillbillies.model.expression.Variable;
+
+/**
+ * A class of execution contexts, holding the state of the execution of a
+ * program of statements by a single unit.
+ *
+ * Statements and expressions never change once they are created, so that a
+ * single program can be executed by any number of units at the same time.
+ * Whatever the execution has to remember is kept in the context of the
+ * executing unit instead, as a stack of frames: the outermost statement uses
+ * the frame at depth 0, and a statement executing a nested statement lets it
+ * use the frame just above its own. Every frame records its statement, a
+ * counter, such as the index of the current statement of a sequence, and a
+ * value, such as the cube a move statement heads for.
+ *
+ * The context also holds the values of the variables of the program, at the
+ * slots the variables are resolved to: booleans in an array of bytes, other
+ * values in an array of objects.
+ *
+ * The frames and the values are kept in arrays that are reused by the next
+ * program the unit executes.
+ *
+ * @invar	The number of frames is never negative.
+ * 			| getNbFrames() >= 0
+ */
+public class ExecutionContext {
+
+	/**
+	 * Initialize this new execution context for the given unit, without
+	 * frames.
+	 *
+	 * @param	unit
+	 * 			The unit executing the statements.
+	 * @post	| new.getUnit() == unit
+	 * @post	| new.getNbFrames() == 0
+	 */
+	public ExecutionContext(Unit unit){
+		this.unit = unit;
+	}
+
+	/**
+	 * Return the unit executing the statements in this context.
+	 */
+	@Basic @Immutable
+	public Unit getUnit(){
+		return this.unit;
+	}
+
+	private final Unit unit;
+
+	/**
+	 * Return the number of frames in this context.
+	 */
+	@Basic
+	public int getNbFrames(){
+		return this.nbFrames;
+	}
+
+	/**
+	 * Return the statement using the frame at the given depth.
+	 *
+	 * @throws	IndexOutOfBoundsException
+	 * 			| depth < 0 || depth >= getNbFrames()
+	 */
+	public Statement getStatement(int depth) throws IndexOutOfBoundsException{
+		this.checkFrame(depth);
+		return this.statements[depth];
+	}
+
+	/**
+	 * Return the counter of the frame at the given depth.
+	 */
+	int getCounter(int depth){
+		this.checkFrame(depth);
+		return this.counters[depth];
+	}
+
+	/**
+	 * Set the counter of the frame at the given depth to the given counter.
+	 */
+	void setCounter(int depth, int counter){
+		this.checkFrame(depth);
+		this.counters[depth] = counter;
+	}
+
+	/**
+	 * Return the value of the frame at the given depth.
+	 */
+	Object getValue(int depth){
+		this.checkFrame(depth);
+		return this.values[depth];
+	}
+
+	/**
+	 * Set the value of the frame at the given depth to the given value.
+	 */
+	void setValue(int depth, Object value){
+		this.checkFrame(depth);
+		this.values[depth] = value;
+	}
+
+	/**
+	 * Let the given statement use a fresh frame at the given depth, and
+	 * discard all frames above it.
+	 *
+	 * @post	| new.getNbFrames() == depth+1
+	 * @post	| new.getStatement(depth) == statement
+	 * @throws	IndexOutOfBoundsException
+	 * 			The frame below the given depth is not in use.
+	 * 			| depth < 0 || depth > getNbFrames()
+	 */
+	void enter(int depth, Statement statement) throws IndexOutOfBoundsException{
+		if (depth < 0 || depth > this.nbFrames)
+			throw new IndexOutOfBoundsException();
+		if (depth == this.statements.length){
+			this.statements = Arrays.copyOf(this.statements, 2*depth);
+			this.counters = Arrays.copyOf(this.counters, 2*depth);
+			this.values = Arrays.copyOf(this.values, 2*depth);
+		}
+		this.discard(depth+1);
+		this.statements[depth] = statement;
+		this.counters[depth] = 0;
+		this.values[depth] = null;
+		this.nbFrames = depth+1;
+	}
+
+	/**
+	 * Discard all frames of this context, and forget the values of all
+	 * variables.
+	 *
+	 * @post	| new.getNbFrames() == 0
+	 */
+	public void clear(){
+		this.discard(0);
+		this.nbFrames = 0;
+		Arrays.fill(this.objects, 0, this.nbSlots, ExecutionContext.unassigned);
+		Arrays.fill(this.booleans, 0, this.nbSlots, (byte) 0);
+		this.nbSlots = 0;
+	}
+
+	/**
+	 * Drop the references held by the frames from the given depth on.
+	 */
+	private void discard(int depth){
+		if (depth < this.nbFrames){
+			Arrays.fill(this.statements, depth, this.nbFrames, null);
+			Arrays.fill(this.values, depth, this.nbFrames, null);
+		}
+	}
+
+	// ---------
+	// VARIABLES
+	// ---------
+
+	/**
+	 * Return the value of the given variable.
+	 *
+	 * @throws	IllegalArgumentException
+	 * 			No value has been assigned to the given variable.
+	 * @throws	IllegalStateException
+	 * 			The given variable is not resolved.
+	 * 			| !variable.isResolved()
+	 */
+	public Object readVariable(Variable variable) throws IllegalArgumentException, IllegalStateException{
+		if (variable.getType() == Boolean.class)
+			return this.readBoolean(variable);
+		int slot = this.getSlot(variable);
+		Object value = (slot < this.nbSlots)? this.objects[slot]: ExecutionContext.unassigned;
+		if (value == ExecutionContext.unassigned)
+			throw ExecutionContext.notAssigned(variable);
+		return value;
+	}
+
+	/**
+	 * Assign the given value to the given variable.
+	 *
+	 * @throws	IllegalArgumentException
+	 * 			The given variable has no static type, and the given value is
+	 * 			of another type than its current value.
+	 * @throws	IllegalStateException
+	 * 			The given variable is not resolved.
+	 * 			| !variable.isResolved()
+	 */
+	public void writeVariable(Variable variable, Object value) throws IllegalArgumentException, IllegalStateException{
+		Class<?> type = variable.getType();
+		if (type == Boolean.class){
+			this.writeBoolean(variable, (Boolean) value);
+			return;
+		}
+		int slot = this.reserveSlot(variable);
+		Object current = this.objects[slot];
+		if (type == null && current != ExecutionContext.unassigned && current.getClass() != value.getClass())
+			throw new IllegalArgumentException("assignment to " + variable.getName() + " of type " +
+					value.getClass() + ", while " + current.getClass() + " expected");
+		this.objects[slot] = value;
+	}
+
+	/**
+	 * Return the value of the given variable, of which the static type is
+	 * Boolean.
+	 *
+	 * @throws	IllegalArgumentException
+	 * 			No value has been assigned to the given variable.
+	 * @throws	IllegalStateException
+	 * 			The given variable is not resolved.
+	 * 			| !variable.isResolved()
+	 */
+	public boolean readBoolean(Variable variable) throws IllegalArgumentException, IllegalStateException{
+		int slot = this.getSlot(variable);
+		byte value = (slot < this.nbSlots)? this.booleans[slot]: 0;
+		if (value == 0)
+			throw ExecutionContext.notAssigned(variable);
+		return value == 2;
+	}
+
+	/**
+	 * Assign the given boolean to the given variable, of which the static type
+	 * is Boolean.
+	 *
+	 * @throws	IllegalStateException
+	 * 			The given variable is not resolved.
+	 * 			| !variable.isResolved()
+	 */
+	public void writeBoolean(Variable variable, boolean value) throws IllegalStateException{
+		this.booleans[this.reserveSlot(variable)] = (byte) (value? 2: 1);
+	}
+
+	private int getSlot(Variable variable) throws IllegalStateException{
+		if (!variable.isResolved())
+			throw new IllegalStateException("unresolved variable " + variable.getName());
+		return variable.getSlot();
+	}
+
+	/**
+	 * Return the slot of the given variable, after making room for it.
+	 */
+	private int reserveSlot(Variable variable) throws IllegalStateException{
+		int slot = this.getSlot(variable);
+		if (slot >= this.objects.length){
+			int oldLength = this.objects.length;
+			int length = Math.max(2*oldLength, slot+1);
+			this.objects = Arrays.copyOf(this.objects, length);
+			Arrays.fill(this.objects, oldLength, length, ExecutionContext.unassigned);
+			this.booleans = Arrays.copyOf(this.booleans, length);
+		}
+		this.nbSlots = Math.max(this.nbSlots, slot+1);
+		return slot;
+	}
+
+	private static IllegalArgumentException notAssigned(Variable variable){
+		return new IllegalArgumentException("reading " + variable.getName() +
+				" not possible, since variable was not assigned yet");
+	}
+
+	/**
+	 * The number of slots that may hold a value.
+	 */
+	private int nbSlots = 0;
+
+	/**
+	 * Arrays registering, per slot, the value of a variable of static type
+	 * Boolean, as 0 if it is not assigned, 1 for false and 2 for true, and the
+	 * value of any other variable, or the unassigned marker.
+	 */
+	private byte[] booleans = new byte[8];
+	private Object[] objects = ExecutionContext.unassignedSlots(8);
+
+	private static Object[] unassignedSlots(int length){
+		Object[] result = new Object[length];
+		Arrays.fill(result, ExecutionContext.unassigned);
+		return result;
+	}
+
+	private static final Object unassigned = new Object();
+
+	private void checkFrame(int depth) throws IndexOutOfBoundsException{
+		if (depth < 0 || depth >= this.nbFrames)
+			throw new IndexOutOfBoundsException();
+	}
+
+	private int nbFrames = 0;
+
+	/**
+	 * Arrays registering, per frame, its statement, its counter and its value.
+	 */
+	private Statement[] statements = new Statement[8];
+	private int[] counters = new int[8];
+	private Object[] values = new Object[8];
+}
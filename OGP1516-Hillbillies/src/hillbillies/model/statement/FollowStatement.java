@@ -2,16 +2,25 @@ package hillbillies.model.statement;
 
 import hillbillies.model.Unit;
 import hillbillies.model.expression.Expression;
+import hillbillies.model.expression.VariableResolver;
 import hillbillies.part3.programs.SourceLocation;
 
+/**
+ * A class of statements letting the executing unit follow another unit.
+ * 
+ * The value of the frame of a follow statement holds the followed unit.
+ */
 public class FollowStatement extends Statement{
 	public FollowStatement(Expression<Unit> targetUnit, SourceLocation loc){
 		super(loc);
 		this.targetUnitExpression = targetUnit;
 	}
 	
-	private Unit targetUnit = null;
-	private Expression<Unit> targetUnitExpression;
+	private final Expression<Unit> targetUnitExpression;
+	
+	private Unit getTargetUnit(ExecutionContext context, int depth){
+		return (Unit) context.getValue(depth);
+	}
 	
 	@Override
 	public String toString(){
@@ -19,22 +28,41 @@ public class FollowStatement extends Statement{
 	}
 
 	@Override
-	public void execute(Unit unit) {
-		super.setExecutingUnit(unit);
-		this.targetUnit = targetUnitExpression.getResult(this.getExecutingUnit());
-		this.advanceTime(0.0);
+	protected void start(ExecutionContext context, int depth) {
+		context.setValue(depth, this.targetUnitExpression.getResult(context.getUnit()));
+		this.moveToTarget(context, depth);
+	}
+	
+	/**
+	 * A follow statement heads for the current position of its target unit
+	 * whenever its executing unit has arrived.
+	 */
+	@Override
+	public int advance(ExecutionContext context, int depth, int nbSteps) {
+		this.moveToTarget(context, depth);
+		return super.advance(context, depth, nbSteps);
+	}
+	
+	private void moveToTarget(ExecutionContext context, int depth){
+		if (!this.isFinished(context, depth) && !context.getUnit().isMoving())
+			context.getUnit().moveTo(this.getTargetUnit(context, depth).getPosition().getCubeCoordinates());
+	}
+	
+	@Override
+	void compile(CodeBuilder code) {
+		code.emitAction(this);
 	}
 	
 	@Override
-	public void advanceTime(double duration) {
-		if (!this.isFinished()){
-			super.getExecutingUnit().moveTo(this.targetUnit.getPosition().getCubeCoordinates());
-		}
+	public void collectVariables(VariableResolver resolver) {
+		if (this.targetUnitExpression != null)
+			this.targetUnitExpression.collectVariables(resolver);
 	}
 	
 	@Override
-	public boolean isFinished() {
-		return (!this.targetUnit.isAlive() || 
-				super.getExecutingUnit().getPosition().isNeighboringCube(this.targetUnit.getPosition()));
+	public boolean isFinished(ExecutionContext context, int depth) {
+		Unit targetUnit = this.getTargetUnit(context, depth);
+		return (!targetUnit.isAlive() || 
+				context.getUnit().getPosition().isNeighboringCube(targetUnit.getPosition()));
 	}
 }
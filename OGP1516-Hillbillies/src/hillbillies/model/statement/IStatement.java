@@ -1,16 +1,10 @@
 package hillbillies.model.statement;
 
-import hillbillies.model.Unit;
-
 public interface IStatement{
 	
-	public void execute(Unit executor);
-	
-	public boolean isFinished();
-	
-	public void advanceTime(double duration);
+	public void execute(ExecutionContext context, int depth);
 	
-	public Unit getExecutingUnit();
+	public boolean isFinished(ExecutionContext context, int depth);
 	
-	public void setExecutingUnit(Unit unit);
+	public int advance(ExecutionContext context, int depth, int nbSteps);
 }
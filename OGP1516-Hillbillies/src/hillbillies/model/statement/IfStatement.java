@@ -1,9 +1,15 @@
 package hillbillies.model.statement;
 
-import hillbillies.model.Unit;
 import hillbillies.model.expression.Expression;
+import hillbillies.model.expression.VariableResolver;
 import hillbillies.part3.programs.SourceLocation;
 
+/**
+ * A class of conditional statements.
+ * 
+ * The value of the frame of a conditional statement holds the selected body,
+ * if any, and its counter is 1 once the condition has been evaluated.
+ */
 public class IfStatement extends Statement {
 
 	public IfStatement(Expression<Boolean> condition, Statement ifBody, Statement elseBody, SourceLocation loc) {
@@ -11,46 +17,77 @@ public class IfStatement extends Statement {
 		this.condition = condition;
 		this.ifBody = ifBody;
 		this.elseBody = elseBody;
-		this.selectedBody = null;
-		this.isExecuted = false;
 	}
 
 	@Override
-	public void execute(Unit unit) {
-		this.setExecutingUnit(unit);
-		if (this.condition.getResult(this.getExecutingUnit()))
-			this.selectedBody = this.ifBody;
+	protected void start(ExecutionContext context, int depth) {
+		Statement selectedBody;
+		if (this.condition.getResult(context.getUnit()))
+			selectedBody = this.ifBody;
 		else
-			this.selectedBody = this.elseBody;
+			selectedBody = this.elseBody;
+		context.setValue(depth, selectedBody);
+		context.setCounter(depth, 1);
 		if (selectedBody != null){
-			this.selectedBody.execute(unit);
+			selectedBody.execute(context, depth+1);
 		}
-		this.isExecuted = true;
 	}
 
 	@Override
-	public boolean isFinished() {
-		if (this.selectedBody == null)
-			return this.isExecuted;
-		return this.selectedBody.isFinished();
+	public void collectVariables(VariableResolver resolver) {
+		if (this.condition != null)
+			this.condition.collectVariables(resolver);
+		if (this.ifBody != null)
+			this.ifBody.collectVariables(resolver);
+		if (this.elseBody != null)
+			this.elseBody.collectVariables(resolver);
+	}
+
+	@Override
+	public boolean isFinished(ExecutionContext context, int depth) {
+		Statement selectedBody = this.getSelectedBody(context, depth);
+		if (selectedBody == null)
+			return context.getCounter(depth) == 1;
+		return selectedBody.isFinished(context, depth+1);
 	}
 
 	@Override
-	public void advanceTime(double duration) {
-		if (this.selectedBody != null)
-			this.selectedBody.advanceTime(duration);
+	public int advance(ExecutionContext context, int depth, int nbSteps) {
+		Statement selectedBody = this.getSelectedBody(context, depth);
+		if (selectedBody != null)
+			return selectedBody.advance(context, depth+1, nbSteps);
+		return nbSteps;
+	}
+	
+	@Override
+	void compile(CodeBuilder code) throws IllegalArgumentException {
+		if (this.condition == null)
+			throw new IllegalArgumentException("no code for a missing condition");
+		int test = code.emit(CompiledStatement.JUMP_UNLESS, this.condition.compileCondition());
+		if (this.ifBody != null)
+			this.ifBody.compile(code);
+		if (this.elseBody != null){
+			int skip = code.emit(CompiledStatement.JUMP, null);
+			code.setTarget(test, code.getSize());
+			this.elseBody.compile(code);
+			code.setTarget(skip, code.getSize());
+		}
+		else
+			code.setTarget(test, code.getSize());
+	}
+	
+	private Statement getSelectedBody(ExecutionContext context, int depth){
+		return (Statement) context.getValue(depth);
 	}
 
-	private Expression<Boolean> condition;
-	private Statement ifBody;
-	private Statement elseBody;
-	private Statement selectedBody;
-	private boolean isExecuted;
+	private final Expression<Boolean> condition;
+	private final Statement ifBody;
+	private final Statement elseBody;
 	
 	@Override
 	public String toString() {
 		String result = "if (" + this.condition.toString() + ")\nthen\n" 
-				+ this.ifBody.toString();
+				+ String.valueOf(this.ifBody);
 		if (this.elseBody != null)
 			result += "\nelse\n" + this.elseBody.toString();
 		result += "\nend if";
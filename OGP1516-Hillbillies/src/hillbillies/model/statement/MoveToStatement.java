@@ -3,8 +3,14 @@ package hillbillies.model.statement;
 import hillbillies.model.Unit;
 import hillbillies.model.Vector;
 import hillbillies.model.expression.Expression;
+import hillbillies.model.expression.VariableResolver;
 import hillbillies.part3.programs.SourceLocation;
 
+/**
+ * A class of statements moving the executing unit to a cube.
+ * 
+ * The value of the frame of a move statement holds the target cube.
+ */
 public class MoveToStatement extends Statement{
 	public MoveToStatement(Expression<int[]> target, SourceLocation loc){
 		// could check if expression returns position. But work alone.
@@ -12,32 +18,40 @@ public class MoveToStatement extends Statement{
 		this.target = target;
 	}
 	
-	private Expression<int[]> target;
+	private final Expression<int[]> target;
 	
-	private int[] getTargetCube(){
-		return this.targetCube;
+	private int[] getTargetCube(ExecutionContext context, int depth){
+		return (int[]) context.getValue(depth);
 	}
 	
-	private int[] targetCube;
-	
 	@Override
 	public String toString(){
 		return "moveTo " + target.toString();
 	}
 
 	@Override
-	public void execute(Unit unit) {
-		super.setExecutingUnit(unit);
-		this.targetCube = this.target.getResult(this.getExecutingUnit());
-		if (!this.isFinished())
-			unit.moveTo(this.getTargetCube());
+	protected void start(ExecutionContext context, int depth) {
+		context.setValue(depth, this.target.getResult(context.getUnit()));
+		if (!this.isFinished(context, depth))
+			context.getUnit().moveTo(this.getTargetCube(context, depth));
 	}
 
 	@Override
-	public boolean isFinished() {
-		return !super.getExecutingUnit().isMoving() && 
-			super.getExecutingUnit().getPosition().equals
-				(Vector.getCubeCenter(this.getTargetCube()));
+	void compile(CodeBuilder code) {
+		code.emitAction(this);
+	}
+	
+	@Override
+	public void collectVariables(VariableResolver resolver) {
+		if (this.target != null)
+			this.target.collectVariables(resolver);
+	}
+	
+	@Override
+	public boolean isFinished(ExecutionContext context, int depth) {
+		Unit unit = context.getUnit();
+		return !unit.isMoving() && 
+			unit.getPosition().equals(Vector.getCubeCenter(this.getTargetCube(context, depth)));
 	}
 
 	
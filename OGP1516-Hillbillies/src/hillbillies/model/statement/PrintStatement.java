@@ -1,7 +1,10 @@
 package hillbillies.model.statement;
 
+import java.util.function.Consumer;
+
 import hillbillies.model.Unit;
 import hillbillies.model.expression.Expression;
+import hillbillies.model.expression.VariableResolver;
 import hillbillies.part3.programs.SourceLocation;
 
 @SuppressWarnings("rawtypes")
@@ -10,21 +13,32 @@ public class PrintStatement extends Statement {
 	public PrintStatement(Expression value, SourceLocation loc) {
 		super(loc);
 		this.value = value;
-		this.isPrinted = false;
 	}
 	
-	private Expression value;
-	private boolean isPrinted;
+	private final Expression value;
 	
 	@Override
-	public void execute(Unit unit) {
-		System.out.println(this.value.getResult(unit));
-		this.isPrinted = true;
+	protected void start(ExecutionContext context, int depth) {
+		System.out.println(this.value.getResult(context.getUnit()));
+		context.setCounter(depth, 1);
+	}
+
+	@Override
+	void compile(CodeBuilder code) {
+		Expression value = this.value;
+		code.emit(CompiledStatement.PERFORM, (Consumer<Unit>) executor -> 
+				System.out.println(value.getResult(executor)));
 	}
 
 	@Override
-	public boolean isFinished() {
-		return this.isPrinted;
+	public void collectVariables(VariableResolver resolver) {
+		if (this.value != null)
+			this.value.collectVariables(resolver);
+	}
+	
+	@Override
+	public boolean isFinished(ExecutionContext context, int depth) {
+		return context.getCounter(depth) == 1;
 	}
 
 	@Override
@@ -1,17 +1,25 @@
 package hillbillies.model.statement;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
-import hillbillies.model.Unit;
+import hillbillies.model.expression.VariableResolver;
 import hillbillies.part3.programs.SourceLocation;
 
+/**
+ * A class of sequences of statements.
+ * 
+ * The counter of the frame of a sequence holds the index of the statement
+ * it executes.
+ */
 public class SequenceStatement extends Statement{
 	public SequenceStatement(List<Statement> statements,SourceLocation loc){
 		super(loc);
-		this.statements = statements;
+		this.statements = Collections.unmodifiableList(new ArrayList<>(statements));
 	}
 	
-	private List<Statement> statements;
+	private final List<Statement> statements;
 	
 	@Override
 	public String toString(){
@@ -22,43 +30,52 @@ public class SequenceStatement extends Statement{
 	}
 
 	@Override
-	public void execute(Unit unit) {
-		this.statementIndexToExecute = 0;
-		super.setExecutingUnit(unit);
-		if (!this.isFinished())
-			this.getCurrentStatement().execute(this.getExecutingUnit());
+	protected void start(ExecutionContext context, int depth) {
+		if (!this.isFinished(context, depth))
+			this.getCurrentStatement(context, depth).execute(context, depth+1);
 	}
 	
 	@Override
-	public void advanceTime(double duration) {
-		if (this.getCurrentStatement() != null){
-			while (duration > 0.0) {
-				this.getCurrentStatement().advanceTime(Statement.statementDuration());
-				if (this.getCurrentStatement().isFinished()){
-					this.statementIndexToExecute += 1;
-					if (!this.isFinished())
-						this.getCurrentStatement().execute(this.getExecutingUnit());
-					else
-						break;
-				}
-				duration -= Statement.statementDuration();
-			}
+	public int advance(ExecutionContext context, int depth, int nbSteps) {
+		while (!this.isFinished(context, depth)){
+			Statement current = this.getCurrentStatement(context, depth);
+			nbSteps = current.advance(context, depth+1, nbSteps);
+			if (nbSteps == 0 || !current.isFinished(context, depth+1))
+				return 0;
+			nbSteps--;
+			context.setCounter(depth, context.getCounter(depth)+1);
+			if (!this.isFinished(context, depth))
+				this.getCurrentStatement(context, depth).execute(context, depth+1);
 		}
+		return nbSteps;
 	}
 	
 	@Override
-	public boolean isFinished() {
-		return this.getCurrentStatement() == null;
+	void compile(CodeBuilder code) throws IllegalArgumentException {
+		for (Statement statement: this.statements){
+			if (statement == null)
+				throw new IllegalArgumentException("no code for a missing statement");
+			statement.compile(code);
+			code.emit(CompiledStatement.STEP, null);
+		}
 	}
 	
-	private Statement getCurrentStatement(){
-		if (this.statementIndexToExecute<this.statements.size())
-			return this.statements.get(this.statementIndexToExecute);
-		return null;
+	@Override
+	public void collectVariables(VariableResolver resolver) {
+		for (Statement statement: this.statements)
+			if (statement != null)
+				statement.collectVariables(resolver);
 	}
 	
-	private int statementIndexToExecute;
-
+	@Override
+	public boolean isFinished(ExecutionContext context, int depth) {
+		return this.getCurrentStatement(context, depth) == null;
+	}
 	
-
+	private Statement getCurrentStatement(ExecutionContext context, int depth){
+		int index = context.getCounter(depth);
+		if (index<this.statements.size())
+			return this.statements.get(index);
+		return null;
+	}
 }
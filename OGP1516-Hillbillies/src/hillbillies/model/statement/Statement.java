@@ -1,9 +1,16 @@
 package hillbillies.model.statement;
 
 import hillbillies.model.SourceReference;
-import hillbillies.model.Unit;
+import hillbillies.model.expression.VariableResolver;
 import hillbillies.part3.programs.SourceLocation;
 
+/**
+ * A class of statements of a task.
+ * 
+ * Statements do not change while they are executed. The state of an
+ * execution is kept in the execution context of the executing unit, in the
+ * frame at the depth at which the statement is executed.
+ */
 public abstract class Statement extends SourceReference implements IStatement {
 	/**
 	 * Initialize this new Statement with given SourceLocation.
@@ -18,22 +25,80 @@ public abstract class Statement extends SourceReference implements IStatement {
 		super(loc);
 	}
 	
-	public Unit getExecutingUnit(){
-		return this.executingUnit;
+	public static double statementDuration(){
+		return 0.001;
 	}
 	
-	public void setExecutingUnit(Unit unit){
-		this.executingUnit = unit;
+	/**
+	 * Return the number of steps the statements of a task can take in the
+	 * given duration.
+	 */
+	public static int getNbSteps(double duration){
+		return (int) Math.round(duration/Statement.statementDuration());
 	}
 	
-	private Unit executingUnit;
-	
-	public static double statementDuration(){
-		return 0.001;
+	/**
+	 * Start the execution of this statement in the given context, using the
+	 * frame at the given depth.
+	 * 
+	 * @param	context
+	 * 			The context of the executing unit.
+	 * @param	depth
+	 * 			The depth of the frame of this statement.
+	 * @effect	The frame at the given depth is set up for this statement, and
+	 * 			this statement is started in it.
+	 * 			| context.enter(depth, this) && this.start(context, depth)
+	 */
+	@Override
+	public final void execute(ExecutionContext context, int depth){
+		context.enter(depth, this);
+		this.start(context, depth);
 	}
 	
+	/**
+	 * Start the execution of this statement in the given context, in the
+	 * fresh frame at the given depth.
+	 */
+	protected abstract void start(ExecutionContext context, int depth);
+	
+	/**
+	 * Continue the execution of this statement for at most the given number
+	 * of steps, and return the number of steps left.
+	 * 
+	 * Going on to the next statement takes a step. When a statement waits for
+	 * its executing unit to finish an activity, the execution is suspended:
+	 * no steps are left, and it is resumed when the unit is idle again.
+	 * 
+	 * @param	nbSteps
+	 * 			The number of steps this statement can take.
+	 * @return	The given number of steps, if this statement is finished.
+	 * 			| if (this.isFinished(context, depth)) then result == nbSteps
+	 * @return	0, if this statement waits for its executing unit.
+	 * 			| if (!this.isFinished(context, depth)) then result == 0
+	 */
 	@Override
-	public void advanceTime(double duration) {
-		//do nothing
+	public int advance(ExecutionContext context, int depth, int nbSteps) {
+		if (this.isFinished(context, depth))
+			return nbSteps;
+		return 0;
+	}
+	
+	/**
+	 * Register the occurrences of variables in this statement with the given
+	 * resolver.
+	 */
+	public void collectVariables(VariableResolver resolver){
+	}
+	
+	/**
+	 * Append the instructions executing this statement to the given code.
+	 * 
+	 * @param	code
+	 * 			The code to append to.
+	 * @throws	IllegalArgumentException
+	 * 			This statement cannot be compiled.
+	 */
+	void compile(CodeBuilder code) throws IllegalArgumentException{
+		throw new IllegalArgumentException("no code for " + this.getClass().getSimpleName());
 	}
 }
@@ -1,53 +1,76 @@
 package hillbillies.model.statement;
 
-import hillbillies.model.Unit;
 import hillbillies.model.expression.Expression;
+import hillbillies.model.expression.VariableResolver;
 import hillbillies.part3.programs.SourceLocation;
 
+/**
+ * A class of while loops.
+ * 
+ * The counter of the frame of a while loop is 1 once the loop is finished.
+ */
 public class WhileStatement extends Statement {
 
 	public WhileStatement(Expression<Boolean> condition, Statement body, SourceLocation loc) {
 		super(loc);
 		this.condition = condition;
 		this.body = body;
-		this.isFinished = false;
 	}
 
 	@Override
-	public void execute(Unit unit) {
-		this.setExecutingUnit(unit);
-		if (this.condition.getResult(this.getExecutingUnit()))
-			this.body.execute(unit);
-		else
-			this.isFinished = true;
+	protected void start(ExecutionContext context, int depth) {
+		this.loop(context, depth);
 	}
 
 	@Override
-	public boolean isFinished() {
-		return this.isFinished;
+	public void collectVariables(VariableResolver resolver) {
+		if (this.condition != null)
+			this.condition.collectVariables(resolver);
+		if (this.body != null)
+			this.body.collectVariables(resolver);
 	}
 
 	@Override
-	public void advanceTime(double duration) {
-		if (!this.isFinished()){
-			while (duration > 0.0) {
-				if (!this.body.isFinished())
-					this.body.advanceTime(Statement.statementDuration());
-				else
-					if (this.condition.getResult(super.getExecutingUnit()))
-						this.body.execute(super.getExecutingUnit());
-					else {
-						this.isFinished = true;
-						break;
-					}
-				duration -= Statement.statementDuration();
-			}
+	public boolean isFinished(ExecutionContext context, int depth) {
+		return context.getCounter(depth) == 1;
+	}
+
+	@Override
+	public int advance(ExecutionContext context, int depth, int nbSteps) {
+		while (!this.isFinished(context, depth)){
+			nbSteps = this.body.advance(context, depth+1, nbSteps);
+			if (nbSteps == 0 || !this.body.isFinished(context, depth+1))
+				return 0;
+			nbSteps--;
+			this.loop(context, depth);
 		}
+		return nbSteps;
+	}
+	
+	@Override
+	void compile(CodeBuilder code) throws IllegalArgumentException {
+		if (this.condition == null || this.body == null)
+			throw new IllegalArgumentException("no code for a missing condition or body");
+		int test = code.emit(CompiledStatement.JUMP_UNLESS, this.condition.compileCondition());
+		this.body.compile(code);
+		code.emit(CompiledStatement.STEP, null);
+		code.setTarget(code.emit(CompiledStatement.JUMP, null), test);
+		code.setTarget(test, code.getSize());
+	}
+	
+	/**
+	 * Execute the body of this loop again if its condition holds, and finish
+	 * this loop otherwise.
+	 */
+	private void loop(ExecutionContext context, int depth){
+		if (this.condition.getResult(context.getUnit()))
+			this.body.execute(context, depth+1);
+		else
+			context.setCounter(depth, 1);
 	}
 
-	private Expression<Boolean> condition;
-	private Statement body;
-	private boolean isFinished;
+	private final Expression<Boolean> condition;
+	private final Statement body;
 	
 	@Override
 	public String toString() {
@@ -2,6 +2,7 @@ package hillbillies.model.statement;
 
 import hillbillies.model.Unit;
 import hillbillies.model.expression.Expression;
+import hillbillies.model.expression.VariableResolver;
 import hillbillies.part3.programs.SourceLocation;
 
 public class WorkStatement extends Statement{
@@ -11,11 +12,7 @@ public class WorkStatement extends Statement{
 		this.target = target;
 	}
 	
-	private Expression<int[]> target;
-	
-	private int[] getTargetCube(){
-		return target.getResult(this.getExecutingUnit());
-	}
+	private final Expression<int[]> target;
 	
 	@Override
 	public String toString(){
@@ -23,14 +20,26 @@ public class WorkStatement extends Statement{
 	}
 
 	@Override
-	public void execute(Unit unit) {
-		super.setExecutingUnit(unit);
-		unit.workAt(this.getTargetCube()[0], this.getTargetCube()[1], this.getTargetCube()[2]);
+	protected void start(ExecutionContext context, int depth) {
+		Unit unit = context.getUnit();
+		int[] targetCube = this.target.getResult(unit);
+		unit.workAt(targetCube[0], targetCube[1], targetCube[2]);
 	}
 
 	@Override
-	public boolean isFinished() {
-		return !super.getExecutingUnit().isWorking();
+	void compile(CodeBuilder code) {
+		code.emitAction(this);
+	}
+	
+	@Override
+	public void collectVariables(VariableResolver resolver) {
+		if (this.target != null)
+			this.target.collectVariables(resolver);
+	}
+	
+	@Override
+	public boolean isFinished(ExecutionContext context, int depth) {
+		return !context.getUnit().isWorking();
 	}
 
 	
@@ -49,7 +49,7 @@ public class Facade implements IFacade {
 	 *             A precondition was violated or an exception was thrown.
 	 */
 	public double[] getPosition(Unit unit) throws ModelException{
-		return unit.getPosition().getVector();
+		return unit.getInterpolatedPosition().getVector();
 	}
 
 	/**
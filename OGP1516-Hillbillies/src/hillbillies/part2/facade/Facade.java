@@ -5,8 +5,10 @@ import java.util.Set;
 import hillbillies.model.Boulder;
 import hillbillies.model.Faction;
 import hillbillies.model.Log;
+import hillbillies.model.TickMode;
 import hillbillies.model.Unit;
 import hillbillies.model.World;
+import hillbillies.model.connectivity.ConnectivityBackend;
 import hillbillies.part2.listener.TerrainChangeListener;
 import ogp.framework.util.ModelException;
 
@@ -50,6 +52,30 @@ public class Facade extends hillbillies.part1.facade.Facade implements IFacade{
 			throw new ModelException("Invalid arguments while trying to create world.");
 		}
 	}
+	
+	/**
+	 * Create a new world with the given terrain, advancing its units in the
+	 * given way and drawing its random numbers from the given seed.
+	 * 
+	 * @param terrainTypes
+	 *            The types of the terrain, as for
+	 *            {@link #createWorld(int[][][], TerrainChangeListener)}.
+	 * @param modelListener
+	 *            The listener to notify of terrain changes.
+	 * @param tickMode
+	 *            The way the units of the world are advanced in every tick.
+	 * @param seed
+	 *            The seed of the random numbers of the world.
+	 * @throws ModelException
+	 */
+	public World createWorld(int[][][] terrainTypes, TerrainChangeListener modelListener,
+			TickMode tickMode, long seed) throws ModelException{
+		try{return new World(terrainTypes, modelListener, ConnectivityBackend.SEARCH, tickMode, seed);
+		}
+		catch(IllegalArgumentException e){
+			throw new ModelException("Invalid arguments while trying to create world.");
+		}
+	}
 		
 	
 	/**
@@ -372,7 +398,7 @@ public class Facade extends hillbillies.part1.facade.Facade implements IFacade{
 	 *             A precondition was violated or an exception was thrown.
 	 */
 	public double[] getPosition(Boulder boulder) throws ModelException{
-		return boulder.getPosition().getVector();
+		return boulder.getInterpolatedPosition().getVector();
 	}
 
 	/**
@@ -402,7 +428,7 @@ public class Facade extends hillbillies.part1.facade.Facade implements IFacade{
 	 *             A precondition was violated or an exception was thrown.
 	 */
 	public double[] getPosition(Log log) throws ModelException{
-		return log.getPosition().getVector();
+		return log.getInterpolatedPosition().getVector();
 	}
 
 	/**
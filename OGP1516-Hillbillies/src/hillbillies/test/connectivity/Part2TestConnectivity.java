@@ -0,0 +1,167 @@
+package hillbillies.test.connectivity;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import hillbillies.model.CubeSpace;
+import hillbillies.model.connectivity.BorderConnectivity;
+import hillbillies.model.connectivity.ComponentConnectivity;
+import hillbillies.model.connectivity.SearchConnectivity;
+import hillbillies.util.ConnectedToBorder;
+
+public class Part2TestConnectivity {
+
+	@Test
+	public void testCutOffPillar(){
+		CubeSpace space = new CubeSpace(5, 5, 5);
+		SearchConnectivity connectivity = new SearchConnectivity(space);
+		// hollow out everything but a pillar of two cubes resting on (2,2,0)
+		for (int x=1; x<4; x++)
+			for (int y=1; y<4; y++)
+				for (int z=1; z<4; z++)
+					if (x != 2 || y != 2 || z == 3)
+						connectivity.markPassable(space.getId(x, y, z));
+		assertTrue(connectivity.isSolidConnectedToBorder(2, 2, 2));
+		assertEquals("The whole pillar is cut off", 2,
+				connectivity.changeSolidToPassable(2, 2, 0).size());
+		assertFalse(connectivity.isSolidConnectedToBorder(2, 2, 2));
+		assertEquals("Refilling reconnects the pillar", 3,
+				connectivity.changePassableToSolid(2, 2, 0).size());
+		assertTrue(connectivity.isSolidConnectedToBorder(2, 2, 2));
+	}
+
+	@Test
+	public void testResetMatchesSingleChanges(){
+		CubeSpace space = new CubeSpace(12, 10, 8);
+		Random random = new Random(3);
+		boolean[] passable = new boolean[space.getNbCubes()];
+		SearchConnectivity stepwise = new SearchConnectivity(space);
+		for (int id=0; id<passable.length; id++)
+			if (random.nextInt(3) > 0){
+				passable[id] = true;
+				stepwise.markPassable(id);
+			}
+		SearchConnectivity bulk = new SearchConnectivity(space);
+		int nbCutOff = bulk.reset(id -> passable[id]);
+		int expected = 0;
+		for (int id=0; id<passable.length; id++){
+			assertEquals(stepwise.isSolidConnectedToBorder(id), bulk.isSolidConnectedToBorder(id));
+			if (!passable[id] && !stepwise.isSolidConnectedToBorder(id))
+				expected++;
+		}
+		assertEquals(expected, nbCutOff);
+		for (int i=0; i<nbCutOff; i++)
+			assertFalse(bulk.isSolidConnectedToBorder(bulk.getChangedCube(i)));
+	}
+	
+	@Test
+	public void testMatchesProvidedHelper(){
+		this.checkMatchesProvidedHelper(new SearchConnectivity(new CubeSpace(9, 8, 7)), 7);
+	}
+
+	@Test
+	public void testComponentsMatchProvidedHelper(){
+		for (long seed=0; seed<5; seed++)
+			this.checkMatchesProvidedHelper(new ComponentConnectivity(new CubeSpace(9, 8, 7)), seed);
+	}
+
+	@Test
+	public void testComponentsReset(){
+		CubeSpace space = new CubeSpace(12, 10, 8);
+		Random random = new Random(5);
+		boolean[] passable = new boolean[space.getNbCubes()];
+		for (int id=0; id<passable.length; id++)
+			passable[id] = random.nextInt(3) > 0;
+		BorderConnectivity search = new SearchConnectivity(space);
+		BorderConnectivity components = new ComponentConnectivity(space);
+		assertEquals(search.reset(id -> passable[id]), components.reset(id -> passable[id]));
+		for (int id=0; id<passable.length; id++)
+			assertEquals(search.isSolidConnectedToBorder(id), components.isSolidConnectedToBorder(id));
+	}
+
+	@Test
+	public void testComponentLabelsReclaimed(){
+		CubeSpace space = new CubeSpace(5, 5, 5);
+		ComponentConnectivity connectivity = new ComponentConnectivity(space);
+		for (int x=1; x<4; x++)
+			for (int y=1; y<4; y++)
+				for (int z=1; z<4; z++)
+					if (x != 2 || y != 2 || z == 3)
+						connectivity.markPassable(space.getId(x, y, z));
+		// every cut gives the pillar a new label, every refill merges it back
+		for (int i=0; i<1000; i++){
+			assertEquals(2, connectivity.markPassable(space.getId(2, 2, 0)));
+			assertFalse(connectivity.isSolidConnectedToBorder(space.getId(2, 2, 2)));
+			assertEquals(3, connectivity.markSolid(space.getId(2, 2, 0)));
+			assertTrue(connectivity.isSolidConnectedToBorder(space.getId(2, 2, 2)));
+		}
+		assertTrue(connectivity.getNbLabels() <= 64);
+	}
+
+	@Test
+	public void testBatchMatchesSingleChanges(){
+		CubeSpace space = new CubeSpace(10, 9, 8);
+		Random random = new Random(11);
+		BorderConnectivity single = new SearchConnectivity(space);
+		BorderConnectivity[] batched = {new SearchConnectivity(space), new ComponentConnectivity(space)};
+		boolean[] before = new boolean[space.getNbCubes()];
+		for (int round=0; round<40; round++){
+			for (int id=0; id<before.length; id++)
+				before[id] = single.isSolidConnectedToBorder(id);
+			int[] ids = new int[1+random.nextInt(12)];
+			for (int i=0; i<ids.length; i++){
+				ids[i] = random.nextInt(space.getNbCubes());
+				single.markPassable(ids[i]);
+			}
+			int expected = 0;
+			for (int id=0; id<before.length; id++)
+				if (before[id] && single.isSolid(id) && !single.isSolidConnectedToBorder(id))
+					expected++;
+			for (BorderConnectivity connectivity: batched){
+				assertEquals(expected, connectivity.markPassable(ids, ids.length));
+				for (int id=0; id<space.getNbCubes(); id++)
+					assertEquals(single.isSolidConnectedToBorder(id), connectivity.isSolidConnectedToBorder(id));
+			}
+		}
+	}
+
+	/**
+	 * Check that the given connectivity registration agrees with the provided
+	 * helper on a random sequence of digs and refills, and reports exactly the
+	 * cubes whose connection changed.
+	 */
+	private void checkMatchesProvidedHelper(BorderConnectivity connectivity, long seed){
+		CubeSpace space = connectivity.getCubeSpace();
+		ConnectedToBorder helper = new ConnectedToBorder(space.getNbCubesX(), space.getNbCubesY(),
+				space.getNbCubesZ());
+		Random random = new Random(seed);
+		boolean[] before = new boolean[space.getNbCubes()];
+		for (int step=0; step<600; step++){
+			int id = random.nextInt(space.getNbCubes());
+			for (int i=0; i<before.length; i++)
+				before[i] = helper.isSolidConnectedToBorder(space.getX(i), space.getY(i), space.getZ(i));
+			int nbChanged;
+			if (random.nextInt(4) == 0){
+				helper.changePassableToSolid(space.getX(id), space.getY(id), space.getZ(id));
+				nbChanged = connectivity.markSolid(id);
+			}
+			else{
+				helper.changeSolidToPassable(space.getX(id), space.getY(id), space.getZ(id));
+				nbChanged = connectivity.markPassable(id);
+			}
+			int expected = 0;
+			for (int i=0; i<before.length; i++){
+				boolean after = helper.isSolidConnectedToBorder(space.getX(i), space.getY(i), space.getZ(i));
+				assertEquals(after, connectivity.isSolidConnectedToBorder(i));
+				if (after != before[i] && connectivity.isSolid(i))
+					expected++;
+			}
+			assertEquals(expected, nbChanged);
+			for (int i=0; i<nbChanged; i++)
+				assertTrue(connectivity.isSolid(connectivity.getChangedCube(i)));
+		}
+	}
+}
@@ -2,7 +2,10 @@ package hillbillies.test.part3;
 
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
@@ -35,6 +38,17 @@ public class Part3TestTask {
 		assertTrue(this.parsingSuccesfull("resources/tasks/dig.txt"));
 	}
 
+	@Test
+	public void testParsingDigWithUnsupportedSelected() throws IOException{
+		// a lone student's factory creates no 'selected' expression
+		for (TaskBackend backend: TaskBackend.values()){
+			Optional<List<Task>> tasks = TaskParser.create(new TaskFactory(backend))
+					.parseFile("resources/tasks/dig.txt", Collections.emptyList());
+			assertTrue(backend.toString(), tasks.isPresent());
+			assertEquals(1, tasks.get().size());
+		}
+	}
+
 	@Test
 	public void testParsingDigTunnel() throws IOException{
 		assertTrue(this.parsingSuccesfull("resources/tasks/digtunnel.txt"));
@@ -143,6 +157,256 @@ public class Part3TestTask {
 		assertFalse(task2.isFinished());		
 	}
 
+	@Test
+	public void testTaskSuspendsOnBlockingStatements() {
+		this.assertSuspendsOnBlockingStatements(this.parser);
+	}
+	
+	@Test
+	public void testInterpretedTaskSuspendsOnBlockingStatements() {
+		this.assertSuspendsOnBlockingStatements(TaskParser.create(new TaskFactory(TaskBackend.INTERPRETED)));
+	}
+	
+	private void assertSuspendsOnBlockingStatements(TaskParser<?, ?, Task> parser) {
+		String program = "name: \"walk\"\npriority: 1\nactivities: ";
+		for (int i=0; i<300; i++)
+			program += "x := true; ";
+		program += "moveTo (3, 3, 1); x := false;";
+		Task task = parser.parseString(program, Collections.emptyList()).get().get(0);
+		int[][][] terrain = new int[5][5][3];
+		for (int x=0; x<5; x++)
+			for (int y=0; y<5; y++)
+				terrain[x][y][0] = 1;
+		World world = new World(terrain, new hillbillies.part2.listener.DefaultTerrainChangeListener());
+		Unit unit = new Unit("Walker", new int[] {0,0,1}, 50, 50, 50, 50, true);
+		world.addGameObjectToWorld(unit);
+		unit.getFaction().getScheduler().addTask(task);
+		world.advanceTime(0.2);
+		assertSame(task, unit.getTask());
+		world.advanceTime(0.2);
+		assertFalse("At most 200 statements in a tick", unit.isMoving());
+		world.advanceTime(0.2);
+		assertTrue(unit.isMoving());
+		while (unit.isMoving())
+			world.advanceTime(0.2);
+		assertSame(task, unit.getTask());
+		world.advanceTime(0.2);
+		assertTrue("Resumed once arrived", task.isFinished());
+	}
+	
+	@Test
+	public void testActivitySharedByUnits() {
+		String program = "name: \"patrol\"\npriority: 1\nactivities: "
+				+ "moveTo (4, 4, 1); if (is_alive this) then moveTo (2, 2, 1); fi moveTo (4, 0, 1);";
+		Task parsed = this.parser.parseString(program, Collections.emptyList()).get().get(0);
+		Task first = new Task("first", 2, parsed.getActivity());
+		Task second = new Task("second", 1, parsed.getActivity());
+		int[][][] terrain = new int[5][5][3];
+		for (int x=0; x<5; x++)
+			for (int y=0; y<5; y++)
+				terrain[x][y][0] = 1;
+		World world = new World(terrain, new hillbillies.part2.listener.DefaultTerrainChangeListener());
+		Unit unit1 = new Unit("Walker", new int[] {0,0,1}, 50, 50, 50, 50, true);
+		Unit unit2 = new Unit("Walker", new int[] {0,4,1}, 50, 50, 50, 50, true);
+		world.addGameObjectToWorld(unit1);
+		world.addGameObjectToWorld(unit2);
+		unit1.getFaction().getScheduler().addTask(first);
+		unit2.getFaction().getScheduler().addTask(second);
+		unit1.executeTask(first);
+		unit2.executeTask(second);
+		// once idle, the units wander off in default behavior
+		int[] arrival1 = null;
+		int[] arrival2 = null;
+		for (int i=0; i<500 && (arrival1 == null || arrival2 == null); i++){
+			world.advanceTime(0.2);
+			if (arrival1 == null && first.isFinished())
+				arrival1 = unit1.getPosition().getCubeCoordinates();
+			if (arrival2 == null && second.isFinished())
+				arrival2 = unit2.getPosition().getCubeCoordinates();
+		}
+		assertArrayEquals(new int[] {4,0,1}, arrival1);
+		assertArrayEquals(new int[] {4,0,1}, arrival2);
+	}
+	
+	@Test
+	public void testCompiledActivity() {
+		String program = "name: \"loop\"\npriority: 1\nactivities: "
+				+ "while (is_alive this) do if (false) then print true; fi moveTo (1, 1, 1); done";
+		Task compiled = this.parser.parseString(program, Collections.emptyList()).get().get(0);
+		Task interpreted = TaskParser.create(new TaskFactory(TaskBackend.INTERPRETED))
+				.parseString(program, Collections.emptyList()).get().get(0);
+		assertTrue(compiled.getActivity() instanceof CompiledStatement);
+		assertFalse(interpreted.getActivity() instanceof CompiledStatement);
+		assertEquals(interpreted.toString(), compiled.toString());
+	}
+	
+	@Test
+	public void testCompiledProgramsBehaveAsInterpreted() throws IOException {
+		String[] files = {"digtunnel", "digtunnel_if", "digtunnel_if_2", "follow_and_kill",
+				"goto_10_10_10", "goto_any", "goto_var", "ifStatement", "operate_workshop", "print",
+				"walk_10_10_10", "while"};
+		PrintStream out = System.out;
+		System.setOut(new PrintStream(new ByteArrayOutputStream()));
+		try {
+			for (String file: files){
+				World interpreted = this.createWorkplace();
+				World compiled = this.createWorkplace();
+				this.executeProgram(interpreted, file, TaskBackend.INTERPRETED);
+				this.executeProgram(compiled, file, TaskBackend.COMPILED);
+				for (int tick=0; tick<300; tick++){
+					interpreted.advanceTime(0.2);
+					compiled.advanceTime(0.2);
+					assertEquals(file + " at tick " + tick, this.describeUnits(interpreted),
+							this.describeUnits(compiled));
+				}
+			}
+		} finally {
+			System.setOut(out);
+		}
+	}
+	
+	/**
+	 * Return a seeded world of 16 by 16 by 12 cubes with a rock floor, a row
+	 * of rock to dig from (1, 0, 2) to (5, 0, 2), a tree, a workshop, a worker
+	 * and an enemy.
+	 */
+	private World createWorkplace() {
+		int[][][] terrain = new int[16][16][12];
+		for (int x=0; x<16; x++)
+			for (int y=0; y<16; y++){
+				terrain[x][y][0] = 1;
+				terrain[x][y][1] = 1;
+			}
+		for (int x=1; x<=5; x++)
+			terrain[x][0][2] = 1;
+		terrain[12][3][2] = 2;
+		terrain[8][4][2] = 3;
+		World world = new World(terrain, new hillbillies.part2.listener.DefaultTerrainChangeListener(),
+				hillbillies.model.connectivity.ConnectivityBackend.SEARCH, TickMode.SERIAL, 7);
+		world.addGameObjectToWorld(new Unit("Worker", new int[] {8,8,2}, 50, 50, 50, 50, true));
+		world.addGameObjectToWorld(new Unit("Enemy", new int[] {14,14,2}, 50, 50, 50, 50, true));
+		return world;
+	}
+	
+	/**
+	 * Let the first unit of the given world execute the task in the given
+	 * sample file, parsed for the given backend.
+	 */
+	private void executeProgram(World world, String file, TaskBackend backend) throws IOException {
+		Task task = TaskParser.create(new TaskFactory(backend)).parseFile("resources/tasks/" + file + ".txt",
+				Collections.emptyList()).get().get(0);
+		Unit unit = world.getUnits().iterator().next();
+		unit.getFaction().getScheduler().addTask(task);
+		unit.executeTask(task);
+	}
+	
+	private String describeUnits(World world) {
+		String[] result = world.getUnits().stream().map(unit -> unit.getName() +
+				Arrays.toString(unit.getPosition().getVector()) + " hp=" + unit.getCurrentHitPoints() +
+				" sp=" + unit.getCurrentStaminaPoints() + " xp=" + unit.getExperiencePoints() +
+				" moving=" + unit.isMoving() + " working=" + unit.isWorking() + " attacking=" +
+				unit.isAttacking() + " carrying=" + unit.isCarryingMaterial() + " task=" +
+				unit.isExecutingTask()).sorted().toArray(String[]::new);
+		return String.join("\n", result);
+	}
+	
+	@Test
+	public void testUncompilableActivityIsInterpreted() {
+		Statement activity = new Statement(null){
+			@Override
+			protected void start(ExecutionContext context, int depth) {
+			}
+			@Override
+			public boolean isFinished(ExecutionContext context, int depth) {
+				return true;
+			}
+		};
+		List<Task> tasks = new TaskFactory(TaskBackend.COMPILED).createTasks("custom", 1, activity,
+				Collections.emptyList());
+		assertSame(activity, tasks.get(0).getActivity());
+	}
+	
+	@Test
+	@SuppressWarnings("rawtypes")
+	public void testCompiledIfWithoutBody() {
+		TaskFactory factory = new TaskFactory(TaskBackend.COMPILED);
+		Statement activity = factory.createSequence(Arrays.asList(
+				factory.createIf(factory.createTrue(null), null, null, null),
+				factory.createIf(factory.createFalse(null), null, factory.createPrint(factory.createTrue(null), null), null)),
+				null);
+		Task task = factory.createTasks("empty then", 1, activity, Collections.emptyList()).get(0);
+		assertTrue(task.getActivity() instanceof CompiledStatement);
+		int[][][] terrain = new int[3][3][2];
+		World world = new World(terrain, new hillbillies.part2.listener.DefaultTerrainChangeListener());
+		Unit unit = new Unit("Idler", new int[] {1,1,0}, 50, 50, 50, 50, true);
+		world.addGameObjectToWorld(unit);
+		unit.getFaction().getScheduler().addTask(task);
+		unit.executeTask(task);
+		PrintStream out = System.out;
+		ByteArrayOutputStream printed = new ByteArrayOutputStream();
+		System.setOut(new PrintStream(printed));
+		try {
+			world.advanceTime(0.2);
+		} finally {
+			System.setOut(out);
+		}
+		assertTrue(task.isFinished());
+		assertEquals("true", printed.toString().trim());
+	}
+	
+	@Test
+	@SuppressWarnings("rawtypes")
+	public void testVariablesResolvedToSlots() {
+		TaskFactory factory = new TaskFactory();
+		Expression readX = factory.createReadVariable("x", null);
+		Expression readY = factory.createReadVariable("y", null);
+		Statement activity = factory.createSequence(Arrays.asList(
+				factory.createAssignment("x", factory.createNot(factory.createFalse(null), null), null),
+				factory.createAssignment("y", factory.createHerePosition(null), null),
+				factory.createAssignment("y", readY, null),
+				factory.createAssignment("z", readX, null),
+				factory.createAssignment("z", factory.createThis(null), null)), null);
+		factory.createTasks("variables", 1, activity, Collections.emptyList());
+		assertEquals(Boolean.class, readX.getType());
+		assertNull("Assigned its own value", readY.getType());
+		Expression readZ = factory.createReadVariable("z", null);
+		factory.createTasks("other", 1, factory.createPrint(readZ, null), Collections.emptyList());
+		assertNull("Never assigned", readZ.getType());
+	}
+	
+	@Test
+	@SuppressWarnings("rawtypes")
+	public void testVariablesOfFailedParseForgotten() {
+		TaskFactory factory = new TaskFactory();
+		assertFalse(TaskParser.create(factory).parseString("name: \"failed\"\npriority: 1\nactivities: "
+				+ "c := here; b := true; moveTo ;", Collections.emptyList()).isPresent());
+		Expression readB = factory.createReadVariable("b", null);
+		Statement activity = factory.createSequence(Arrays.asList(
+				factory.createAssignment("b", factory.createHerePosition(null), null),
+				factory.createMoveTo(readB, null)), null);
+		factory.createTasks("moving", 1, activity, Collections.emptyList());
+		assertEquals(int[].class, readB.getType());
+		assertEquals(0, ((ReadVariableExpression) readB).getVariable().getSlot());
+	}
+	
+	@Test
+	public void testVariableOfChangingType() {
+		String program = "name: \"retype\"\npriority: 1\nactivities: x := true; print x; x := here;";
+		Task task = this.parser.parseString(program, Collections.emptyList()).get().get(0);
+		int[][][] terrain = new int[3][3][3];
+		for (int x=0; x<3; x++)
+			for (int y=0; y<3; y++)
+				terrain[x][y][0] = 1;
+		World world = new World(terrain, new hillbillies.part2.listener.DefaultTerrainChangeListener());
+		Unit unit = new Unit("Typist", new int[] {1,1,1}, 50, 50, 50, 50, true);
+		world.addGameObjectToWorld(unit);
+		unit.getFaction().getScheduler().addTask(task);
+		assertTrue(unit.executeTask(task));
+		world.advanceTime(0.2);
+		assertTrue("Interrupted", task.getPriority() < 1);
+		assertFalse(task.isFinished());
+	}
+	
 	private boolean parsingSuccesfull(String file){
 		Optional<List<Task>> task;
 		try{
@@ -0,0 +1,197 @@
+package hillbillies.test.path;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+import java.util.function.IntPredicate;
+
+import org.junit.Test;
+
+import hillbillies.model.CubeSpace;
+import hillbillies.model.path.FlowField;
+import hillbillies.model.path.FlowFieldCache;
+import hillbillies.model.path.PathFinder;
+
+public class Part2TestPathFinder {
+
+	@Test
+	public void testIdRoundTrip(){
+		CubeSpace space = new CubeSpace(5, 3, 4);
+		int id = space.getId(4, 2, 3);
+		assertEquals("Last cube has the last identifier", 5*3*4-1, id);
+		assertArrayEquals(new int[]{4,2,3}, space.getCube(id));
+		assertArrayEquals(new int[]{1,2,0}, space.getCube(space.getId(1, 2, 0)));
+	}
+
+	@Test
+	public void testNeighbours(){
+		CubeSpace space = new CubeSpace(5, 3, 4);
+		int[] neighbours = new int[26];
+		assertEquals("A corner has 7 neighbours", 7, space.getNeighbours(0, neighbours));
+		assertEquals("An inner cube has 26 neighbours", 26,
+				space.getNeighbours(space.getId(1, 1, 1), neighbours));
+		assertTrue(space.areNeighbours(space.getId(1, 1, 1), space.getId(2, 0, 2)));
+		assertFalse(space.areNeighbours(space.getId(1, 1, 1), space.getId(3, 1, 1)));
+		assertEquals(-1, space.getNeighbour(0, -1, 0, 0));
+	}
+
+	@Test
+	public void testStraightLine(){
+		CubeSpace space = new CubeSpace(10, 10, 10);
+		PathFinder finder = new PathFinder(space);
+		int[] path = finder.findPath(space.getId(0,0,0), space.getId(9,0,0), i -> true);
+		assertEquals("Nine steps along the x-axis", 9, path.length);
+		assertArrayEquals(new int[]{1,0,0}, space.getCube(path[0]));
+		assertArrayEquals(new int[]{9,0,0}, space.getCube(path[8]));
+	}
+
+	@Test
+	public void testDiagonalCostsOneStep(){
+		CubeSpace space = new CubeSpace(10, 10, 10);
+		PathFinder finder = new PathFinder(space);
+		int[] path = finder.findPath(space.getId(0,0,0), space.getId(5,3,7), i -> true);
+		assertEquals("Steps along the longest axis", 7, path.length);
+	}
+
+	@Test
+	public void testRouteAroundWall(){
+		// a wall at x == 2 with a single gap at y == 4
+		CubeSpace space = new CubeSpace(5, 5, 1);
+		PathFinder finder = new PathFinder(space);
+		int[] path = finder.findPath(space.getId(0,0,0), space.getId(4,0,0),
+				i -> space.getX(i) != 2 || space.getY(i) == 4);
+		assertEquals("Route through the gap", 8, path.length);
+		for (int step: path)
+			assertTrue(space.getX(step) != 2 || space.getY(step) == 4);
+	}
+
+	@Test
+	public void testUnreachable(){
+		CubeSpace space = new CubeSpace(5, 5, 1);
+		PathFinder finder = new PathFinder(space);
+		assertNull(finder.findPath(space.getId(0,0,0), space.getId(4,0,0), i -> space.getX(i) != 2));
+		assertNull("Start must be standable",
+				finder.findPath(space.getId(0,0,0), space.getId(1,0,0), i -> i != 0));
+	}
+
+	@Test
+	public void testSameCube(){
+		CubeSpace space = new CubeSpace(3, 3, 3);
+		int center = space.getId(1, 1, 1);
+		assertEquals(0, new PathFinder(space).findPath(center, center, i -> true).length);
+	}
+
+	@Test
+	public void testBookkeepingScalesWithRoute(){
+		// a billion cubes, far too many to keep bookkeeping for every cube
+		CubeSpace space = new CubeSpace(1024, 1024, 1024);
+		PathFinder finder = new PathFinder(space);
+		int[] path = finder.findPath(space.getId(0,0,0), space.getId(1000,600,3), i -> true);
+		assertEquals("Steps along the longest axis", 1000, path.length);
+		assertNotNull(finder.findPath(space.getId(5,5,5), space.getId(5,900,5), i -> space.getY(i) != 400 || space.getX(i) > 3));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testOutsideWorld(){
+		new PathFinder(new CubeSpace(3, 3, 3)).findPath(0, 27, i -> true);
+	}
+
+	@Test
+	public void testConcurrentSearches() throws InterruptedException{
+		CubeSpace space = new CubeSpace(20, 20, 5);
+		PathFinder finder = new PathFinder(space);
+		IntPredicate isStandable = i -> space.getX(i) != 10 || space.getY(i) == 19;
+		int[][] expected = new int[20][];
+		for (int y=0; y<20; y++)
+			expected[y] = finder.findPath(space.getId(0,y,0), space.getId(19,19-y,4), isStandable);
+		int[][][] found = new int[4][20][];
+		Thread[] threads = new Thread[4];
+		for (int t=0; t<threads.length; t++){
+			int[][] result = found[t];
+			threads[t] = new Thread(() -> {
+				for (int y=0; y<20; y++)
+					result[y] = finder.findPath(space.getId(0,y,0), space.getId(19,19-y,4), isStandable);
+			});
+			threads[t].start();
+		}
+		for (Thread thread: threads)
+			thread.join();
+		for (int[][] result: found)
+			for (int y=0; y<20; y++)
+				assertArrayEquals("Every thread searches with its own bookkeeping", expected[y], result[y]);
+	}
+
+	@Test
+	public void testFlowFieldMatchesSearch(){
+		CubeSpace space = new CubeSpace(5, 5, 1);
+		PathFinder finder = new PathFinder(space);
+		FlowFieldCache cache = new FlowFieldCache(finder,
+				i -> space.getX(i) != 2 || space.getY(i) == 4, 2);
+		int target = space.getId(4,0,0);
+		cache.findPath(space.getId(0,0,0), target);
+		assertEquals("No flow field after a single request", 0, cache.getNbFlowFields());
+		for (int[] start: new int[][]{{0,0,0},{1,3,0},{3,4,0},{4,0,0}}){
+			int[] expected = finder.findPath(space.getId(start), target,
+					i -> space.getX(i) != 2 || space.getY(i) == 4);
+			assertEquals(expected.length, cache.findPath(space.getId(start), target).length);
+		}
+		assertEquals("Flow field built for a popular target", 1, cache.getNbFlowFields());
+	}
+
+	@Test
+	public void testFlowFieldTerrainChange(){
+		CubeSpace space = new CubeSpace(5, 5, 1);
+		PathFinder finder = new PathFinder(space);
+		boolean[] wall = new boolean[25];
+		for (int y=0; y<5; y++)
+			wall[space.getId(2, y, 0)] = true;
+		FlowFieldCache cache = new FlowFieldCache(finder, i -> !wall[i], 2);
+		int start = space.getId(0,0,0);
+		int target = space.getId(4,0,0);
+		assertNull(cache.findPath(start, target));
+		assertNull(cache.findPath(start, target));
+		// opening the wall repairs the flow field
+		wall[space.getId(2, 1, 0)] = false;
+		cache.notifyTerrainChanged(2, 1, 0);
+		FlowField field = cache.getFlowField(target);
+		assertNotNull(field);
+		assertEquals(4, cache.findPath(start, target).length);
+		// closing it again repairs the flow field behind the wall
+		wall[space.getId(2, 1, 0)] = true;
+		cache.notifyTerrainChanged(2, 1, 0);
+		assertTrue(field.isValid());
+		assertEquals(-1, field.getDistance(start));
+		assertEquals(1, field.getDistance(space.getId(3,0,0)));
+		// walling in the target invalidates the flow field
+		wall[target] = true;
+		cache.notifyTerrainChanged(4, 0, 0);
+		assertFalse(field.isValid());
+		assertEquals(0, cache.getNbFlowFields());
+	}
+
+	@Test
+	public void testFlowFieldRepairMatchesRebuild(){
+		CubeSpace space = new CubeSpace(8, 8, 2);
+		PathFinder finder = new PathFinder(space);
+		boolean[] wall = new boolean[space.getNbCubes()];
+		FlowFieldCache cache = new FlowFieldCache(finder, i -> !wall[i], 1);
+		int target = space.getId(0,0,0);
+		cache.findPath(space.getId(7,7,1), target);
+		cache.findPath(space.getId(7,7,1), target);
+		FlowField field = cache.getFlowField(target);
+		Random random = new Random(7);
+		for (int change=0; change<200; change++){
+			int x = random.nextInt(8), y = random.nextInt(8), z = random.nextInt(2);
+			int id = space.getId(x, y, z);
+			if (id == target)
+				continue;
+			wall[id] = !wall[id];
+			cache.notifyTerrainChanged(x, y, z);
+			FlowFieldCache fresh = new FlowFieldCache(finder, i -> !wall[i], 1);
+			fresh.findPath(id, target);
+			fresh.findPath(id, target);
+			for (int cube=0; cube<space.getNbCubes(); cube++)
+				assertEquals(fresh.getFlowField(target).getDistance(cube), field.getDistance(cube));
+		}
+	}
+}
@@ -7,6 +7,7 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import hillbillies.model.*;
+import hillbillies.model.connectivity.ConnectivityBackend;
 import hillbillies.part2.listener.DefaultTerrainChangeListener;
 import ogp.framework.util.Util;
 
@@ -252,6 +253,39 @@ public class Part1TestUnit {
 		assertFalse("Fight is over",attacker.isAttacking());
 	}
 	
+	@Test
+	public void testDodgeWhileWalking(){
+		int[][][] terrain = new int[5][5][2];
+		for (int x=0; x<5; x++)
+			for (int y=0; y<5; y++)
+				terrain[x][y][0] = 1;
+		World world = new World(terrain, new DefaultTerrainChangeListener(), ConnectivityBackend.SEARCH,
+				TickMode.SERIAL, 5);
+		Unit attacker = new Unit("TestUnit", new int[] { 1, 2, 1 }, 50, 50, 50, 50, false);
+		world.addGameObjectToWorld(attacker);
+		Unit defender = new Unit("TestUnit", new int[] { 1, 1, 1 }, 50, 50, 50, 50, false);
+		world.addGameObjectToWorld(defender);
+		// the defender is too agile to be hit
+		attacker.setAgility(1);
+		defender.setAgility(200);
+		defender.moveTo(new int[] { 3, 1, 1 });
+		world.advanceTime(0.1);
+		attacker.fight(defender);
+		double[] landed = defender.getPosition().getVector();
+		double[] center = Vector.getCubeCenter(defender.getPosition().getCubeCoordinates()).getVector();
+		assertTrue(defender.isMoving());
+		world.advanceTime(0.05);
+		double[] moved = defender.getPosition().getVector();
+		// the defender heads back to the centre of the cube it landed in first
+		double cross = (moved[0]-landed[0])*(center[1]-landed[1]) - (moved[1]-landed[1])*(center[0]-landed[0]);
+		double dot = (moved[0]-landed[0])*(center[0]-landed[0]) + (moved[1]-landed[1])*(center[1]-landed[1]);
+		assertEquals(0, cross, 1e-9);
+		assertTrue(dot > 0);
+		for (int i=0; i<50; i++)
+			world.advanceTime(0.2);
+		assertDoublePositionEquals("The defender still arrives", 3.5, 1.5, 1.5, defender.getPosition().getVector());
+	}
+	
 	@Test
 	public void testFightOtherZLevel(){
 		Unit attacker = new Unit("TestUnit", new int[] { 1, 0, 3 }, 50, 50, 50, 50, false);
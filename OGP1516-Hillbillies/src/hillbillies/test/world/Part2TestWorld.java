@@ -2,9 +2,14 @@ package hillbillies.test.world;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 import org.junit.Test;
 
 import hillbillies.model.*;
+import hillbillies.model.connectivity.ConnectivityBackend;
 import hillbillies.part2.listener.DefaultTerrainChangeListener;;
 
 public class Part2TestWorld {
@@ -40,6 +45,468 @@ public class Part2TestWorld {
 		assertFalse("The world contains this Unit", world.getUnits().contains(unit2));
 	}
 	
+	@Test
+	public void testTypedIndexes(){
+		int[][][] worldTerrain = new int[5][3][4];
+		World world = new World(worldTerrain, new DefaultTerrainChangeListener());
+		Faction faction = new Faction();
+		Unit unit = new Unit("TestUnit", new int[] {1,2,0}, 50, 50, 50, 50, false, faction);
+		Unit other = new Unit("TestUnit", new int[] {1,1,0}, 50, 50, 50, 50, false);
+		world.addGameObjectToWorld(unit);
+		world.addGameObjectToWorld(other);
+		world.addGameObjectToWorld(new Log(Vector.getCubeCenter(new int[] {0,0,0})));
+		assertEquals(2, world.getNbUnits());
+		assertEquals(1, world.getNbLogs());
+		assertEquals(0, world.getNbBoulders());
+		assertEquals(1, world.getNbUnitsOfFaction(faction));
+		assertTrue(world.getUnitsOfFaction(faction).contains(unit));
+		world.removeGameObjectFromWorld(unit);
+		assertEquals("Views reflect removals", 0, world.getUnitsOfFaction(faction).size());
+		assertEquals(1, world.getUnits().size());
+		try {
+			world.getUnits().clear();
+			fail("The units of a world can only be changed through the world");
+		} catch (UnsupportedOperationException e) {}
+	}
+	
+	@Test
+	public void testCubeIndexFollowsFallingLog(){
+		int[][][] worldTerrain = new int[5][5][5];
+		World world = new World(worldTerrain, new DefaultTerrainChangeListener());
+		Log log = new Log(Vector.getCubeCenter(new int[] {2,2,3}));
+		world.addGameObjectToWorld(log);
+		assertSame(log, world.getLogOn(2, 2, 3));
+		assertNull(world.getBoulderOn(2, 2, 3));
+		for (int i=0; i<20; i++)
+			world.advanceTime(0.2);
+		assertNull("The log left its cube", world.getLogOn(2, 2, 3));
+		assertSame("The log landed on the floor", log, world.getLogOn(2, 2, 0));
+		assertEquals(1, world.getGameObjectsIn(2, 2, 0).size());
+		world.removeGameObjectFromWorld(log);
+		assertFalse(world.cubeHasLog(2, 2, 0));
+	}
+	
+	@Test
+	public void testNearestWorkshopInFlatWorld(){
+		// the world is wider than it is high, so every axis must be scanned
+		int[][][] worldTerrain = new int[30][20][2];
+		worldTerrain[25][15][1] = 3;
+		worldTerrain[28][2][1] = 3;
+		World world = new World(worldTerrain, new DefaultTerrainChangeListener());
+		assertEquals(2, world.getNbWorkshops());
+		assertArrayEquals(new int[] {25,15,1},
+				world.getNearestWorkshop(Vector.getCubeCenter(new int[] {20,19,0})));
+		world.setCubeType(25, 15, 1, 0);
+		assertArrayEquals("Terrain changes update the workshops", new int[] {28,2,1},
+				world.getNearestWorkshop(Vector.getCubeCenter(new int[] {20,19,0})));
+		world.setCubeType(28, 2, 1, 0);
+		assertNull(world.getNearestWorkshop(Vector.getCubeCenter(new int[] {20,19,0})));
+	}
+	
+	@Test
+	public void testNearestMatchesFullScan(){
+		CubeSpace space = new CubeSpace(40, 25, 12);
+		ProximityGrid<Vector> grid = new ProximityGrid<>(space, 8);
+		java.util.Random random = new java.util.Random(42);
+		java.util.List<Vector> items = new java.util.ArrayList<>();
+		for (int i=0; i<30; i++){
+			Vector item = new Vector(new double[] {40*random.nextDouble(),
+					25*random.nextDouble(), 12*random.nextDouble()});
+			items.add(item);
+			grid.add(item, item);
+		}
+		for (int i=0; i<100; i++){
+			Vector from = new Vector(new double[] {40*random.nextDouble(),
+					25*random.nextDouble(), 12*random.nextDouble()});
+			double expected = Double.POSITIVE_INFINITY;
+			for (Vector item: items)
+				expected = Math.min(expected, from.distanceBetween(item));
+			assertEquals(expected, from.distanceBetween(grid.findNearest(from, item->from.distanceBetween(item))), 1e-9);
+		}
+	}
+	
+	@Test
+	public void testTerrainTransaction(){
+		int[][][] worldTerrain = new int[6][6][6];
+		for (int z=0; z<4; z++)
+			worldTerrain[2][2][z] = 1;
+		List<List<int[]>> notifications = new ArrayList<>();
+		World world = new World(worldTerrain, new BatchTerrainChangeListener(){
+			@Override
+			public void notifyTerrainChanged(int x, int y, int z) {
+				notifications.add(Arrays.asList(new int[] {x,y,z}));
+			}
+			@Override
+			public void notifyTerrainChanged(List<int[]> cubes) {
+				notifications.add(cubes);
+			}
+		});
+		world.startTerrainTransaction();
+		world.setCubeType(2, 2, 0, 0);
+		world.setCubeType(2, 2, 1, 0);
+		world.setCubeType(2, 2, 1, 0);
+		assertTrue(notifications.isEmpty());
+		assertTrue("Not checked before committing", world.isSolidConnectedToBorder(2, 2, 2));
+		world.commitTerrainTransaction();
+		assertEquals("A single notification", 1, notifications.size());
+		assertEquals("Every changed cube listed once", 2, notifications.get(0).size());
+		assertFalse(world.isSolidConnectedToBorder(2, 2, 2));
+		for (int i=0; i<30; i++)
+			world.advanceTime(0.2);
+		assertEquals("The cut off cubes collapsed", 0, world.getTerrainType(2, 2, 3));
+		int nbNotified = 0;
+		for (List<int[]> cubes: notifications)
+			nbNotified += cubes.size();
+		assertEquals("Collapses are notified per tick", 4, nbNotified);
+	}
+	
+	@Test
+	public void testTimerWheel(){
+		TimerWheel wheel = new TimerWheel(10, 0.25);
+		assertTrue(wheel.schedule(3, 1.1));
+		assertFalse("Already scheduled", wheel.schedule(3, 0.1));
+		assertTrue(wheel.schedule(4, 1.2));
+		assertTrue(wheel.schedule(5, 5000));
+		assertEquals(0, wheel.advanceTo(1.05));
+		assertEquals("Due at the new time", 1, wheel.advanceTo(1.15));
+		assertEquals(3, wheel.getDueItem(0));
+		assertFalse(wheel.isScheduled(3));
+		assertTrue(wheel.cancel(4));
+		assertEquals(0, wheel.advanceTo(4999.9));
+		assertEquals(1, wheel.advanceTo(6000));
+		assertEquals(5, wheel.getDueItem(0));
+		assertEquals(0, wheel.getNbScheduled());
+	}
+	
+	@Test
+	public void testTimerWheelMatchesDeadlines(){
+		java.util.Random random = new java.util.Random(15);
+		TimerWheel wheel = new TimerWheel(500, 1.0/64);
+		double time = 0;
+		for (int step=0; step<3000; step++){
+			for (int i=0; i<3; i++){
+				int id = random.nextInt(500);
+				wheel.schedule(id, time + (random.nextBoolean()? random.nextDouble()*5: random.nextDouble()*2000));
+			}
+			wheel.cancel(random.nextInt(500));
+			time += random.nextDouble()*0.2;
+			List<Integer> expected = new ArrayList<>();
+			for (int id=0; id<500; id++)
+				if (wheel.isScheduled(id) && wheel.getDeadline(id) <= time)
+					expected.add(id);
+			int nbDue = wheel.advanceTo(time);
+			assertEquals(expected.size(), nbDue);
+			for (int i=0; i<nbDue; i++)
+				assertTrue(expected.contains(wheel.getDueItem(i)));
+		}
+	}
+	
+	@Test
+	public void testTimerWheelSkipsIdleTicks(){
+		// a microsecond resolution makes every jump cover millions of empty ticks
+		java.util.Random random = new java.util.Random(21);
+		TimerWheel wheel = new TimerWheel(100, 1e-6);
+		double time = 0;
+		for (int step=0; step<200; step++){
+			int id = random.nextInt(100);
+			wheel.schedule(id, time + random.nextDouble()*100);
+			time += random.nextDouble()*20;
+			List<Integer> expected = new ArrayList<>();
+			for (int i=0; i<100; i++)
+				if (wheel.isScheduled(i) && wheel.getDeadline(i) <= time)
+					expected.add(i);
+			int nbDue = wheel.advanceTo(time);
+			assertEquals(expected.size(), nbDue);
+			for (int i=0; i<nbDue; i++)
+				assertTrue(expected.contains(wheel.getDueItem(i)));
+		}
+	}
+	
+	@Test
+	public void testTimerWheelOnlyGrowsWithScheduledItems(){
+		TimerWheel wheel = new TimerWheel(1 << 26, 0.25);
+		for (int id=0; id<1000; id++)
+			wheel.schedule(id*4099, id*0.01);
+		assertEquals(1000, wheel.getNbScheduled());
+		assertEquals(0.01, wheel.getDeadline(4099), 1e-12);
+		assertEquals(500, wheel.advanceTo(4.995));
+		assertFalse(wheel.isScheduled(0));
+		assertTrue(wheel.isScheduled(999*4099));
+	}
+	
+	@Test
+	public void testParallelTickMatchesSerial(){
+		World serial = createMiningWorld(TickMode.SERIAL, 2016);
+		World parallel = createMiningWorld(TickMode.PARALLEL, 2016);
+		for (int i=0; i<40; i++){
+			serial.spawnUnit(true);
+			parallel.spawnUnit(true);
+		}
+		for (int tick=0; tick<300; tick++){
+			serial.advanceTime(0.2);
+			parallel.advanceTime(0.2);
+		}
+		assertEquals(describe(serial), describe(parallel));
+		assertEquals(serial.getNbLogs(), parallel.getNbLogs());
+		assertEquals(serial.getNbBoulders(), parallel.getNbBoulders());
+	}
+	
+	private static World createMiningWorld(TickMode tickMode, long seed){
+		int[][][] worldTerrain = new int[12][12][6];
+		for (int x=0; x<12; x++)
+			for (int y=0; y<12; y++){
+				worldTerrain[x][y][0] = 1;
+				if (x > 6 && y < 5)
+					worldTerrain[x][y][1] = worldTerrain[x][y][2] = 2;
+				if (x < 4)
+					worldTerrain[x][y][1] = 1;
+			}
+		return new World(worldTerrain, new DefaultTerrainChangeListener(), ConnectivityBackend.SEARCH,
+				tickMode, seed);
+	}
+	
+	private static List<String> describe(World world){
+		List<String> result = new ArrayList<>();
+		for (Unit unit: world.getUnits())
+			result.add(Arrays.toString(unit.getPosition().getVector())+" "+unit.isMoving()+" "+
+					unit.isWorking()+" "+unit.isAttacking()+" "+unit.isResting()+" "+unit.getCurrentHitPoints()+" "+
+					unit.getCurrentStaminaPoints()+" "+unit.getExperiencePoints()+" "+unit.isCarryingMaterial());
+		for (int x=0; x<world.getNbCubesX(); x++)
+			for (int y=0; y<world.getNbCubesY(); y++)
+				for (int z=0; z<world.getNbCubesZ(); z++)
+					result.add(Integer.toString(world.getTerrainType(x, y, z)));
+		return result;
+	}
+	
+	@Test
+	public void testTickPhases(){
+		int[][][] worldTerrain = new int[5][5][3];
+		for (int x=0; x<5; x++)
+			for (int y=0; y<5; y++)
+				worldTerrain[x][y][0] = 1;
+		worldTerrain[2][3][1] = 1;
+		World world = new World(worldTerrain, new DefaultTerrainChangeListener());
+		Unit unit = new Unit("Digger", new int[] {2,2,1}, 50, 50, 50, 50, false);
+		world.addGameObjectToWorld(unit);
+		List<String> events = new ArrayList<>();
+		world.addTickHook(new TickHook(){
+			@Override
+			public void phaseStarted(World world, TickPhase phase) {
+				events.add(phase.toString());
+			}
+			@Override
+			public void phaseFinished(World world, TickPhase phase, long duration) {
+				if (phase == TickPhase.ACT || phase == TickPhase.COMMIT)
+					events.add(phase+"="+world.getTerrainType(2, 3, 1));
+			}
+		});
+		world.advanceTime(0.2);
+		assertEquals(Arrays.asList("SENSE", "DECIDE", "ACT", "ACT=1", "COMMIT", "COMMIT=1"), events);
+		assertTrue(world.getPhaseDuration(TickPhase.ACT) >= 0);
+		unit.workAt(2, 3, 1);
+		while (world.getTerrainType(2, 3, 1) == 1)
+			world.advanceTime(0.2);
+		assertEquals("Dug out only when committing", "COMMIT=0", events.get(events.size()-1));
+		assertEquals("ACT=1", events.get(events.size()-3));
+	}
+	
+	@Test
+	public void testActiveSet(){
+		int[][][] worldTerrain = new int[5][5][4];
+		for (int x=0; x<5; x++)
+			for (int y=0; y<5; y++)
+				worldTerrain[x][y][0] = 1;
+		worldTerrain[1][1][1] = 1;
+		World world = new World(worldTerrain, new DefaultTerrainChangeListener());
+		Log log = new Log(new Vector(new double[] {1.5, 1.5, 2.5}));
+		Unit unit = new Unit("Sleeper", new int[] {3,3,1}, 50, 50, 50, 50, false);
+		world.addGameObjectToWorld(log);
+		world.addGameObjectToWorld(unit);
+		assertEquals("New game objects are active", 2, world.getNbActiveObjects());
+		world.advanceTime(0.2);
+		assertFalse("A log at rest sleeps", world.isActive(log));
+		assertFalse("An idle unit sleeps", world.isActive(unit));
+		world.setCubeType(4, 4, 0, 0);
+		assertFalse("Changes far away do not wake up", world.isActive(log));
+		world.setCubeType(1, 1, 1, 0);
+		assertTrue("Changes nearby wake up", world.isActive(log));
+		while (world.isActive(log))
+			world.advanceTime(0.2);
+		assertEquals("The log fell before sleeping again", 1, log.getPosition().getCubeCoordinates()[2]);
+		unit.moveTo(new int[] {3,1,1});
+		assertTrue("A command wakes up", world.isActive(unit));
+		while (unit.isMoving())
+			world.advanceTime(0.2);
+		world.advanceTime(0.2);
+		assertFalse(world.isActive(unit));
+		assertEquals(0, world.getNbActiveObjects());
+	}
+	
+	@Test
+	public void testEventDrivenTime(){
+		int[][][] worldTerrain = new int[6][6][3];
+		for (int x=0; x<6; x++)
+			for (int y=0; y<6; y++)
+				worldTerrain[x][y][0] = 1;
+		worldTerrain[5][5][1] = 1;
+		World world = new World(worldTerrain, new DefaultTerrainChangeListener());
+		world.setTimeMode(TimeMode.EVENT_DRIVEN);
+		assertEquals(TimeMode.EVENT_DRIVEN, world.getTimeMode());
+		Unit unit = new Unit("Walker", new int[] {0,0,1}, 50, 50, 50, 50, false);
+		world.addGameObjectToWorld(unit);
+		unit.moveTo(new int[] {4,0,1});
+		world.advanceTime(0.2);
+		assertFalse("Sleeps until its arrival", world.isActive(unit));
+		assertEquals(0.5, unit.getPosition().getVector()[0], 1e-9);
+		assertTrue("Rendered in between", unit.getInterpolatedPosition().getVector()[0] > 0.5);
+		while (unit.isMoving())
+			world.advanceTime(0.2);
+		assertArrayEquals(new double[] {4.5,0.5,1.5}, unit.getPosition().getVector(), 1e-9);
+		unit.moveTo(new int[] {4,4,1});
+		while (unit.isMoving())
+			world.advanceTime(0.2);
+		unit.workAt(5, 5, 1);
+		world.advanceTime(0.2);
+		assertFalse("Sleeps until its work is done", world.isActive(unit));
+		while (world.getTerrainType(5, 5, 1) == 1)
+			world.advanceTime(0.2);
+		assertTrue(unit.getExperiencePoints() > 0);
+		world.setTimeMode(TimeMode.FIXED_STEP);
+		assertTrue("Woken up when switching modes", world.isActive(unit));
+	}
+	
+	@Test
+	public void testSprintingDoesNotDependOnTimeMode(){
+		List<List<Boolean>> sprinting = new ArrayList<>();
+		for (TimeMode mode: TimeMode.values()){
+			int[][][] worldTerrain = new int[10][50][2];
+			for (int x=0; x<10; x++)
+				for (int y=0; y<50; y++)
+					worldTerrain[x][y][0] = 1;
+			World world = new World(worldTerrain, new DefaultTerrainChangeListener(),
+					ConnectivityBackend.SEARCH, TickMode.SERIAL, 13);
+			world.setTimeMode(mode);
+			Faction faction = new Faction();
+			List<Unit> units = new ArrayList<>();
+			for (int y=0; y<50; y++){
+				Unit unit = new Unit("Walker", new int[] {0,y,1}, 50, 50, 50, 50, false, faction);
+				world.addGameObjectToWorld(unit);
+				unit.moveTo(new int[] {9,y,1});
+				unit.setDefaultBehaviorEnabled(true);
+				units.add(unit);
+			}
+			world.advanceTime(0.2);
+			world.advanceTime(0.2);
+			List<Boolean> result = new ArrayList<>();
+			for (Unit unit: units)
+				result.add(unit.isSprinting());
+			sprinting.add(result);
+		}
+		// a walker in default behavior rolls whether to sprint once per step, in either mode
+		assertTrue(sprinting.get(0).contains(true));
+		assertTrue(sprinting.get(0).contains(false));
+		for (List<Boolean> result: sprinting)
+			assertEquals(sprinting.get(0), result);
+	}
+	
+	@Test
+	public void testTerrainTypes(){
+		int[][][] worldTerrain = new int[40][3][4];
+		for (int x=0; x<40; x++)
+			worldTerrain[x][1][0] = x % 4;
+		World world = new World(worldTerrain, new DefaultTerrainChangeListener());
+		for (int x=0; x<40; x++)
+			assertEquals(x % 4, world.getTerrainType(x, 1, 0));
+		world.setCubeType(33, 1, 0, 0);
+		assertEquals("Changed cube", 0, world.getTerrainType(33, 1, 0));
+		assertEquals("Cube sharing its storage", 0, world.getTerrainType(32, 1, 0));
+		assertEquals("Cube sharing its storage", 2, world.getTerrainType(34, 1, 0));
+	}
+	
+	@Test
+	public void testUniformChunks(){
+		int[][][] worldTerrain = new int[20][20][20];
+		worldTerrain[19][19][19] = 1;
+		TerrainMap terrain = new TerrainMap(new CubeSpace(20, 20, 20), worldTerrain);
+		assertEquals("Eight chunks of at most 16 cubes wide", 8, terrain.getNbChunks());
+		assertEquals("Only the chunk with the rock is dense", 1, terrain.getNbDenseChunks());
+		assertEquals(0, terrain.getUniformType(terrain.getChunk(0, 0, 0)));
+		terrain.setType(3, 3, 3, 0);
+		assertEquals("Writing the same type keeps a chunk uniform", 1, terrain.getNbDenseChunks());
+		terrain.setType(3, 3, 3, 2);
+		assertFalse(terrain.isUniformChunk(terrain.getChunk(0, 0, 0)));
+		assertEquals(2, terrain.getType(3, 3, 3));
+		assertEquals(0, terrain.getType(3, 3, 4));
+		assertEquals(1, terrain.getType(19, 19, 19));
+	}
+	
+	@Test
+	public void testPagedIntArray(){
+		CubeSpace space = new CubeSpace(40, 20, 20);
+		PagedIntArray array = new PagedIntArray(space, -1);
+		array.set(space.getId(3, 3, 3), -1);
+		assertEquals("Writing the default value allocates nothing", 0, array.getNbAllocatedPages());
+		int id = space.getId(35, 2, 19);
+		array.set(id, 7);
+		assertEquals(7, array.get(id));
+		assertEquals(-1, array.get(id-1));
+		assertEquals(1, array.getNbAllocatedPages());
+		assertTrue(array.isAllocatedPage(PagedIntArray.getPage(id)));
+		assertFalse(array.isAllocatedPage(PagedIntArray.getPage(0)));
+		array.clear();
+		assertEquals(-1, array.get(id));
+		assertEquals(0, array.getNbAllocatedPages());
+	}
+	
+	@Test
+	public void testMoveToAroundNewlyPlacedRock(){
+		int[][][] worldTerrain = new int[10][3][3];
+		World world = new World(worldTerrain, new DefaultTerrainChangeListener());
+		Unit unit = new Unit("TestUnit", new int[] {0,1,0}, 50, 50, 50, 50, false);
+		world.addGameObjectToWorld(unit);
+		unit.moveTo(new int[] {9,1,0});
+		world.advanceTime(0.2);
+		world.setCubeType(5, 1, 0, 1);
+		for (int i=0; i<200; i++)
+			world.advanceTime(0.1);
+		assertArrayEquals("The unit walks around the rock placed on its route",
+				new int[] {9,1,0}, unit.getPosition().getCubeCoordinates());
+	}
+	
+	@Test
+	public void testRouteSearchedOncePerWalk(){
+		int[][][] worldTerrain = new int[41][3][3];
+		World world = new World(worldTerrain, new DefaultTerrainChangeListener());
+		Unit unit = new Unit("TestUnit", new int[] {0,1,0}, 50, 50, 50, 50, false);
+		world.addGameObjectToWorld(unit);
+		long nbSearches = world.getPathFinder().getNbSearches();
+		unit.moveTo(new int[] {40,1,0});
+		for (int i=0; i<400 && unit.isMoving(); i++)
+			world.advanceTime(0.1);
+		assertArrayEquals(new int[] {40,1,0}, unit.getPosition().getCubeCoordinates());
+		assertEquals("A walk of 40 cubes searches its route once", 1,
+				world.getPathFinder().getNbSearches()-nbSearches);
+	}
+	
+	@Test
+	public void testRemovedUnitLeavesRoutes(){
+		int[][][] worldTerrain = new int[10][3][3];
+		World world = new World(worldTerrain, new DefaultTerrainChangeListener());
+		Unit walker = new Unit("Walker", new int[] {0,1,0}, 50, 50, 50, 50, false);
+		Unit other = new Unit("Other", new int[] {0,0,0}, 50, 50, 50, 50, false);
+		world.addGameObjectToWorld(walker);
+		world.addGameObjectToWorld(other);
+		walker.moveTo(new int[] {9,1,0});
+		other.moveTo(new int[] {9,0,0});
+		world.advanceTime(0.2);
+		world.removeGameObjectFromWorld(walker);
+		// only the unit still in the world is notified of changes on its route
+		world.setCubeType(5, 1, 0, 1);
+		for (int i=0; i<200; i++)
+			world.advanceTime(0.1);
+		assertArrayEquals(new int[] {9,0,0}, other.getPosition().getCubeCoordinates());
+	}
+	
 	
 	
 